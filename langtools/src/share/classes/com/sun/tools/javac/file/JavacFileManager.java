@@ -166,8 +166,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         fsInfo = FSInfo.instance(context);
 
         contextUseOptimizedZip = options.getBoolean("useOptimizedZip", true);
-        if (contextUseOptimizedZip)
+        if (contextUseOptimizedZip) {
+            // Ceylon: optionally share the archive indexes with every compilation in this JVM
+            if (options.isSet("sharedZipIndex") && context.get(ZipFileIndexCache.class) == null)
+                context.put(ZipFileIndexCache.class, ZipFileIndexCache.getSharedInstance());
             zipFileIndexCache = ZipFileIndexCache.instance(context);
+        }
 
         mmappedIO = options.isSet("mmappedIO");
         ignoreSymbolFile = options.isSet("ignore.symbol.file");
@@ -555,7 +559,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                     null,
                                     usePreindexedCache,
                                     preindexCacheLocation,
-                                    options.isSet("writezipindexfiles")));
+                                    options.isSet("writezipindexfiles"),
+                                    mmappedIO));
                 }
             } else {
                 if (!useOptimizedZip) {
@@ -566,7 +571,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                     symbolFilePrefix,
                                     usePreindexedCache,
                                     preindexCacheLocation,
-                                    options.isSet("writezipindexfiles")));
+                                    options.isSet("writezipindexfiles"),
+                                    mmappedIO));
                 }
             }
         } catch (FileNotFoundException ex) {
@@ -32,6 +32,11 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -71,6 +76,12 @@ import com.sun.tools.javac.file.RelativePath.RelativeFile;
  * timestamp checking to reindex the zip files if it is needed. In batch mode
  * the timestamps are not checked and the compiler uses the cached indexes.
  *
+ * Ceylon: if "-XDmmappedIO" is specified the archive is memory-mapped rather
+ * than read with seeks, and the mapping is kept until the index is closed, so
+ * that reading many entries does not cost a system call each. Whether the
+ * archive changed is checked when its index is looked up in the
+ * ZipFileIndexCache, not on every read.
+ *
  * <p><b>This is NOT part of any supported API.
  * If you write code that depends on this, you do so at your own risk.
  * This code and its internal interfaces are subject to change or
@@ -94,7 +105,10 @@ public class ZipFileIndex {
     final File zipFile;
     private Reference<File> absFileRef;
     long zipFileLastModified = NOT_MODIFIED;
+    long zipFileLength;
     private RandomAccessFile zipRandomFile;
+    private final boolean mmapped;
+    private ByteBuffer mappedZip;
     private Entry[] entries;
 
     private boolean readFromIndex = false;
@@ -115,12 +129,23 @@ public class ZipFileIndex {
 
 
     public synchronized boolean isOpen() {
-        return (zipRandomFile != null);
+        return (zipRandomFile != null || mappedZip != null);
+    }
+
+    /** Ceylon: true if the archive is currently read through a memory mapping */
+    public synchronized boolean isMapped() {
+        return mappedZip != null;
     }
 
     ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
             boolean useCache, String cacheLocation) throws IOException {
+        this(zipFile, symbolFilePrefix, writeIndex, useCache, cacheLocation, false);
+    }
+
+    ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
+            boolean useCache, String cacheLocation, boolean mmapped) throws IOException {
         this.zipFile = zipFile;
+        this.mmapped = mmapped;
         this.symbolFilePrefix = symbolFilePrefix;
         this.symbolFilePrefixLength = (symbolFilePrefix == null ? 0 :
             symbolFilePrefix.getPath().getBytes("UTF-8").length);
@@ -130,6 +155,7 @@ public class ZipFileIndex {
 
         if (zipFile != null) {
             this.zipFileLastModified = zipFile.lastModified();
+            this.zipFileLength = zipFile.length();
         }
 
         // Validate integrity of the zip file
@@ -145,6 +171,7 @@ public class ZipFileIndex {
     @Override
     protected void finalize() throws Throwable {
         closeFile();
+        unmapFile();
         super.finalize();
     }
 
@@ -166,6 +193,7 @@ public class ZipFileIndex {
         boolean isUpToDate = true;
         if (!isUpToDate()) {
             closeFile();
+            unmapFile();
             isUpToDate = false;
         }
 
@@ -186,8 +214,8 @@ public class ZipFileIndex {
 
         try {
             openFile();
-            long totalLength = zipRandomFile.length();
-            ZipDirectory directory = new ZipDirectory(zipRandomFile, 0L, totalLength, this);
+            long totalLength = mappedZip != null ? mappedZip.capacity() : zipRandomFile.length();
+            ZipDirectory directory = new ZipDirectory(0L, totalLength, this);
             directory.buildIndex();
         } finally {
             if (zipRandomFile != null) {
@@ -198,9 +226,69 @@ public class ZipFileIndex {
         lastReferenceTimeStamp = System.currentTimeMillis();
     }
 
-    private void openFile() throws FileNotFoundException {
-        if (zipRandomFile == null && zipFile != null) {
+    private void openRandomFile() throws IOException {
+        if (zipRandomFile == null && zipFile != null)
             zipRandomFile = new RandomAccessFile(zipFile, "r");
+    }
+
+    private void openFile() throws IOException {
+        if (zipRandomFile == null && mappedZip == null && zipFile != null) {
+            zipRandomFile = new RandomAccessFile(zipFile, "r");
+            if (mmapped && zipRandomFile.length() <= Integer.MAX_VALUE
+                    && zipRandomFile.length() == zipFileLength) {
+                // the mapping stays valid once the file is closed
+                FileChannel channel = zipRandomFile.getChannel();
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                closeFile();
+                mappedZip = mapped;
+            }
+        }
+    }
+
+    /**
+     * Releases the mapping right away rather than when it is collected, so that the
+     * archive is not kept locked (on Windows) or mapped after it is replaced. This is
+     * safe because the mapping never escapes this index, whose reads are synchronized.
+     */
+    private void unmapFile() {
+        if (mappedZip != null) {
+            ByteBuffer mapped = mappedZip;
+            mappedZip = null;
+            unmap(mapped);
+        }
+    }
+
+    private static void unmap(ByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Exception ex) {
+            // not supported by this JVM: the mapping goes away once collected
+        }
+    }
+
+    /**
+     * Reads len bytes at the given position in the archive, from the mapping if there is one
+     */
+    private void readFully(long pos, byte[] buf, int off, int len) throws IOException {
+        if (zipRandomFile == null && mappedZip == null)
+            openRandomFile();
+        if (mappedZip != null) {
+            try {
+                ByteBuffer view = mappedZip.duplicate();
+                view.position((int) pos);
+                view.get(buf, off, len);
+            } catch (BufferUnderflowException ex) {
+                throw new ZipException("corrupted zip file");
+            } catch (IllegalArgumentException ex) {
+                throw new ZipException("corrupted zip file");
+            }
+        } else {
+            zipRandomFile.seek(pos);
+            zipRandomFile.readFully(buf, off, len);
         }
     }
 
@@ -215,6 +303,7 @@ public class ZipFileIndex {
     public synchronized void close() {
         writeIndex();
         closeFile();
+        unmapFile();
     }
 
     private void closeFile() {
@@ -378,8 +467,7 @@ public class ZipFileIndex {
         byte[] header = getHeader(entry);
         int csize = entry.compressedSize;
         byte[] cbuf = new byte[csize];
-        zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
-        zipRandomFile.readFully(cbuf, 0, csize);
+        readFully(getDataOffset(entry, header), cbuf, 0, csize);
 
         // is this compressed - offset 8 in the ZipEntry header
         if (get2ByteLittleEndian(header, 8) == 0)
@@ -401,22 +489,13 @@ public class ZipFileIndex {
 
         // entry is not compressed?
         if (get2ByteLittleEndian(header, 8) == 0) {
-            zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
-            int offset = 0;
-            int size = buffer.length;
-            while (offset < size) {
-                int count = zipRandomFile.read(buffer, offset, size - offset);
-                if (count == -1)
-                    break;
-                offset += count;
-            }
+            readFully(getDataOffset(entry, header), buffer, 0, Math.min(buffer.length, entry.size));
             return entry.size;
         }
 
         int csize = entry.compressedSize;
         byte[] cbuf = new byte[csize];
-        zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
-        zipRandomFile.readFully(cbuf, 0, csize);
+        readFully(getDataOffset(entry, header), cbuf, 0, csize);
 
         int count = inflate(cbuf, buffer);
         if (count == -1)
@@ -430,9 +509,8 @@ public class ZipFileIndex {
     //----------------------------------------------------------------------------
 
     private byte[] getHeader(Entry entry) throws IOException {
-        zipRandomFile.seek(entry.offset);
         byte[] header = new byte[30];
-        zipRandomFile.readFully(header);
+        readFully(entry.offset, header, 0, header.length);
         if (get4ByteLittleEndian(header, 0) != 0x04034b50)
             throw new ZipException("corrupted zip file");
         if ((get2ByteLittleEndian(header, 6) & 1) != 0)
@@ -440,6 +518,13 @@ public class ZipFileIndex {
         return header;
     }
 
+    /**
+     * The entry data follows its local header, file name and extra field
+     */
+    private static long getDataOffset(Entry entry, byte[] header) {
+        return entry.offset + 30 + get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28);
+    }
+
   /*
    * Inflate using the java.util.zip.Inflater class
    */
@@ -486,13 +571,11 @@ public class ZipFileIndex {
         private int lastLen;
 
         byte[] zipDir;
-        RandomAccessFile zipRandomFile = null;
         ZipFileIndex zipFileIndex = null;
 
-        public ZipDirectory(RandomAccessFile zipRandomFile, long start, long end, ZipFileIndex index) throws IOException {
-            this.zipRandomFile = zipRandomFile;
+        public ZipDirectory(long start, long end, ZipFileIndex index) throws IOException {
             this.zipFileIndex = index;
-            hasValidHeader();
+            hasValidHeader(start);
             findCENRecord(start, end);
         }
 
@@ -500,20 +583,18 @@ public class ZipFileIndex {
          * the zip entry signature should be at offset 0, otherwise allow the
          * calling logic to take evasive action by throwing ZipFormatException.
          */
-        private boolean hasValidHeader() throws IOException {
-            final long pos = zipRandomFile.getFilePointer();
+        private boolean hasValidHeader(long start) throws IOException {
+            byte[] magic = new byte[4];
             try {
-                if (zipRandomFile.read() == 'P') {
-                    if (zipRandomFile.read() == 'K') {
-                        if (zipRandomFile.read() == 0x03) {
-                            if (zipRandomFile.read() == 0x04) {
-                                return true;
-                            }
-                        }
-                    }
-                }
-            } finally {
-                zipRandomFile.seek(pos);
+                readFully(start, magic, 0, magic.length);
+            } catch (IOException ex) {
+                throw new ZipFormatException("invalid zip magic");
+            }
+            if (magic[0] == 'P'
+                    && magic[1] == 'K'
+                    && magic[2] == 0x03
+                    && magic[3] == 0x04) {
+                return true;
             }
             throw new ZipFormatException("invalid zip magic");
         }
@@ -534,8 +615,7 @@ public class ZipFileIndex {
                 if (endbufend < endbuflen)
                     endbuflen = (int)endbufend;
                 long endbufpos = endbufend - endbuflen;
-                zipRandomFile.seek(start + endbufpos);
-                zipRandomFile.readFully(endbuf, 0, endbuflen);
+                readFully(start + endbufpos, endbuf, 0, endbuflen);
                 int i = endbuflen - 22;
                 while (i >= 0 &&
                         !(endbuf[i] == 0x50 &&
@@ -557,8 +637,7 @@ public class ZipFileIndex {
                     if (sz < 0 || get2ByteLittleEndian(zipDir, 0) == 0xffff) {
                         throw new ZipFormatException("detected a zip64 archive");
                     }
-                    zipRandomFile.seek(start + sz);
-                    zipRandomFile.readFully(zipDir, 2, zipDir.length - 2);
+                    readFully(start + sz, zipDir, 2, zipDir.length - 2);
                     return;
                 } else {
                     endbufend = endbufpos + 21;
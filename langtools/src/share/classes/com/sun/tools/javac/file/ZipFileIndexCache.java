@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -39,20 +40,41 @@ import java.util.Map;
 /** A cache for ZipFileIndex objects. */
 public class ZipFileIndexCache {
 
-    private final Map<File, ZipFileIndex> map =
-            new HashMap<File, ZipFileIndex>();
+    private final Map<File, ZipFileIndex> map;
+
+    public ZipFileIndexCache() {
+        map = new HashMap<File, ZipFileIndex>();
+    }
+
+    /**
+     * Ceylon: a cache which keeps at most maxSize indexes, evicting the least recently
+     * used ones. Evicted indexes are not closed: the file objects of the current 
+     * compilation may still read through them, and reopening them could read a changed 
+     * archive with the entry offsets of the old one. Their mapping is released when 
+     * they are collected.
+     */
+    public ZipFileIndexCache(final int maxSize) {
+        map = new LinkedHashMap<File, ZipFileIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, ZipFileIndex> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
 
     /** Get a shared instance of the cache. */
     
-    // Ceylon: disabled because it makes memory leak and does not detect jars that change
-    // between invocations
+    // Ceylon: only used with "-XDsharedZipIndex". It outlives compilations, so it is bounded
+    // to the archives of the last few of them. Jars that change between invocations are 
+    // detected by their modification time and length.
     
-//    private static ZipFileIndexCache sharedInstance;
-//    public synchronized static ZipFileIndexCache getSharedInstance() {
-//        if (sharedInstance == null)
-//            sharedInstance = new ZipFileIndexCache();
-//        return sharedInstance;
-//    }
+    public static final int SHARED_CACHE_SIZE = 512;
+    private static ZipFileIndexCache sharedInstance;
+    public synchronized static ZipFileIndexCache getSharedInstance() {
+        if (sharedInstance == null)
+            sharedInstance = new ZipFileIndexCache(SHARED_CACHE_SIZE);
+        return sharedInstance;
+    }
 
     /** Get a context-specific instance of a cache. */
     public static ZipFileIndexCache instance(Context context) {
@@ -98,11 +120,25 @@ public class ZipFileIndexCache {
             RelativeDirectory symbolFilePrefix,
             boolean useCache, String cacheLocation,
             boolean writeIndex) throws IOException {
+        return getZipFileIndex(zipFile, symbolFilePrefix, useCache, cacheLocation, writeIndex, false);
+    }
+
+    public synchronized ZipFileIndex getZipFileIndex(File zipFile,
+            RelativeDirectory symbolFilePrefix,
+            boolean useCache, String cacheLocation,
+            boolean writeIndex, boolean mmapped) throws IOException {
         ZipFileIndex zi = getExistingZipIndex(zipFile);
 
-        if (zi == null || (zi != null && zipFile.lastModified() != zi.zipFileLastModified)) {
+        if (zi == null 
+                || zipFile.lastModified() != zi.zipFileLastModified
+                || zipFile.length() != zi.zipFileLength) {
+            // drop the stale index even if the new one cannot be built, and release its mapping
+            if (zi != null) {
+                map.remove(zipFile);
+                zi.close();
+            }
             zi = new ZipFileIndex(zipFile, symbolFilePrefix, writeIndex,
-                    useCache, cacheLocation);
+                    useCache, cacheLocation, mmapped);
             map.put(zipFile, zi);
         }
         return zi;
@@ -68,6 +68,7 @@ public enum OptionName {
     CEYLONRESOURCEROOT("-resroot"),
     CEYLONDISABLEOPT("-disableOptimization"),
     CEYLONDISABLEOPT_CUSTOM("-disableOptimization:{"+optimizations()+"}"),
+    CEYLONENABLEOPT("-enableOptimization"),
     CEYLONSUPPRESSWARNINGS("-suppress-warnings"),
     BOOTCLASSPATH("-bootclasspath"),
     XBOOTCLASSPATH_PREPEND("-Xbootclasspath/p:"),
@@ -86,6 +87,9 @@ public enum OptionName {
     CEYLONTIMEOUT("-timeout"),
     CEYLONCONTINUE("-continue"),
     CEYLONPROGRESS("-progress"),
+    CEYLONPARALLEL("-parallel"),
+    CEYLONINCREMENTAL("-incremental"),
+    CEYLONMETRICS("-metrics"),
     // Backwards-compat
     CEYLONMAVENOVERRIDES("-maven-overrides"),
     CEYLONOVERRIDES("-overrides"),
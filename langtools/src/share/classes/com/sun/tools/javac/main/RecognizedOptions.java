@@ -28,6 +28,7 @@ package com.sun.tools.javac.main;
 import com.redhat.ceylon.common.Constants;
 import com.redhat.ceylon.common.FileUtil;
 import com.redhat.ceylon.common.config.DefaultToolOptions;
+import com.redhat.ceylon.compiler.java.codegen.Optimization;
 import com.redhat.ceylon.model.typechecker.model.Module;
 import com.sun.tools.javac.code.Lint;
 import com.sun.tools.javac.code.Source;
@@ -211,7 +212,11 @@ public class RecognizedOptions {
         BOOTSTRAPCEYLON,
         CEYLONDISABLEOPT,
         CEYLONDISABLEOPT_CUSTOM,
-        CEYLONSUPPRESSWARNINGS);
+        CEYLONENABLEOPT,
+        CEYLONSUPPRESSWARNINGS,
+        CEYLONPARALLEL,
+        CEYLONINCREMENTAL,
+        CEYLONMETRICS);
 
     static Set<OptionName> javacFileManagerOptions = EnumSet.of(
         CLASSPATH,
@@ -297,7 +302,11 @@ public class RecognizedOptions {
         BOOTSTRAPCEYLON,
         CEYLONDISABLEOPT,
         CEYLONDISABLEOPT_CUSTOM,
-        CEYLONSUPPRESSWARNINGS);
+        CEYLONENABLEOPT,
+        CEYLONSUPPRESSWARNINGS,
+        CEYLONPARALLEL,
+        CEYLONINCREMENTAL,
+        CEYLONMETRICS);
 
     public static Option[] getJavaCompilerOptions(OptionHelper helper) {
         return getOptions(helper, javacOptions);
@@ -409,6 +418,18 @@ public class RecognizedOptions {
         new COption(CEYLONRESOURCEROOT,     "opt.arg.path",      "opt.ceylonresourceroot"),
         new COption(CEYLONDISABLEOPT,                            "opt.ceylondisableopt"),
         new COption(CEYLONDISABLEOPT_CUSTOM,                     "opt.ceylondisableopt.suboptlist"),
+        new COption(CEYLONENABLEOPT,        "opt.arg.value",     "opt.ceylonenableopt"){
+            @Override
+            public boolean process(Options options, String option, String operand) {
+                for (String name : operand.split(",")) {
+                    if (Optimization.lookup(name.trim()) == null) {
+                        helper.error("err.ceylon.invalid.optimization", name.trim(), Optimization.optInNames());
+                        return true;
+                    }
+                }
+                return super.process(options, option, operand);
+            }
+        },
         new COption(CEYLONSUPPRESSWARNINGS, "opt.arg.value",     "opt.ceylonsuppresswarnings"),
         new Option(SOURCEPATH,              "opt.arg.path",      "opt.sourcepath"){
             @Override
@@ -481,6 +502,9 @@ public class RecognizedOptions {
         new COption(CEYLONTIMEOUT,      "opt.arg.number",       "opt.ceylontimeout"),
         new COption(CEYLONCONTINUE,     "opt.ceyloncontinue"),
         new COption(CEYLONPROGRESS,     "opt.ceylonprogress"),
+        new COption(CEYLONPARALLEL,     "opt.ceylonparallel"),
+        new COption(CEYLONINCREMENTAL,  "opt.ceylonincremental"),
+        new COption(CEYLONMETRICS,      "opt.arg.file",         "opt.ceylonmetrics"),
         new COption(CEYLONAUTOEXPORTMAVENDEPENDENCIES,          "opt.ceylonautoexportmavendependencies"),
         new COption(CEYLONFLATCLASSPATH,  "opt.ceylonflatclasspath"),
         new COption(CEYLONOVERRIDES,      "opt.arg.url",        "opt.ceylonoverrides"),
@@ -102,6 +102,7 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
     private String osgiProvidedBundles;
     private Boolean noPom;
     private Boolean pack200;
+    private File metrics;
     private List<SuppressWarning> suppressWarnings = new ArrayList<SuppressWarning>(0);
     private boolean suppressAllWarnings = false;
     
@@ -159,6 +160,18 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
         this.pack200 = pack200;
     }
 
+    public File getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the file to write the compilation metrics (time, CPU time and memory allocated
+     * by each compiler phase, and other statistics) to, in JSON format.
+     */
+    public void setMetrics(File metrics) {
+        this.metrics = metrics;
+    }
+
     public void addConfiguredSuppressWarning(SuppressWarning sw) {
         this.suppressWarnings.add(sw);
         if (sw.value == null || sw.value.isEmpty()) {
@@ -488,6 +501,9 @@ public class CeylonCompileAntTask extends LazyCeylonAntTask  {
 
         if (pack200!= null && pack200.booleanValue())
             appendOption(cmd, "--pack200");
+
+        if (metrics != null)
+            appendOptionArgument(cmd, "--metrics", metrics.getAbsolutePath());
         
         if (suppressWarnings != null) {
             if (suppressAllWarnings) {
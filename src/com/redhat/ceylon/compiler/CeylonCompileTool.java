@@ -22,6 +22,7 @@ package com.redhat.ceylon.compiler;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.ConnectException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -47,6 +48,7 @@ import com.redhat.ceylon.common.tool.ToolUsageError;
 import com.redhat.ceylon.common.tools.CeylonTool;
 import com.redhat.ceylon.common.tools.ModuleWildcardsHelper;
 import com.redhat.ceylon.common.tools.SourceArgumentsResolver;
+import com.redhat.ceylon.compiler.java.launcher.CompilerDaemon;
 import com.redhat.ceylon.compiler.java.launcher.Main;
 import com.redhat.ceylon.compiler.java.launcher.Main.ExitState.CeylonState;
 import com.redhat.ceylon.compiler.typechecker.analyzer.Warning;
@@ -167,6 +169,14 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
     private List<String> modulesOrFiles = Arrays.asList("*");
     private boolean continueOnErrors;
     private boolean progress;
+    private boolean parallel;
+    private boolean incremental;
+    private File metrics;
+    private List<String> enabledOptimizations = Collections.emptyList();
+    private boolean daemon;
+    private boolean useDaemon;
+    private boolean stopDaemon;
+    private int daemonPort = CompilerDaemon.DEFAULT_PORT;
     private List<String> javac = Collections.emptyList();
     private String encoding;
     private String resourceRoot = DefaultToolOptions.getCompilerResourceRootName();
@@ -269,6 +279,62 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         this.progress = progress;
     }
 
+    @Option(longName="parallel")
+    @Description("Run the compiler phases which support it in parallel, using all available processors.")
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Option(longName="incremental")
+    @Description("Skip code generation for source files which did not change since the previous compilation, " +
+            "reusing the classes from the previous module archive, as long as no declaration signature changed.")
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    @OptionArgument(longName="metrics", argumentName="file")
+    @Description("Write the time, CPU time and memory allocated by each compiler phase, " +
+            "along with statistics such as the number of units, classes and archive bytes written, " +
+            "to the given file, in JSON format.")
+    public void setMetrics(File metrics) {
+        this.metrics = metrics;
+    }
+
+    @OptionArgument(longName="enable-optimization", argumentName="optimization")
+    @Description("Enables the given opt-in code generation optimization, such as `PrimitiveComprehension` or `InvokeDynamicCallable`. " +
+            "Can be specified multiple times.")
+    public void setEnabledOptimizations(List<String> enabledOptimizations) {
+        this.enabledOptimizations = enabledOptimizations;
+    }
+
+    @Option(longName="daemon")
+    @Description("Start a resident compiler which runs the compilations requested with `--use-daemon`, " +
+            "instead of compiling anything. It only accepts requests from the same user, " +
+            "who must be able to read the token it writes to the user's Ceylon directory.")
+    public void setDaemon(boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    @Option(longName="use-daemon")
+    @Description("Send the compilation to the resident compiler started with `--daemon`, " +
+            "or compile in-process if there is none.")
+    public void setUseDaemon(boolean useDaemon) {
+        this.useDaemon = useDaemon;
+    }
+
+    @Option(longName="stop-daemon")
+    @Description("Stop the resident compiler started with `--daemon`, instead of compiling anything.")
+    public void setStopDaemon(boolean stopDaemon) {
+        this.stopDaemon = stopDaemon;
+    }
+
+    @OptionArgument(longName="daemon-port", argumentName="port")
+    @Description("The local port the resident compiler listens on " +
+            "(default: `" + CompilerDaemon.DEFAULT_PORT + "`).")
+    public void setDaemonPort(int daemonPort) {
+        this.daemonPort = daemonPort;
+    }
+
     @OptionArgument(shortName='E', argumentName="encoding")
     @Description("Sets the encoding used for reading source files" +
             "(default: platform-specific).")
@@ -286,7 +352,7 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
     @Description("Produce verbose output. " +
             "If no `flags` are given then be verbose about everything, " +
             "otherwise just be verbose about the flags which are present. " +
-            "Allowed flags include: `all`, `loader`, `ast`, `code`, `cmr`, `benchmark`.")
+            "Allowed flags include: `all`, `loader`, `ast`, `code`, `boxing`, `defaults`, `cmr`, `benchmark`.")
     public void setVerbose(String verbose) {
         super.setVerbose(verbose);
     }
@@ -345,6 +411,11 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         compiler = new Main("ceylon compile");
         Options options = Options.instance(new Context());
         
+        if (daemon || stopDaemon) {
+            // nothing to compile
+            return;
+        }
+        
         if (modulesOrFiles.isEmpty() &&
                 !javac.contains("-help") &&
                 !javac.contains("-X") &&
@@ -357,6 +428,10 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         if (cwd != null) {
             arguments.add("-cwd");
             arguments.add(cwd.getPath());
+        } else if (useDaemon) {
+            // the daemon was most likely started from another directory
+            arguments.add("-cwd");
+            arguments.add(System.getProperty("user.dir"));
         }
         
         for (File source : applyCwd(this.sources)) {
@@ -384,6 +459,32 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
             arguments.add("-progress");
         }
 
+        if (parallel) {
+            arguments.add("-parallel");
+        }
+
+        if (incremental) {
+            arguments.add("-incremental");
+        }
+
+        if (metrics != null) {
+            // absolute, in case we compile in a daemon
+            arguments.add("-metrics");
+            arguments.add(applyCwd(metrics).getAbsolutePath());
+        }
+
+        if (!enabledOptimizations.isEmpty()) {
+            StringBuilder names = new StringBuilder();
+            for (String name : enabledOptimizations) {
+                if (names.length() > 0) {
+                    names.append(',');
+                }
+                names.append(name);
+            }
+            arguments.add("-enableOptimization");
+            arguments.add(names.toString());
+        }
+
         if (offline) {
             arguments.add("-offline");
         }
@@ -535,7 +636,30 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
      */
     @Override
     public void run() throws IOException {
-        int result = compiler.compile(arguments.toArray(new String[arguments.size()]));
+        if (daemon) {
+            new CompilerDaemon(daemonPort, new PrintWriter(System.err, true)).serve();
+            return;
+        }
+        if (stopDaemon) {
+            CompilerDaemon.stop(daemonPort);
+            return;
+        }
+        String[] args = arguments.toArray(new String[arguments.size()]);
+        if (useDaemon) {
+            CompilerDaemon.Response response = null;
+            try {
+                response = CompilerDaemon.compile(daemonPort, args);
+            } catch (ConnectException e) {
+                // no daemon running: compile in-process
+            }
+            if (response != null) {
+                System.err.print(response.output);
+                System.err.flush();
+                handleExitCode(response.javacExitCode, response.exitState);
+                return;
+            }
+        }
+        int result = compiler.compile(args);
         handleExitCode(result, compiler.exitState);
     }
 
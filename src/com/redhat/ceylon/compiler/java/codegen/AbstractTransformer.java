@@ -147,6 +147,7 @@ public abstract class AbstractTransformer implements Transformation {
     protected Log log;
     final Naming naming;
     private Errors errors;
+    private ConstantDefaultArguments constantDefaultArguments;
     private Stack<java.util.List<TypeParameter>> typeParameterSubstitutions = new Stack<java.util.List<TypeParameter>>();
     protected Map<String, Long> omittedModelAnnotations;
 
@@ -174,6 +175,13 @@ public abstract class AbstractTransformer implements Transformation {
         }
         return errors;
     }
+    
+    ConstantDefaultArguments constantDefaultArguments() {
+        if (this.constantDefaultArguments == null) {
+            this.constantDefaultArguments = ConstantDefaultArguments.instance(context);
+        }
+        return constantDefaultArguments;
+    }
 
     @Override
     public TreeMaker make() {
@@ -4409,7 +4417,8 @@ public abstract class AbstractTransformer implements Transformation {
                     }
                     // if not, keep trying
                 } 
-                if (canOptimiseReifiedTypeTest(testedType)) {
+                if (canOptimiseReifiedTypeTest(testedType)
+                        || isTypeTestImpliedByExpressionType(testedType, expressionType)) {
                     // Use an instanceof
                     return typeTester.isInstanceof(varExpr, testedType, expressionType);
                 } else {
@@ -4573,6 +4582,73 @@ public abstract class AbstractTransformer implements Transformation {
         }
     }
 
+    /**
+     * Determine whether the type of the tested expression already implies
+     * the type arguments of the tested type, so that a plain {@code instanceof}
+     * is enough for a {@code is} test. That's the case when each case of the
+     * expression type is either a subtype of the tested type or can't be an
+     * instance of its class or interface at all, for example when testing 
+     * a {@code String[]} for {@code [String+]}.
+     */
+    private boolean isTypeTestImpliedByExpressionType(Type testedType, Type expressionType) {
+        if (expressionType == null
+                || !canUseFastFailTypeTest(testedType)
+                || statementGen().isOptimizationDisabled(statementGen().getCurrentStatement(), 
+                        Optimization.ImpliedTypeTest)) {
+            return false;
+        }
+        return isTypeTestImplied(testedType, (ClassOrInterface)testedType.getDeclaration(), expressionType);
+    }
+    
+    private boolean isTypeTestImplied(Type testedType, ClassOrInterface declaration, Type caseType) {
+        caseType = caseType.resolveAliases();
+        if (caseType.isNothing()) {
+            return true;
+        }
+        Type supertype = caseType.getSupertype(declaration);
+        if (supertype != null) {
+            // every instance of the case is an instance of the tested type 
+            return supertype.isSubtypeOf(testedType);
+        }
+        if (caseType.isUnion()) {
+            for (Type pt : caseType.getCaseTypes()) {
+                if (!isTypeTestImplied(testedType, declaration, pt)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (caseType.getDeclaration() instanceof ClassOrInterface == false) {
+            // type parameters and intersections
+            return false;
+        }
+        // now see if the case can have instances of the tested declaration
+        TypeDeclaration caseDeclaration = caseType.getDeclaration();
+        if (caseDeclaration instanceof Class
+                && (caseDeclaration.isFinal() 
+                        || caseDeclaration.isAnonymous()
+                        // neither class inherits the other
+                        || declaration instanceof Class && !declaration.inherits(caseDeclaration))) {
+            return true;
+        }
+        if (declaration instanceof Class
+                && declaration.isFinal()
+                && !declaration.inherits(caseDeclaration)) {
+            return true;
+        }
+        // an enumerated type can only have instances of its cases
+        java.util.List<Type> cases = caseType.getCaseTypes();
+        if (cases != null && !cases.isEmpty()) {
+            for (Type pt : cases) {
+                if (!isTypeTestImplied(testedType, declaration, pt)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     private boolean canUseFastFailTypeTest(Type type) {
         if(type.getDeclaration() instanceof ClassOrInterface == false)
             return false;
@@ -4988,6 +5064,84 @@ public abstract class AbstractTransformer implements Transformation {
         return naming.getCompanionFieldName(def);
     }
     
+    /**
+     * Determines whether instances of the given class create the companion 
+     * instance for the given interface the first time it's needed, rather 
+     * than in their constructor, so that instances which never use the 
+     * interface's concrete members don't allocate it. In that case the 
+     * companion field may still be null and has to be read through the 
+     * {@code $Foo$impl()} accessor.
+     * 
+     * Subclasses compiled separately could read the companion field 
+     * directly, so we only do this for classes which can't be extended 
+     * outside of the module being compiled. Companions only hold their 
+     * {@code $this} and reified type arguments, so a race between two 
+     * threads at worst creates an equivalent companion twice.
+     * 
+     * @param model The class which creates the companion instance, see 
+     * {@link #getCompanionInstantiator(Class, Interface)}
+     */
+    boolean isCompanionInstantiatedLazily(Class model, Interface iface) {
+        if (statementGen().isOptimizationDisabled(null, Optimization.LazyCompanionInstance)) {
+            return false;
+        }
+        if (model.isFinal() || model.isAnonymous()) {
+            return true;
+        }
+        Scope scope = model;
+        while (scope instanceof Declaration) {
+            if (!((Declaration)scope).isShared()) {
+                return true;
+            }
+            scope = scope.getContainer();
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the class which creates the companion instance of the given 
+     * interface for instances of the given class, and declares its field: 
+     * the topmost class of its hierarchy which satisfies the interface.
+     */
+    Class getCompanionInstantiator(Class model, Interface iface) {
+        Class result = model;
+        Type superClass = model.getExtendedType();
+        while (superClass != null) {
+            if (superClass.getDeclaration() instanceof Class
+                    && superClass.getSupertype(iface) != null) {
+                result = (Class)superClass.getDeclaration();
+            }
+            superClass = superClass.getExtendedType();
+        }
+        return result;
+    }
+    
+    /**
+     * Returns {@code companion.$refine$(tp1, tp2...)}, which refines the 
+     * reified type arguments of a companion instance to those of the given 
+     * satisfied type.
+     */
+    JCExpression makeRefineReifiedType(JCExpression companion, Type satisfiedType) {
+        ListBuffer<JCExpression> typeArguments = new ListBuffer<JCExpression>();
+        for(Type tp : satisfiedType.getTypeArgumentList()){
+            typeArguments.add(makeReifiedTypeArgument(tp));
+        }
+        return make().Apply(null, makeSelect(companion, naming.getRefineTypeParametersMethodName()), typeArguments.toList());
+    }
+    
+    /**
+     * Returns the companion instance of the given interface in instances of 
+     * the given class: either its {@code $Foo$this$} field or, when the 
+     * companion is created lazily, a call to its {@code $Foo$impl()} accessor.
+     */
+    JCExpression makeCompanionInstance(JCExpression qualExpr, TypeDeclaration model, Interface def) {
+        if (model instanceof Class
+                && isCompanionInstantiatedLazily(getCompanionInstantiator((Class)model, def), def)) {
+            return naming.makeCompanionAccessorCall(qualExpr, def);
+        }
+        return makeQualIdent(qualExpr, getCompanionFieldName(def));
+    }
+    
     protected int getPosition(Node node) {
         int pos = getMap().getStartPosition(node.getToken().getLine())
                 + node.getToken().getCharPositionInLine();
@@ -5092,7 +5246,7 @@ public abstract class AbstractTransformer implements Transformation {
         // same as makeReifiedTypeArgumentsResolved(typeArguments, false) but resolve each element
         List<JCExpression> ret = List.nil();
         for(int i=typeArguments.size()-1;i>=0;i--){
-            ret = ret.prepend(makeReifiedTypeArgumentResolved(typeArguments.get(i).resolveAliases(), false));
+            ret = ret.prepend(makeReifiedTypeArgument(typeArguments.get(i)));
         }
         return ret;
     }
@@ -5107,7 +5261,52 @@ public abstract class AbstractTransformer implements Transformation {
     }
 
     public JCExpression makeReifiedTypeArgument(Type pt) {
-        return makeReifiedTypeArgumentResolved(pt.resolveAliases(), false);
+        pt = pt.resolveAliases();
+        JCExpression descriptor = makeReifiedTypeArgumentResolved(pt, false);
+        if(descriptor instanceof JCMethodInvocation
+                && isStaticTypeDescriptor(pt)
+                && current() != null
+                && !statementGen().isOptimizationDisabled(statementGen().getCurrentStatement(), 
+                        Optimization.TypeDescriptorConstant)){
+            // the descriptor is the same every time, so build it once
+            ClassDefinitionBuilder holder = current().getStaticMemberHolder();
+            if(holder != null)
+                return holder.makeTypeDescriptorConstant(pt.asQualifiedString(), descriptor);
+        }
+        return descriptor;
+    }
+    
+    /**
+     * Determines whether the type descriptor of the given (resolved) type 
+     * depends on nothing but toplevel declarations: no type parameters, 
+     * and no local or member types which would need their container's 
+     * type descriptor.
+     */
+    boolean isStaticTypeDescriptor(Type pt) {
+        if(pt.isUnion()){
+            for(Type caseType : pt.getCaseTypes()){
+                if(!isStaticTypeDescriptor(caseType.resolveAliases()))
+                    return false;
+            }
+            return true;
+        }else if(pt.isIntersection()){
+            for(Type satisfiedType : pt.getSatisfiedTypes()){
+                if(!isStaticTypeDescriptor(satisfiedType.resolveAliases()))
+                    return false;
+            }
+            return true;
+        }else if(pt.isNothing()){
+            return true;
+        }else if(!pt.isClassOrInterface()
+                || !pt.getDeclaration().isToplevel()){
+            return false;
+        }
+        for(Type typeArgument : pt.getTypeArgumentList()){
+            if(typeArgument == null
+                    || !isStaticTypeDescriptor(typeArgument.resolveAliases()))
+                return false;
+        }
+        return true;
     }
     
     private JCExpression makeReifiedTypeArgumentResolved(Type pt, boolean qualified) {
@@ -383,6 +383,15 @@ public class AttributeDefinitionBuilder {
     }
     
     private JCTree generateInitFlagField() {
+        if (isFinalInitFlag()) {
+            // assigned by the static initializer only
+            return owner.make().VarDef(
+                    owner.make().Modifiers(Flags.PRIVATE | Flags.STATIC | Flags.FINAL),
+                    owner.names().fromString(Naming.getInitializationFieldName(fieldName)),
+                    owner.make().Type(owner.syms().booleanType),
+                    null
+            );
+        }
         long flags = Flags.PRIVATE | (modifiers & Flags.STATIC) | Flags.VOLATILE;
         if((flags & Flags.STATIC) == 0)
             flags |= Flags.TRANSIENT;
@@ -394,6 +403,21 @@ public class AttributeDefinitionBuilder {
                 owner.make().Literal(false)
         );
     }
+    
+    /**
+     * Whether the init flag of a toplevel value is a {@code static final}
+     * field instead of a {@code volatile} one. It's only ever assigned by 
+     * the static initializer of the wrapper class, and the JVM's class 
+     * initialization already makes that visible to other threads, which 
+     * block until it's done. A cyclic read from the initializing thread 
+     * still sees {@code false}. Being final, the JIT can fold the flag and 
+     * the value of an initialized toplevel into the getter's callers.
+     */
+    private boolean isFinalInitFlag() {
+        return isDeferredInitError()
+                && variableInit != null
+                && !owner.statementGen().isOptimizationDisabled(null, Optimization.FinalToplevelInitFlag);
+    }
 
     private JCTree generateInitExceptionField() {
         long flags = Flags.PRIVATE | Flags.STATIC | Flags.FINAL;
@@ -78,16 +78,47 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
     // on the command line you can force all locals to be boxed (instead of the default unboxed)
     private static final boolean forceBoxedLocals = Boolean.getBoolean("ceylon.compiler.forceBoxedLocals");
     
+    /** Where we record why we box declarations of basic types, if anywhere */
+    private BoxingReport report;
+    
+    public void setReport(BoxingReport report) {
+        this.report = report;
+    }
+    
+    /**
+     * Whether we unbox the variables of comprehension {@code for} clauses, see
+     * {@link Optimization#UnboxedComprehension}
+     */
+    protected boolean unboxComprehensionVariables() {
+        return false;
+    }
+    
+    private void box(TypedDeclaration declaration, Node that, String reason) {
+        declaration.setUnboxed(false);
+        if (report != null 
+                && declaration.getType() != null
+                && isCeylonBasicType(declaration.getType())) {
+            report.boxed(declaration, that, reason);
+        }
+    }
+    
+    private void unbox(TypedDeclaration declaration) {
+        declaration.setUnboxed(true);
+        if (report != null) {
+            report.unboxed(declaration);
+        }
+    }
+    
     @Override
     public void visit(FunctionArgument that) {
         super.visit(that);
-        that.getDeclarationModel().setUnboxed(false);
+        box(that.getDeclarationModel(), that, "anonymous function, returned by a Callable");
     }
     
     @Override
     public void visit(MethodArgument that) {
         super.visit(that);
-        that.getDeclarationModel().setUnboxed(false);
+        box(that.getDeclarationModel(), that, "named argument function, returned by a Callable");
     }
     
     @Override
@@ -163,7 +194,7 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
             setBoxingState(method, refinedMethod, that);
         } else {
             // Anonymous methods are always boxed
-            method.setUnboxed(false);
+            box(method, that, "anonymous function, returned by a Callable");
         }
     }
 
@@ -199,7 +230,7 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
         if(declaration instanceof Function 
                 && ((Function)declaration).isParameter()
                 && !JvmBackendUtil.createMethod((Function)declaration)){
-            declaration.setUnboxed(false);
+            box(declaration, that, "functional parameter, returned by a Callable");
             return;
         }
         
@@ -208,7 +239,7 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
             if(refinedDeclaration.getUnboxed() == null)
                 setBoxingState(refinedDeclaration, refinedDeclaration, that);
             // inherit
-            declaration.setUnboxed(refinedDeclaration.getUnboxed());
+            inheritBoxingState(declaration, refinedDeclaration, that);
         } else if (declaration instanceof Function
                 && CodegenUtil.isVoid(declaration.getType())
                 && Strategy.useBoxedVoid((Function)declaration)
@@ -221,7 +252,11 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
            && (refinedDeclaration.getContainer() instanceof Declaration == false || !CodegenUtil.isContainerFunctionalParameter(refinedDeclaration))
            && !(refinedDeclaration instanceof Functional && Decl.isMpl((Functional)refinedDeclaration))){
             boolean unbox = !forceBoxedLocals || !(declaration instanceof Value) || !Decl.isLocal(declaration) || Decl.isParameter(declaration) || Decl.isTransient(declaration);
-            declaration.setUnboxed(unbox);
+            if (unbox) {
+                unbox(declaration);
+            } else {
+                box(declaration, that, "local, forced by -Dceylon.compiler.forceBoxedLocals");
+            }
         } else if (Decl.isValueParameter(declaration)
                 && CodegenUtil.isContainerFunctionalParameter(declaration)
                 && JvmBackendUtil.createMethod((FunctionOrValue)declaration.getContainer())) {
@@ -234,16 +269,23 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
                         || declaration.getUnit().isOptionalType(declaration.getType())) {
                     declaration.setUnboxed(false);
                 } else {
-                    declaration.setUnboxed(true);
+                    unbox(declaration);
                 }
             } else {
                 // make sure refined declarations have already been set
                 if(refinedFrom.getUnboxed() == null)
                     setBoxingState(refinedFrom, refinedFrom, that);
                 // inherit
-                declaration.setUnboxed(refinedFrom.getUnboxed());
+                inheritBoxingState(declaration, refinedFrom, that);
             }
-        } else {   
+        } else if (refinedDeclaration.getTypeDeclaration() instanceof TypeParameter) {
+            box(declaration, that, "refines " + refinedDeclaration.getName() + ", whose type is a type parameter");
+        } else if (refinedDeclaration.getContainer() instanceof Declaration
+                && CodegenUtil.isContainerFunctionalParameter(refinedDeclaration)) {
+            box(declaration, that, "parameter of a functional parameter, passed to a Callable");
+        } else if (refinedDeclaration instanceof Functional && Decl.isMpl((Functional)refinedDeclaration)) {
+            box(declaration, that, "function with multiple parameter lists, which returns a Callable");
+        } else {
             declaration.setUnboxed(false);
         }
         
@@ -251,6 +293,16 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
         boxFromAnnotation(declaration, that);
     }
 
+    private void inheritBoxingState(TypedDeclaration declaration, TypedDeclaration refinedDeclaration, Node that) {
+        if (Boolean.FALSE.equals(refinedDeclaration.getUnboxed())) {
+            box(declaration, that, "refines " + refinedDeclaration.getName() + ", which is boxed");
+        } else if (Boolean.TRUE.equals(refinedDeclaration.getUnboxed())) {
+            unbox(declaration);
+        } else {
+            declaration.setUnboxed(refinedDeclaration.getUnboxed());
+        }
+    }
+
     private void boxAttribute(TypedDeclaration declaration, Node that) {
         // deal with invalid input
         if(declaration == null)
@@ -268,9 +320,9 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
         // and set its state accordingly. NB this is not checked for validity!
         if(that instanceof StatementOrArgument) {
             if(CodegenUtil.hasCompilerAnnotation((StatementOrArgument)that, "boxed")) {
-                declaration.setUnboxed(false);
+                box(declaration, that, "annotated @boxed");
             } else if(CodegenUtil.hasCompilerAnnotation((StatementOrArgument)that, "unboxed")) {
-                declaration.setUnboxed(true);
+                unbox(declaration);
             }
         }
     }
@@ -332,7 +384,11 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
         // Then we check if there are any overriding compiler annotations
         boxFromAnnotation(declaration, that);
         // And finally we copy the setting back again to make sure they're really the same
-        paramDeclaration.setUnboxed(declaration.getUnboxed());
+        if (Boolean.TRUE.equals(declaration.getUnboxed())) {
+            unbox(paramDeclaration);
+        } else {
+            paramDeclaration.setUnboxed(declaration.getUnboxed());
+        }
     }
 
     @Override
@@ -381,10 +437,14 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
     public void visit(ForComprehensionClause that) {
         super.visit(that);
         // sort of a hack, because normal visiting rules would declare iterator variables to be potentially
-        // unboxed, but the implementation always boxes them for now, so override it after we visit the comprehension
+        // unboxed, but the implementation boxes them unless asked not to, so override it after we visit the comprehension
+        if (unboxComprehensionVariables()) {
+            return;
+        }
         ForIterator iter = that.getForIterator();
         if (iter instanceof ValueIterator) {
-            ((ValueIterator) iter).getVariable().getDeclarationModel().setUnboxed(false);
+            Variable variable = ((ValueIterator) iter).getVariable();
+            box(variable.getDeclarationModel(), variable, "comprehension variable, enable the UnboxedComprehension optimization");
         } else if (iter instanceof PatternIterator) {
             boxPattern(((PatternIterator) iter).getPattern());
         }
@@ -399,7 +459,8 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
                 boxPattern(p);
             }
         } else if (pattern instanceof Tree.VariablePattern) {
-            ((Tree.VariablePattern)pattern).getVariable().getDeclarationModel().setUnboxed(false);
+            Variable variable = ((Tree.VariablePattern)pattern).getVariable();
+            box(variable.getDeclarationModel(), variable, "comprehension variable, enable the UnboxedComprehension optimization");
         } else {
             throw BugException.unhandledCase(pattern);
         }
@@ -436,7 +497,7 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
         super.visit(that);
         // The variable in a for over a Range is always unboxed
         if (that.getVariable() != null && that.getSpecifierExpression().getExpression().getTerm() instanceof Tree.RangeOp) {
-            that.getVariable().getDeclarationModel().setUnboxed(true);
+            unbox(that.getVariable().getDeclarationModel());
         }
     }
 
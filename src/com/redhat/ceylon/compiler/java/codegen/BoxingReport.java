@@ -0,0 +1,83 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.codegen;
+
+import java.io.PrintWriter;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
+
+/**
+ * Records the declarations of a basic type ({@code Integer}, {@code Float},
+ * {@code Boolean}, etc) which the {@link BoxingDeclarationVisitor} decided 
+ * to box, along with the reason, so that we can tell which values cost
+ * an allocation. It is printed with {@code -verbose:boxing}.
+ * 
+ * The visitors of every unit share the same report, which may be filled
+ * in parallel.
+ */
+public class BoxingReport {
+    
+    private final Map<TypedDeclaration, Node> nodes = new LinkedHashMap<TypedDeclaration, Node>();
+    private final Map<TypedDeclaration, String> reasons = new LinkedHashMap<TypedDeclaration, String>();
+    
+    synchronized void boxed(TypedDeclaration declaration, Node that, String reason) {
+        nodes.put(declaration, that);
+        reasons.put(declaration, reason);
+    }
+    
+    /** A declaration we boxed has been unboxed after all */
+    synchronized void unboxed(TypedDeclaration declaration) {
+        nodes.remove(declaration);
+        reasons.remove(declaration);
+    }
+    
+    /**
+     * Prints the boxed declarations of the given unit, in source order
+     */
+    public synchronized void print(final PrintWriter writer, Tree.CompilationUnit unit) {
+        final Map<Node, TypedDeclaration> declarations = new IdentityHashMap<Node, TypedDeclaration>();
+        for (Map.Entry<TypedDeclaration, Node> entry : nodes.entrySet()) {
+            if (entry.getValue().getUnit() == unit.getUnit()) {
+                declarations.put(entry.getValue(), entry.getKey());
+            }
+        }
+        if (declarations.isEmpty()) {
+            return;
+        }
+        writer.println("Boxed declarations in "+unit.getUnit().getFullPath());
+        unit.visit(new Visitor() {
+            @Override
+            public void visitAny(Node that) {
+                TypedDeclaration declaration = declarations.get(that);
+                if (declaration != null) {
+                    writer.println("  "+that.getLocation()+" "+declaration.getName()+": "+reasons.get(declaration));
+                }
+                super.visitAny(that);
+            }
+        });
+        writer.flush();
+    }
+}
@@ -51,6 +51,7 @@ import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
 import com.redhat.ceylon.model.typechecker.model.TypedReference;
 import com.redhat.ceylon.model.typechecker.model.Value;
 import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.code.TypeTags;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.JCAnnotation;
 import com.sun.tools.javac.tree.JCTree.JCClassDecl;
@@ -104,6 +105,14 @@ public class CallableBuilder {
 
     private static final int CALLABLE_MAX_FIZED_ARITY = 3;
     
+    /** The class of invokedynamic Callables, see {@link #buildInvokeDynamic()} */
+    private static final String INDY_CALLABLE_CLASS_NAME = "$callable$";
+    /** The bootstrap method of invokedynamic Callables */
+    private static final String INDY_BOOTSTRAP_METHOD_NAME = "$callable$bootstrap";
+    /** The prefix of the static methods invoked by invokedynamic Callables */
+    private static final String INDY_BODY_METHOD_PREFIX = "$callable";
+    private static final String INDY_HANDLE_FIELD_NAME = "$handle$";
+    
     static interface DefaultValueMethodTransformation {
         public JCExpression makeDefaultValueMethod(AbstractTransformer gen, 
                 Parameter defaultedParam, List<JCExpression> defaultMethodArgs);
@@ -148,6 +157,12 @@ public class CallableBuilder {
 
     private List<JCAnnotation> annotations;
     
+    /**
+     * The name of the static method which the {@code $call$()} method 
+     * becomes when we build an invokedynamic Callable
+     */
+    private String invokeDynamicBodyName;
+    
     private CallableBuilder(CeylonTransformer gen, Node node, Type typeModel, ParameterList paramLists) {
         this.gen = gen;
         this.node = node;
@@ -259,9 +274,40 @@ public class CallableBuilder {
         }
         cb.useTransformation(tx);
         
+        if (letStmts.isEmpty()
+                && cb.isInvokeDynamicCandidate(forwardCallTo)
+                && !gen.statementGen().isOptimizationDisabled(gen.statementGen().getCurrentStatement(), 
+                        Optimization.InvokeDynamicCallable)) {
+            JCExpression indy = cb.buildInvokeDynamic();
+            if (indy != null) {
+                return indy;
+            }
+        }
         return letStmts.isEmpty() ? cb.build() : gen.make().LetExpr(letStmts.toList(), cb.build());
     }
     
+    /**
+     * Determines whether the Callable for the given reference can be built 
+     * by {@link #buildInvokeDynamic()}: it has to be a reference to a 
+     * non-generic toplevel function with a single parameter list of at most 
+     * {@link #CALLABLE_MAX_FIZED_ARITY} parameters, none of which is 
+     * defaulted or variadic. Such a Callable captures nothing.
+     */
+    private boolean isInvokeDynamicCandidate(Tree.StaticMemberOrTypeExpression forwardCallTo) {
+        if (forwardCallTo instanceof Tree.BaseMemberExpression == false
+                || forwardCallTo.getDeclaration() instanceof Function == false) {
+            return false;
+        }
+        Function function = (Function)forwardCallTo.getDeclaration();
+        return function.isToplevel()
+                && function.getTypeParameters().isEmpty()
+                && function.getParameterLists().size() == 1
+                && !isVariadic
+                && !hasOptionalParameters
+                && numParams <= CALLABLE_MAX_FIZED_ARITY
+                && !typeModel.isTypeConstructor();
+    }
+    
     /**
      * Used for "static" method or class references. For example:
      * <pre>
@@ -991,11 +1037,21 @@ public class CallableBuilder {
     }
     
     protected final MethodDefinitionBuilder makeCallMethod(List<JCStatement> body, int arity) {
-        MethodDefinitionBuilder callMethod = MethodDefinitionBuilder.callable(gen);
-        callMethod.isOverride(true);
-        callMethod.modifiers(Flags.PUBLIC);
-        Type returnType = gen.getReturnTypeOfCallable(typeModel);
-        callMethod.resultType(gen.makeJavaType(returnType, JT_NO_PRIMITIVES), null);
+        MethodDefinitionBuilder callMethod;
+        if (invokeDynamicBodyName != null) {
+            // the static method of the top level class invoked by an
+            // invokedynamic Callable, see buildInvokeDynamic()
+            callMethod = MethodDefinitionBuilder.systemMethod(gen, invokeDynamicBodyName);
+            callMethod.ignoreModelAnnotations();
+            callMethod.modifiers(Flags.PRIVATE | Flags.STATIC);
+            callMethod.resultType(null, gen.makeIdent(gen.syms().objectType));
+        } else {
+            callMethod = MethodDefinitionBuilder.callable(gen);
+            callMethod.isOverride(true);
+            callMethod.modifiers(Flags.PUBLIC);
+            Type returnType = gen.getReturnTypeOfCallable(typeModel);
+            callMethod.resultType(gen.makeJavaType(returnType, JT_NO_PRIMITIVES), null);
+        }
         // Now append formal parameters
         switch (arity) {
         case 3:
@@ -1557,6 +1613,187 @@ public class CallableBuilder {
         return result;
     }
 
+    /**
+     * Builds an {@code invokedynamic} instruction which produces the 
+     * Callable, instead of instantiating an anonymous subclass of 
+     * {@code AbstractCallable}:
+     * <ul>
+     * <li>the {@code $call$()} method becomes a private static method of 
+     *     the top level class,</li>
+     * <li>the instruction is linked by a bootstrap method of the top level 
+     *     class to the constructor of a single {@code AbstractCallable} 
+     *     subclass, also a member of the top level class, which invokes 
+     *     that static method through a {@code MethodHandle}.</li>
+     * </ul>
+     * So however many such Callables the top level class contains, they 
+     * only need one class. 
+     * Returns null if the top level class cannot have static members.
+     */
+    private JCExpression buildInvokeDynamic() {
+        ClassDefinitionBuilder holder = gen.current() != null ? gen.current().getStaticMemberHolder() : null;
+        if (holder == null) {
+            return null;
+        }
+        gen.at(node);
+        if (!holder.hasInvokeDynamicCallableSupport()) {
+            holder.defs(makeInvokeDynamicSupport());
+            holder.setHasInvokeDynamicCallableSupport();
+        }
+        invokeDynamicBodyName = gen.naming.aliasName(INDY_BODY_METHOD_PREFIX).toString();
+        for (MethodDefinitionBuilder mdb : transformation.makeMethodsForArity(numParams)) {
+            holder.method(mdb);
+        }
+        JCExpression indy = gen.make().Apply(null, 
+                gen.make().IndyIdent(gen.names().fromString(Naming.getCallableMethodName()), 
+                        gen.makeJavaType(typeModel, AbstractTransformer.JT_RAW), 
+                        List.<JCExpression>of(gen.make().Type(gen.syms().ceylonTypeDescriptorType), 
+                                gen.make().Type(gen.syms().ceylonTypeDescriptorType)), 
+                        gen.make().Ident(gen.names().fromString(holder.getClassName())), 
+                        gen.names().fromString(INDY_BOOTSTRAP_METHOD_NAME), 
+                        List.<Object>of(invokeDynamicBodyName, typeModel.asString(true), Integer.valueOf(numParams))),
+                List.<JCExpression>of(gen.makeReifiedTypeArgument(typeModel.getTypeArgumentList().get(0)),
+                        gen.makeReifiedTypeArgument(typeModel.getTypeArgumentList().get(1))));
+        JCExpression result = gen.make().TypeCast(gen.makeJavaType(typeModel), indy);
+        gen.at(null);
+        return result;
+    }
+    
+    /**
+     * Makes the members of the top level class which are shared by all its 
+     * invokedynamic Callables:
+     * <pre>
+     *     static final class $callable$ extends AbstractCallable&lt;Object&gt; {
+     *         private final MethodHandle $handle$;
+     *         $callable$(TypeDescriptor $reifiedReturn, TypeDescriptor $reifiedArguments, 
+     *                 String type, MethodHandle handle) {
+     *             super($reifiedReturn, $reifiedArguments, type, (short)-1);
+     *             this.$handle$ = handle;
+     *         }
+     *         public Object $call$(Object $param$0) {
+     *             return $handle$.invokeExact($param$0);
+     *         }
+     *         // and likewise for the other fixed arities
+     *     }
+     *     
+     *     static CallSite $callable$bootstrap(MethodHandles.Lookup caller, String name, MethodType type, 
+     *             String body, String typeName, int arity) {
+     *         MethodHandles.Lookup lookup = MethodHandles.lookup();
+     *         MethodHandle handle = lookup.findStatic(lookup.lookupClass(), body, MethodType.genericMethodType(arity));
+     *         MethodHandle constructor = lookup.findConstructor($callable$.class, 
+     *                 MethodType.methodType(void.class, TypeDescriptor.class, TypeDescriptor.class, String.class, MethodHandle.class));
+     *         return new ConstantCallSite(MethodHandles.insertArguments(constructor, 2, typeName, handle).asType(type));
+     *     }
+     * </pre>
+     * They are package private because the {@code invokedynamic} instructions
+     * can be in nested classes.
+     */
+    private List<JCTree> makeInvokeDynamicSupport() {
+        ListBuffer<JCTree> classBody = ListBuffer.lb();
+        classBody.append(gen.make().VarDef(gen.make().Modifiers(Flags.PRIVATE | Flags.FINAL), 
+                gen.names().fromString(INDY_HANDLE_FIELD_NAME), 
+                gen.makeIdent(gen.syms().methodHandleType), 
+                null));
+        
+        MethodDefinitionBuilder ctor = MethodDefinitionBuilder.constructor(gen);
+        ctor.ignoreModelAnnotations();
+        ctor.parameter(makeIndyParam("$reifiedReturn", gen.make().Type(gen.syms().ceylonTypeDescriptorType)));
+        ctor.parameter(makeIndyParam("$reifiedArguments", gen.make().Type(gen.syms().ceylonTypeDescriptorType)));
+        ctor.parameter(makeIndyParam("type", gen.makeIdent(gen.syms().stringType)));
+        ctor.parameter(makeIndyParam("handle", gen.makeIdent(gen.syms().methodHandleType)));
+        ctor.body(gen.make().Exec(gen.make().Apply(null, gen.naming.makeSuper(), 
+                List.<JCExpression>of(gen.makeUnquotedIdent("$reifiedReturn"), 
+                        gen.makeUnquotedIdent("$reifiedArguments"), 
+                        gen.makeUnquotedIdent("type"), 
+                        gen.make().TypeCast(gen.syms().shortType, gen.makeInteger(-1))))));
+        ctor.body(gen.make().Exec(gen.make().Assign(
+                gen.makeSelect("this", INDY_HANDLE_FIELD_NAME), 
+                gen.makeUnquotedIdent("handle"))));
+        classBody.append(ctor.build());
+        
+        for (int arity = 0; arity <= CALLABLE_MAX_FIZED_ARITY; arity++) {
+            MethodDefinitionBuilder callMethod = MethodDefinitionBuilder.callable(gen);
+            callMethod.isOverride(true);
+            callMethod.modifiers(Flags.PUBLIC);
+            callMethod.resultType(null, gen.makeIdent(gen.syms().objectType));
+            ListBuffer<JCExpression> args = ListBuffer.lb();
+            for (int ii = 0; ii < arity; ii++) {
+                callMethod.parameter(makeCallableCallParam(0, ii));
+                args.append(makeParamIdent(gen, ii));
+            }
+            callMethod.body(gen.make().Return(gen.make().Apply(null, 
+                    gen.makeSelect(gen.makeUnquotedIdent(INDY_HANDLE_FIELD_NAME), "invokeExact"), 
+                    args.toList())));
+            classBody.append(callMethod.build());
+        }
+        
+        JCClassDecl callableClass = gen.make().ClassDef(
+                gen.make().Modifiers(Flags.STATIC | Flags.FINAL, gen.makeAtIgnore()), 
+                gen.names().fromString(INDY_CALLABLE_CLASS_NAME), 
+                List.<JCTypeParameter>nil(), 
+                gen.make().TypeApply(gen.makeIdent(gen.syms().ceylonAbstractCallableType), 
+                        List.<JCExpression>of(gen.makeIdent(gen.syms().objectType))), 
+                List.<JCExpression>nil(), 
+                classBody.toList());
+        
+        MethodDefinitionBuilder bootstrap = MethodDefinitionBuilder.systemMethod(gen, INDY_BOOTSTRAP_METHOD_NAME);
+        bootstrap.ignoreModelAnnotations();
+        bootstrap.modifiers(Flags.STATIC);
+        bootstrap.resultType(null, gen.makeQuotedFQIdent("java.lang.invoke.CallSite"));
+        bootstrap.parameter(makeIndyParam("caller", gen.makeIdent(gen.syms().methodHandleLookupType)));
+        bootstrap.parameter(makeIndyParam("name", gen.makeIdent(gen.syms().stringType)));
+        bootstrap.parameter(makeIndyParam("type", gen.makeIdent(gen.syms().methodTypeType)));
+        bootstrap.parameter(makeIndyParam("body", gen.makeIdent(gen.syms().stringType)));
+        bootstrap.parameter(makeIndyParam("typeName", gen.makeIdent(gen.syms().stringType)));
+        bootstrap.parameter(makeIndyParam("arity", gen.make().TypeIdent(TypeTags.INT)));
+        bootstrap.body(gen.makeVar(Flags.FINAL, "lookup", 
+                gen.makeIdent(gen.syms().methodHandleLookupType), 
+                gen.make().Apply(null, gen.makeSelect(gen.makeIdent(gen.syms().methodHandlesType), "lookup"), 
+                        List.<JCExpression>nil())));
+        bootstrap.body(gen.makeVar(Flags.FINAL, "handle", 
+                gen.makeIdent(gen.syms().methodHandleType), 
+                gen.make().Apply(null, gen.makeSelect("lookup", "findStatic"), 
+                        List.<JCExpression>of(
+                                gen.make().Apply(null, gen.makeSelect("lookup", "lookupClass"), List.<JCExpression>nil()),
+                                gen.makeUnquotedIdent("body"),
+                                gen.make().Apply(null, gen.makeSelect(gen.makeIdent(gen.syms().methodTypeType), "genericMethodType"), 
+                                        List.<JCExpression>of(gen.makeUnquotedIdent("arity")))))));
+        bootstrap.body(gen.makeVar(Flags.FINAL, "constructor", 
+                gen.makeIdent(gen.syms().methodHandleType), 
+                gen.make().Apply(null, gen.makeSelect("lookup", "findConstructor"), 
+                        List.<JCExpression>of(
+                                makeClassLiteral(gen.makeUnquotedIdent(INDY_CALLABLE_CLASS_NAME)),
+                                gen.make().Apply(null, gen.makeSelect(gen.makeIdent(gen.syms().methodTypeType), "methodType"), 
+                                        List.<JCExpression>of(
+                                                makeClassLiteral(gen.make().TypeIdent(TypeTags.VOID)),
+                                                makeClassLiteral(gen.make().Type(gen.syms().ceylonTypeDescriptorType)),
+                                                makeClassLiteral(gen.make().Type(gen.syms().ceylonTypeDescriptorType)),
+                                                makeClassLiteral(gen.makeIdent(gen.syms().stringType)),
+                                                makeClassLiteral(gen.makeIdent(gen.syms().methodHandleType))))))));
+        JCExpression bound = gen.make().Apply(null, gen.makeSelect(gen.makeIdent(gen.syms().methodHandlesType), "insertArguments"), 
+                List.<JCExpression>of(gen.makeUnquotedIdent("constructor"), 
+                        gen.makeInteger(2), 
+                        gen.makeUnquotedIdent("typeName"), 
+                        gen.makeUnquotedIdent("handle")));
+        bootstrap.body(gen.make().Return(gen.make().NewClass(null, null, 
+                gen.makeQuotedFQIdent("java.lang.invoke.ConstantCallSite"), 
+                List.<JCExpression>of(gen.make().Apply(null, gen.makeSelect(bound, "asType"), 
+                        List.<JCExpression>of(gen.makeUnquotedIdent("type")))), 
+                null)));
+        
+        return List.<JCTree>of(callableClass, bootstrap.build());
+    }
+    
+    private ParameterDefinitionBuilder makeIndyParam(String name, JCExpression type) {
+        ParameterDefinitionBuilder pdb = ParameterDefinitionBuilder.systemParameter(gen, name);
+        pdb.modifiers(Flags.FINAL);
+        pdb.type(type, null);
+        return pdb;
+    }
+    
+    private JCExpression makeClassLiteral(JCExpression type) {
+        return gen.make().Select(type, gen.names()._class);
+    }
+
     protected JCExpression buildTypeConstructor(Type callableType,
             JCNewClass callableInstance) {
         JCExpression result;
@@ -952,19 +952,19 @@ public class CeylonVisitor extends Visitor {
     }
 
     public void visit(Tree.TypeLiteral that) {
-        append(gen.expressionGen().transform(that));
+        append(gen.expressionGen().transformMetaLiteral(that));
     }
 
     public void visit(Tree.MemberLiteral that) {
-        append(gen.expressionGen().transform(that));
+        append(gen.expressionGen().transformMetaLiteral(that));
     }
 
     public void visit(Tree.ModuleLiteral that) {
-        append(gen.expressionGen().transform(that));
+        append(gen.expressionGen().transformMetaLiteral(that));
     }
 
     public void visit(Tree.PackageLiteral that) {
-        append(gen.expressionGen().transform(that));
+        append(gen.expressionGen().transformMetaLiteral(that));
     }
 
     // FIXME: port TypeName?
@@ -25,8 +25,11 @@ import static com.sun.tools.javac.code.Flags.INTERFACE;
 import static com.sun.tools.javac.code.Flags.PRIVATE;
 import static com.sun.tools.javac.code.Flags.PUBLIC;
 import static com.sun.tools.javac.code.Flags.STATIC;
+import static com.sun.tools.javac.code.Flags.VOLATILE;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.redhat.ceylon.compiler.java.codegen.recovery.TransformationPlan;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
@@ -101,6 +104,23 @@ public class ClassDefinitionBuilder {
 
     private ClassDefinitionBuilder containingClassBuilder;
 
+    private boolean hasInvokeDynamicCallableSupport = false;
+
+    static final String TYPE_DESCRIPTOR_HOLDER_NAME = "$TypeDescriptors$";
+    static final String TYPE_DESCRIPTOR_CONSTANT_PREFIX = "$td$";
+
+    /** The names of the type descriptor constants of this class, by type */
+    private Map<String, String> typeDescriptorConstants;
+    
+    private ListBuffer<JCTree> typeDescriptorConstantDefs;
+
+    static final String METAMODEL_CONSTANT_PREFIX = "$ml$";
+
+    /** The names of the metamodel literal caches of this class, by literal */
+    private Map<String, String> metamodelConstants;
+    
+    private ListBuffer<JCTree> metamodelConstantDefs;
+
     private Type extendingType;
 
     private Type thisType;
@@ -165,6 +185,89 @@ public class ClassDefinitionBuilder {
         return result;
     }
     
+    /**
+     * Returns the builder of the top level class which holds the static 
+     * members generated for the code within this class, such as those of 
+     * the invokedynamic Callables (see {@link CallableBuilder}) or the 
+     * type descriptor constants, or null if there is no such class 
+     * which can still have static members added to it.
+     */
+    ClassDefinitionBuilder getStaticMemberHolder() {
+        ClassDefinitionBuilder topLevel = getTopLevelBuilder();
+        if (topLevel.isInterface() 
+                || topLevel.isCompanion
+                || topLevel.built) {
+            return null;
+        }
+        return topLevel;
+    }
+    
+    boolean hasInvokeDynamicCallableSupport() {
+        return hasInvokeDynamicCallableSupport;
+    }
+    
+    void setHasInvokeDynamicCallableSupport() {
+        this.hasInvokeDynamicCallableSupport = true;
+    }
+    
+    /**
+     * Returns an expression for the type descriptor constant of the given 
+     * type, declaring it with the given descriptor as initializer the first 
+     * time the type is seen. The constants are fields of a nested holder 
+     * class, so they are initialized when first used rather than as part 
+     * of the static initialization of this class.
+     */
+    JCExpression makeTypeDescriptorConstant(String typeName, JCExpression descriptor) {
+        if (typeDescriptorConstants == null) {
+            typeDescriptorConstants = new HashMap<String, String>();
+            typeDescriptorConstantDefs = ListBuffer.lb();
+        }
+        String fieldName = typeDescriptorConstants.get(typeName);
+        if (fieldName == null) {
+            fieldName = TYPE_DESCRIPTOR_CONSTANT_PREFIX + typeDescriptorConstants.size();
+            typeDescriptorConstants.put(typeName, fieldName);
+            typeDescriptorConstantDefs.append(gen.make().VarDef(
+                    gen.make().Modifiers(STATIC | FINAL), 
+                    gen.names().fromString(fieldName), 
+                    gen.makeTypeDescriptorType(), 
+                    descriptor));
+        }
+        return gen.makeSelect(gen.makeSelect(name, TYPE_DESCRIPTOR_HOLDER_NAME), fieldName);
+    }
+    
+    /**
+     * Returns an expression which evaluates the given metamodel literal the 
+     * first time it's used and caches it in a static field of this class, 
+     * declaring that field the first time a literal with the given key is 
+     * seen. Unlike the 
+     * type descriptor constants these are not initialized by a holder class,
+     * so that a literal which fails to evaluate (for example because its 
+     * module is missing) throws the same exception every time, and doesn't 
+     * prevent the other literals from being evaluated.
+     */
+    JCExpression makeMetamodelConstant(Type type, String key, JCExpression literal) {
+        if (metamodelConstants == null) {
+            metamodelConstants = new HashMap<String, String>();
+            metamodelConstantDefs = ListBuffer.lb();
+        }
+        String fieldName = metamodelConstants.get(key);
+        if (fieldName == null) {
+            fieldName = METAMODEL_CONSTANT_PREFIX + metamodelConstants.size();
+            metamodelConstants.put(key, fieldName);
+            metamodelConstantDefs.append(gen.make().VarDef(
+                    gen.make().Modifiers(PRIVATE | STATIC | VOLATILE, gen.makeAtIgnore()), 
+                    gen.names().fromString(fieldName), 
+                    gen.makeJavaType(type, AbstractTransformer.JT_NO_PRIMITIVES), 
+                    null));
+        }
+        // $ml$0 != null ? $ml$0 : ($ml$0 = (T)LITERAL)
+        return gen.make().Conditional(
+                gen.make().Binary(JCTree.NE, gen.makeSelect(name, fieldName), gen.makeNull()), 
+                gen.makeSelect(name, fieldName), 
+                gen.make().Assign(gen.makeSelect(name, fieldName), 
+                        gen.make().TypeCast(gen.makeJavaType(type, AbstractTransformer.JT_NO_PRIMITIVES), literal)));
+    }
+    
     public List<JCTree> build() {
         if (built) {
             throw new BugException("already built");
@@ -257,6 +360,18 @@ public class ClassDefinitionBuilder {
             }
         }
         defs.appendList(this.defs);
+        if (metamodelConstantDefs != null) {
+            defs.appendList(metamodelConstantDefs);
+        }
+        if (typeDescriptorConstantDefs != null) {
+            defs.append(gen.make().ClassDef(
+                    gen.make().Modifiers(STATIC | FINAL, gen.makeAtIgnore()), 
+                    gen.names().fromString(TYPE_DESCRIPTOR_HOLDER_NAME), 
+                    List.<JCTypeParameter>nil(), 
+                    null, 
+                    List.<JCExpression>nil(), 
+                    typeDescriptorConstantDefs.toList()));
+        }
     }
 
     private JCExpression getSuperclass(Type extendedType) {
@@ -681,16 +796,21 @@ public class ClassDefinitionBuilder {
     }
 
 
-    public ClassDefinitionBuilder refineReifiedType(Type thisType) {
+    /**
+     * Refines the reified type arguments of the companion instance created 
+     * by a superclass. When that companion is created lazily it may not 
+     * exist yet, so it's only refined if it does.
+     */
+    public ClassDefinitionBuilder refineReifiedType(Type thisType, boolean lazy) {
         // init: $type$impl.$refine(tp1, tp2...)
         Interface iface = (Interface) thisType.getDeclaration();
-        String companion = gen.naming.getCompanionFieldName(iface);
-        ListBuffer<JCExpression> typeParameters = new ListBuffer<JCExpression>();
-        for(Type tp : thisType.getTypeArgumentList()){
-            typeParameters.add(gen.makeReifiedTypeArgument(tp));
+        JCStatement refine = gen.make().Exec(gen.makeRefineReifiedType(gen.naming.makeCompanionFieldName(iface), thisType));
+        if (lazy) {
+            // init: if ($type$impl != null) $type$impl.$refine(tp1, tp2...)
+            refine = gen.make().If(gen.make().Binary(JCTree.NE, gen.naming.makeCompanionFieldName(iface), gen.makeNull()), 
+                    refine, null);
         }
-        JCExpression refine = gen.make().Apply(null, gen.makeSelect(companion, gen.naming.getRefineTypeParametersMethodName()), typeParameters.toList());
-        initBuilder.init(gen.make().Exec(refine));
+        initBuilder.init(refine);
         return this;
     }
 
@@ -1424,7 +1424,21 @@ public class ClassTransformer extends AbstractTransformer {
         serializationReferences(model, classBuilder);
         serializationGet(model, classBuilder);
         serializationSet(model, classBuilder);
-        
+        if (hasSerializationFieldIndex(model)) {
+            serializationFieldIndex(model, classBuilder);
+        }
+    }
+    
+    /**
+     * Whether to generate the static field-index accessors: they're opt-in
+     * and only possible for toplevel non-generic classes, since Java 
+     * inner classes cannot have static members and the type parameters 
+     * are not in scope in a static method.
+     */
+    private boolean hasSerializationFieldIndex(Class model) {
+        return Decl.isToplevel(model)
+                && model.getTypeParameters().isEmpty()
+                && !statementGen().isOptimizationDisabled(null, Optimization.SerializationFieldIndex);
     }
     
     private boolean hasField(Declaration member) {
@@ -1527,7 +1541,8 @@ public class ClassTransformer extends AbstractTransformer {
 
                 private void assignCompanion(Class model, Interface iface) {
                     if (hasImpl(iface)
-                            && excludeFields.add(getCompanionFieldName(iface))) {
+                            && excludeFields.add(getCompanionFieldName(iface))
+                            && !isCompanionInstantiatedLazily(model, iface)) {
                         stmts.add(makeCompanionInstanceAssignment(model, iface, model.getType().getSupertype(iface)));
                     }
                 }
@@ -1759,23 +1774,8 @@ public class ClassTransformer extends AbstractTransformer {
             if (hasField(member)) {
                 if (member instanceof Function)
                     continue; // TODO: This class is not serializable
-                ListBuffer<JCStatement> caseStmts = ListBuffer.<JCStatement>lb();
-                if (member instanceof Value
-                        && ((Value)member).isLate()) {
-                    // TODO this should be encapsulated so the ADB and this
-                    // code can just call something common
-                    JCExpression test;
-                    if (CodegenUtil.needsLateInitField((Value)member, typeFact())) {
-                        test = make().Unary(JCTree.NOT, naming.makeUnquotedIdent(Naming.getInitializationFieldName(member.getName())));
-                    } else {
-                        test = make().Binary(JCTree.EQ, naming.makeQualifiedName(naming.makeThis(), (Value)member, Naming.NA_IDENT), makeNull());
-                    }
-                    caseStmts.add(make().If(
-                            test,
-                            make().Return(makeLanguageSerializationValue("uninitializedLateValue")), null));
-                }
-                caseStmts.add(make().Return(makeSerializationGetter((Value)member)));
-                cases.add(make().Case(make().Literal(member.getQualifiedNameString()), caseStmts.toList()));
+                cases.add(make().Case(make().Literal(member.getQualifiedNameString()), 
+                        makeSerializationGetterCase((Value)member, false)));
             }
         }
         SyntheticName reference = naming.synthetic(Unfix.reference);
@@ -1787,10 +1787,7 @@ public class ClassTransformer extends AbstractTransformer {
                     List.<JCExpression>of(reference.makeIdent()))));
         } else {
             // throw (or pass to something else to throw, based on policy)
-            defaultCase.add(make().Throw(make().NewClass(null, null,
-                    naming.makeQuotedFQIdent("java.lang.RuntimeException"),
-                    List.<JCExpression>of(make().Literal("unknown attribute")),
-                    null)));
+            defaultCase.add(makeUnknownAttributeThrow());
         }
         cases.add(make().Case(null, defaultCase.toList()));
         
@@ -1832,19 +1829,47 @@ public class ClassTransformer extends AbstractTransformer {
         classBuilder.method(mdb);
     }
     
-    private JCExpression makeSerializationGetter(Value value) {
+    private List<JCStatement> makeSerializationGetterCase(Value member, boolean dollarThis) {
+        ListBuffer<JCStatement> caseStmts = ListBuffer.<JCStatement>lb();
+        if (member.isLate()) {
+            // TODO this should be encapsulated so the ADB and this
+            // code can just call something common
+            JCExpression test;
+            if (CodegenUtil.needsLateInitField(member, typeFact())) {
+                test = make().Unary(JCTree.NOT, naming.makeQualIdent(dollarThis ? naming.makeQuotedThis() : null, 
+                        Naming.getInitializationFieldName(member.getName())));
+            } else {
+                test = make().Binary(JCTree.EQ, naming.makeQualifiedName(makeSerializationSelf(dollarThis), member, Naming.NA_IDENT), makeNull());
+            }
+            caseStmts.add(make().If(
+                    test,
+                    make().Return(makeLanguageSerializationValue("uninitializedLateValue")), null));
+        }
+        caseStmts.add(make().Return(makeSerializationGetter(member, dollarThis)));
+        return caseStmts.toList();
+    }
+    
+    /** 
+     * The instance being (de)serialized: {@code this}, or the {@code $this}
+     * parameter of the static indexed accessors.
+     */
+    private JCExpression makeSerializationSelf(boolean dollarThis) {
+        return dollarThis ? naming.makeQuotedThis() : naming.makeThis();
+    }
+    
+    private JCExpression makeSerializationGetter(Value value, boolean dollarThis) {
             
         JCExpression result;
         if (value.isToplevel() || value.isLate()) {// XXX duplicates logic in AttributeDefinitionBuilder
             // We use the setter for late values, since that will allocate 
             // the array if needed.
             result = make().Apply(null,
-                    naming.makeQualifiedName(naming.makeThis(), value, Naming.NA_MEMBER | Naming.NA_GETTER),
+                    naming.makeQualifiedName(makeSerializationSelf(dollarThis), value, Naming.NA_MEMBER | Naming.NA_GETTER),
                     List.<JCExpression>nil());
         } else {
             // We bypass the setter
 //            if (value.isVariable()) {
-                result = naming.makeQualifiedName(naming.makeThis(), value, Naming.NA_IDENT);
+                result = naming.makeQualifiedName(makeSerializationSelf(dollarThis), value, Naming.NA_IDENT);
             /*} else {
                 // The field will have final modifier, so we need some 
                 // jiggery pokery to reset it.
@@ -1860,6 +1885,124 @@ public class ClassTransformer extends AbstractTransformer {
         return result;
     }
     
+    /**
+     * Generates a table of the fields declared by this class, and static 
+     * accessors which get and set those fields by their index in that 
+     * table. Unlike {@code $get$()} and {@code $set$()} these don't need to
+     * switch on the qualified name of the attribute, nor to go up the 
+     * {@code super} chain, since the caller can resolve the index (and the
+     * declaring class) once per class rather than once per field and 
+     * instance:
+     * <pre>
+     * public static final String[] $serialization$fields$ = {"pkg::C.attr1", ...};
+     * 
+     * public static Object $getField$(C $this, int $index$) {
+     *     switch ($index$) {
+     *     case 0:
+     *         return $this.attr1;
+     *     // ... other fields of this class
+     *     default:
+     *         throw new RuntimeException("unknown attribute");
+     *     }
+     * }
+     * 
+     * public static void $setField$(C $this, int $index$, Object instance) {
+     *     switch ($index$) {
+     *     case 0:
+     *         $this.attr1 = ...;
+     *         break;
+     *     // ... other fields of this class
+     *     default:
+     *         throw new RuntimeException("unknown attribute");
+     *     }
+     * }
+     * </pre>
+     */
+    private void serializationFieldIndex(Class model,
+            ClassDefinitionBuilder classBuilder) {
+        SyntheticName index = naming.synthetic(Unfix.$index$);
+        SyntheticName instance = naming.synthetic(Unfix.instance);
+        
+        ListBuffer<JCExpression> names = ListBuffer.<JCExpression>lb();
+        ListBuffer<JCCase> getCases = ListBuffer.<JCCase>lb();
+        ListBuffer<JCCase> setCases = ListBuffer.<JCCase>lb();
+        boolean[] needsLookup = new boolean[]{false};
+        for (Declaration member : model.getMembers()) {
+            if (hasField(member)) {
+                if (member instanceof Function)
+                    continue; // TODO: This class is not serializable
+                JCExpression label = make().Literal(names.size());
+                names.add(make().Literal(member.getQualifiedNameString()));
+                getCases.add(make().Case(label, 
+                        makeSerializationGetterCase((Value)member, true)));
+                
+                ListBuffer<JCStatement> caseStmts = ListBuffer.<JCStatement>lb();
+                if (((Value)member).isLate()) {
+                    caseStmts.add(make().If(make().TypeTest(instance.makeIdent(),
+                            make().Type(syms().ceylonUninitializedLateValueType)),
+                            make().Break(null), null));
+                }
+                caseStmts.add(makeDeserializationAssignment((Value)member, needsLookup, true));
+                caseStmts.add(make().Break(null));
+                setCases.add(make().Case(make().Literal(names.size() - 1), caseStmts.toList()));
+            }
+        }
+        getCases.add(make().Case(null, List.<JCStatement>of(makeUnknownAttributeThrow())));
+        setCases.add(make().Case(null, List.<JCStatement>of(makeUnknownAttributeThrow())));
+        
+        classBuilder.defs(make().VarDef(make().Modifiers(PUBLIC | STATIC | FINAL, makeAtIgnore()),
+                names().fromString(Naming.getSerializationFieldNamesName()),
+                make().TypeArray(make().Type(syms().stringType)),
+                make().NewArray(make().Type(syms().stringType), List.<JCExpression>nil(), names.toList())));
+        
+        classBuilder.method(MethodDefinitionBuilder.systemMethod(this, Naming.getSerializationFieldGetterName())
+                .ignoreModelAnnotations()
+                .modifiers(PUBLIC | STATIC)
+                .resultType(null, make().Type(syms().objectType))
+                .parameter(makeSerializationSelfParameter(model))
+                .parameter(ParameterDefinitionBuilder.systemParameter(this, index.getName())
+                        .modifiers(FINAL)
+                        .type(make().TypeIdent(TypeTags.INT), null))
+                .body(make().Switch(index.makeIdent(), getCases.toList())));
+        
+        ListBuffer<JCStatement> stmts = ListBuffer.<JCStatement>lb();
+        if (needsLookup[0]) {
+            stmts.add(makeVar(FINAL, 
+                "lookup", 
+                naming.makeQualIdent(make().Type(syms().methodHandlesType), "Lookup"), 
+                make().Apply(null, naming.makeQuotedFQIdent("java.lang.invoke.MethodHandles.lookup"), List.<JCExpression>nil())));
+        }
+        stmts.add(make().Switch(index.makeIdent(), setCases.toList()));
+        classBuilder.method(MethodDefinitionBuilder.systemMethod(this, Naming.getSerializationFieldSetterName())
+                .ignoreModelAnnotations()
+                .modifiers(PUBLIC | STATIC)
+                .parameter(makeSerializationSelfParameter(model))
+                .parameter(ParameterDefinitionBuilder.systemParameter(this, index.getName())
+                        .modifiers(FINAL)
+                        .type(make().TypeIdent(TypeTags.INT), null))
+                .parameter(ParameterDefinitionBuilder.systemParameter(this, instance.getName())
+                        .modifiers(FINAL)
+                        .type(make().Type(syms().objectType), null))
+                .body(stmts.toList()));
+    }
+    
+    private ParameterDefinitionBuilder makeSerializationSelfParameter(Class model) {
+        return ParameterDefinitionBuilder.systemParameter(this, "$this")
+                .modifiers(FINAL)
+                .type(makeJavaType(model.getType(), JT_RAW), null);
+    }
+    
+    /** 
+     * The throw for an attribute which {@code $get$()}, {@code $set$()} or 
+     * the indexed accessors don't know about 
+     */
+    private JCStatement makeUnknownAttributeThrow() {
+        return make().Throw(make().NewClass(null, null,
+                naming.makeQuotedFQIdent("java.lang.RuntimeException"),
+                List.<JCExpression>of(make().Literal("unknown attribute")),
+                null));
+    }
+    
     private void serializationSet(Class model,
             ClassDefinitionBuilder classBuilder) {
         MethodDefinitionBuilder mdb = MethodDefinitionBuilder.systemMethod(this, Unfix.$set$.toString());
@@ -1904,7 +2047,7 @@ public class ClassTransformer extends AbstractTransformer {
                             make().Type(syms().ceylonUninitializedLateValueType)),
                             make().Break(null), null));
                 }
-                caseStmts.add(makeDeserializationAssignment((Value)member, needsLookup));
+                caseStmts.add(makeDeserializationAssignment((Value)member, needsLookup, false));
                 caseStmts.add(make().Break(null));
                 cases.add(make().Case(make().Literal(member.getQualifiedNameString()), caseStmts.toList()));
             }
@@ -1918,10 +2061,7 @@ public class ClassTransformer extends AbstractTransformer {
                     List.<JCExpression>of(reference.makeIdent(), instance.makeIdent()))));
         } else {
             // throw (or pass to something else to throw, based on policy)
-            defaultCase.add(make().Throw(make().NewClass(null, null,
-                    naming.makeQuotedFQIdent("java.lang.RuntimeException"),
-                    List.<JCExpression>of(make().Literal("unknown attribute")),
-                    null)));
+            defaultCase.add(makeUnknownAttributeThrow());
         }
         cases.add(make().Case(null, defaultCase.toList()));
         
@@ -1956,7 +2096,7 @@ public class ClassTransformer extends AbstractTransformer {
     }
     
 
-    private JCStatement makeDeserializationAssignment(Value value, boolean[] requiredLookup) {
+    private JCStatement makeDeserializationAssignment(Value value, boolean[] requiredLookup, boolean dollarThis) {
         boolean isValueType = Decl.isValueTypeDecl(simplifyType(value.getType()));
             
         Naming.SyntheticName n = naming.synthetic(Unfix.instance);
@@ -1974,13 +2114,13 @@ public class ClassTransformer extends AbstractTransformer {
             // We use the setter for late values, since that will allocate 
             // the array if needed.
             assignment = make().Exec(make().Apply(null,
-                    naming.makeQualifiedName(naming.makeThis(), value, Naming.NA_MEMBER | Naming.NA_SETTER),
+                    naming.makeQualifiedName(makeSerializationSelf(dollarThis), value, Naming.NA_MEMBER | Naming.NA_SETTER),
                     List.of(newValue)));
         } else {
             // We bypass the setter
             if (value.isVariable()) {
                 assignment = make().Exec(make().Assign(
-                        naming.makeQualifiedName(naming.makeThis(), value, Naming.NA_IDENT), 
+                        naming.makeQualifiedName(makeSerializationSelf(dollarThis), value, Naming.NA_IDENT), 
                         newValue));
             } else {
                 // The field will have final modifier, so we need some 
@@ -1988,14 +2128,14 @@ public class ClassTransformer extends AbstractTransformer {
                 requiredLookup[0] = true;
                 String fieldName = value.getName();
                 JCExpression fieldType = makeJavaType(value.getType());//TODO probably wrong
-                assignment = makeReassignFinalField(fieldType, fieldName, newValue);
+                assignment = makeReassignFinalField(fieldType, fieldName, newValue, makeSerializationSelf(dollarThis));
             }
         }
         return assignment;
     }
 
     private JCStatement makeReassignFinalField(JCExpression fieldType,
-            String fieldName, JCExpression newValue) {
+            String fieldName, JCExpression newValue, JCExpression target) {
         final JCStatement assignment;
         JCExpression mhExpr = utilInvocation().setter(
                 naming.makeUnquotedIdent("lookup"),
@@ -2005,7 +2145,7 @@ public class ClassTransformer extends AbstractTransformer {
         
         JCExpression expr = make().Apply(null, 
                 naming.makeQualIdent(mhExpr, "invokeExact"), 
-                List.of(naming.makeThis(), 
+                List.of(target, 
                         make().TypeCast(fieldType, newValue)));// We always typecast here, due to method handle
         assignment = make().Exec(expr);
         return assignment;
@@ -2094,7 +2234,7 @@ public class ClassTransformer extends AbstractTransformer {
         }
         
         if(model.isCompanionClassNeeded()){
-            classBuilder.method(makeCompanionAccessor(model, model.getType(), null, false));
+            classBuilder.method(makeCompanionAccessor(model, model.getType(), null, false, null));
             // Build the companion class
             buildCompanion(def, (Interface)model, classBuilder);
         }
@@ -2390,7 +2530,15 @@ public class ClassTransformer extends AbstractTransformer {
                             && !thisType.isExactly(superClassType)
                             && thisType.isSubtypeOf(superClassType)){
                         // we're refining it
-                        classBuilder.refineReifiedType(thisType);
+                        boolean lazy = isCompanionInstantiatedLazily(getCompanionInstantiator(model, iface), iface);
+                        classBuilder.refineReifiedType(thisType, lazy);
+                        if (lazy) {
+                            // the superclass accessor would create the companion with 
+                            // its own type arguments, so override it to refine them
+                            classBuilder.method(makeCompanionAccessor(iface, superClassType, model, true, 
+                                    make().Exec(makeRefineReifiedType(
+                                            naming.makeCompanionAccessorCall(naming.makeSuper(), iface), thisType))));
+                        }
                     }
                 }
             }
@@ -2872,7 +3020,7 @@ public class ClassTransformer extends AbstractTransformer {
             arguments.add(naming.makeName(param.getModel(), Naming.NA_MEMBER | Naming.NA_ALIASED));
         }
         if(includeBody){
-            JCExpression qualifierThis = makeUnquotedIdent(getCompanionFieldName(iface));
+            JCExpression qualifierThis = makeCompanionInstance(null, currentType.getDeclaration(), iface);
             // if the best satisfied type is not the one we think we implement, we may need to cast
             // our impl accessor to get the expected bounds of the qualifying type
             if(explicitReturn){
@@ -2974,15 +3122,19 @@ public class ClassTransformer extends AbstractTransformer {
         // make sure we get the first type that java will find when it looks up
         final Type bestSatisfiedType = getBestSatisfiedType(model.getType(), iface);
         
-        classBuilder.getInitBuilder().init(makeCompanionInstanceAssignment(model, iface, satisfiedType));
+        final boolean lazy = isCompanionInstantiatedLazily(model, iface);
+        if (!lazy) {
+            classBuilder.getInitBuilder().init(makeCompanionInstanceAssignment(model, iface, satisfiedType));
+        }
         
-        classBuilder.field(PROTECTED | FINAL, getCompanionFieldName(iface), 
+        classBuilder.field(lazy ? PROTECTED : PROTECTED | FINAL, getCompanionFieldName(iface), 
                 makeJavaType(bestSatisfiedType, AbstractTransformer.JT_COMPANION | JT_SATISFIES), null, false,
                 makeAtIgnore());
 
-        classBuilder.method(makeCompanionAccessor(iface, bestSatisfiedType, model, true));
+        classBuilder.method(makeCompanionAccessor(iface, bestSatisfiedType, model, true, 
+                lazy ? makeCompanionInstanceAssignment(model, iface, satisfiedType) : null));
     }
-
+    
     /**
      * Returns the companion instances assignment expression used in the constructor,
      * e.g.
@@ -3027,9 +3179,8 @@ public class ClassTransformer extends AbstractTransformer {
                     containerInstance = makeSelect(containerType, "this");
                 }else{
                     // it's a class: find the right field used for the interface container impl
-                    String containerFieldName = getCompanionFieldName((Interface)interfaceContainer);
                     JCExpression containerType = makeJavaType(modelContainer.getType(), JT_SATISFIES);
-                    containerInstance = makeSelect(makeSelect(containerType, "this"), containerFieldName);
+                    containerInstance = makeCompanionInstance(makeSelect(containerType, "this"), modelContainer, (Interface)interfaceContainer);
                 }
             }
         }
@@ -3065,8 +3216,13 @@ public class ClassTransformer extends AbstractTransformer {
         return companionInstanceAssign;
     }
     
+    /**
+     * Makes the {@code $Foo$impl()} accessor for the companion instance. 
+     * When {@code lazyInit} is not null it's the assignment which creates 
+     * the companion instance on the first call.
+     */
     private MethodDefinitionBuilder makeCompanionAccessor(Interface iface, Type satisfiedType, 
-            Class currentType, boolean forImplementor) {
+            Class currentType, boolean forImplementor, JCStatement lazyInit) {
         MethodDefinitionBuilder thisMethod = MethodDefinitionBuilder.systemMethod(
                 this, naming.getCompanionAccessorName(iface));
         thisMethod.noModelAnnotations();
@@ -3085,6 +3241,12 @@ public class ClassTransformer extends AbstractTransformer {
         }
         thisMethod.modifiers(PUBLIC);
         if (forImplementor) {
+            if (lazyInit != null) {
+                // if ($Foo$this$ == null) { this.$Foo$this$ = new Foo$impl(...); }
+                thisMethod.body(make().If(make().Binary(JCTree.EQ, naming.makeCompanionFieldName(iface), makeNull()), 
+                        make().Block(0, List.<JCStatement>of(lazyInit)), 
+                        null));
+            }
             thisMethod.body(make().Return(naming.makeCompanionFieldName(iface)));
         } else {
             thisMethod.noBody();
@@ -22,12 +22,21 @@ package com.redhat.ceylon.compiler.java.codegen;
 import com.redhat.ceylon.model.typechecker.model.Type;
 import com.redhat.ceylon.model.typechecker.model.TypedReference;
 import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
+import com.sun.tools.javac.util.Options;
 
 public class CompilerBoxingDeclarationVisitor extends BoxingDeclarationVisitor {
     private AbstractTransformer transformer;
+    private final boolean unboxComprehensionVariables;
     
     public CompilerBoxingDeclarationVisitor(AbstractTransformer transformer){
         this.transformer = transformer;
+        this.unboxComprehensionVariables = StatementTransformer.isOptimizationEnabled(
+                Options.instance(transformer.getContext()), Optimization.UnboxedComprehension);
+    }
+
+    @Override
+    protected boolean unboxComprehensionVariables() {
+        return unboxComprehensionVariables;
     }
 
     @Override
@@ -0,0 +1,228 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.codegen;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Parameter;
+import com.redhat.ceylon.model.typechecker.model.Value;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Options;
+
+/**
+ * Records the default arguments of the declarations being compiled which 
+ * are constant (literals and references to toplevel values), so that 
+ * invocations which omit them can evaluate the constant directly rather
+ * than calling the {@code $default$} method of the parameter, or a 
+ * defaulted argument overload. This is the opt-in 
+ * {@link Optimization#DefaultArgumentInlining} optimization.
+ * 
+ * The default arguments are collected by a {@link Collector} during the 
+ * preparation passes (only when the optimization is enabled), since an 
+ * invocation may be generated before the declaration it invokes. The 
+ * invocations which inlined a default argument are printed with 
+ * {@code -verbose:defaults}.
+ */
+public class ConstantDefaultArguments {
+    
+    private static final Context.Key<ConstantDefaultArguments> constantDefaultArgumentsKey = new Context.Key<ConstantDefaultArguments>();
+    
+    public static ConstantDefaultArguments instance(Context context) {
+        ConstantDefaultArguments instance = context.get(constantDefaultArgumentsKey);
+        if (instance == null) {
+            instance = new ConstantDefaultArguments(context);
+            context.put(constantDefaultArgumentsKey, instance);
+        }
+        return instance;
+    }
+    
+    private final boolean enabled;
+    private final Map<Parameter, Tree.Term> constants = new HashMap<Parameter, Tree.Term>();
+    private final Map<Node, String> inlined = new LinkedHashMap<Node, String>();
+    private long inlinedCount;
+    
+    private ConstantDefaultArguments(Context context) {
+        enabled = StatementTransformer.isOptimizationEnabled(Options.instance(context), 
+                Optimization.DefaultArgumentInlining);
+    }
+    
+    /**
+     * Collects the constant default arguments of the units it visits. 
+     * The visitors of every unit share the same {@link ConstantDefaultArguments}, 
+     * and may run in parallel.
+     */
+    public static class Collector extends Visitor {
+        private final ConstantDefaultArguments constants;
+        
+        public Collector(ConstantDefaultArguments constants) {
+            this.constants = constants;
+        }
+        
+        @Override
+        public void visit(Tree.Parameter that) {
+            super.visit(that);
+            if (!constants.enabled) {
+                return;
+            }
+            Parameter parameter = that.getParameterModel();
+            if (parameter == null
+                    || !(parameter.getModel() instanceof Value)) {
+                return;
+            }
+            Tree.SpecifierOrInitializerExpression defaultArgument = Decl.getDefaultArgument(that);
+            if (defaultArgument == null
+                    || defaultArgument instanceof Tree.LazySpecifierExpression
+                    || defaultArgument.getExpression() == null) {
+                return;
+            }
+            Tree.Term term = defaultArgument.getExpression().getTerm();
+            if (isConstant(term)) {
+                constants.add(parameter, term);
+            }
+        }
+    }
+    
+    static boolean isConstant(Tree.Term term) {
+        try {
+            if (term instanceof Tree.StringLiteral
+                    || term instanceof Tree.CharLiteral) {
+                return true;
+            } else if (term instanceof Tree.NaturalLiteral) {
+                ExpressionTransformer.literalValue((Tree.NaturalLiteral)term);
+                return true;
+            } else if (term instanceof Tree.FloatLiteral) {
+                ExpressionTransformer.literalValue((Tree.FloatLiteral)term);
+                return true;
+            } else if (term instanceof Tree.NegativeOp) {
+                Tree.Term operand = ((Tree.NegativeOp)term).getTerm();
+                if (operand instanceof Tree.NaturalLiteral) {
+                    if (ExpressionTransformer.literalValue((Tree.NegativeOp)term) == null) {
+                        // hexadecimal and binary literals are negated after parsing
+                        ExpressionTransformer.literalValue((Tree.NaturalLiteral)operand);
+                    }
+                    return true;
+                }
+                if (operand instanceof Tree.FloatLiteral) {
+                    ExpressionTransformer.literalValue((Tree.FloatLiteral)operand);
+                    return true;
+                }
+                return false;
+            } else if (term instanceof Tree.BaseMemberExpression) {
+                Declaration declaration = ((Tree.BaseMemberExpression)term).getDeclaration();
+                return declaration instanceof Value
+                        && declaration.isToplevel()
+                        && !Decl.isGetter(declaration)
+                        && !((Value)declaration).isTransient();
+            }
+        } catch (ErroneousException e) {
+            // the error is reported where the default argument is declared
+        }
+        return false;
+    }
+    
+    /**
+     * Whether an invocation of the given declaration which omits some 
+     * defaulted arguments may invoke a longer defaulted argument overload
+     * (or the declaration itself) instead. That's only the case if the 
+     * overloads can't be refined (the declaration is neither {@code default}
+     * nor {@code formal}), since a refinement of a shorter overload would 
+     * otherwise be skipped.
+     */
+    static boolean canSkipDefaultedOverloads(Declaration declaration) {
+        return Decl.isConstructor(declaration)
+                || (!declaration.isDefault() && !declaration.isFormal());
+    }
+    
+    synchronized void add(Parameter parameter, Tree.Term term) {
+        constants.put(parameter, term);
+    }
+    
+    /** 
+     * Returns the constant default argument of the given parameter, or null 
+     * if it doesn't have one, or its declaration is not being compiled 
+     */
+    synchronized Tree.Term get(Parameter parameter) {
+        return constants.get(parameter);
+    }
+    
+    /**
+     * Describes the constant default argument of the given parameter, or 
+     * returns null if it doesn't have one. Invocations in other units 
+     * depend on it, so it is part of the incremental compilation signature.
+     */
+    public synchronized String describe(Parameter parameter) {
+        Tree.Term term = constants.get(parameter);
+        if (term instanceof Tree.NegativeOp) {
+            return "-" + ((Tree.NegativeOp)term).getTerm().getText();
+        } else if (term instanceof Tree.BaseMemberExpression) {
+            return ((Tree.BaseMemberExpression)term).getDeclaration().getQualifiedNameString();
+        } else if (term != null) {
+            return term.getText();
+        }
+        return null;
+    }
+    
+    /** Records that the given invocation inlined the default argument of the given parameter */
+    synchronized void inlined(Node invocation, Parameter parameter) {
+        String parameters = inlined.get(invocation);
+        inlined.put(invocation, parameters == null ? parameter.getName() : parameters + ", " + parameter.getName());
+        inlinedCount++;
+    }
+    
+    /** The number of default argument method or overload calls we avoided */
+    public synchronized long getInlinedCount() {
+        return inlinedCount;
+    }
+    
+    /**
+     * Prints the invocations of the given unit which inlined default arguments, in source order
+     */
+    public synchronized void print(final PrintWriter writer, Tree.CompilationUnit unit) {
+        final Map<Node, String> invocations = new IdentityHashMap<Node, String>();
+        for (Map.Entry<Node, String> entry : inlined.entrySet()) {
+            if (entry.getKey().getUnit() == unit.getUnit()) {
+                invocations.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (invocations.isEmpty()) {
+            return;
+        }
+        writer.println("Inlined default arguments in "+unit.getUnit().getFullPath());
+        unit.visit(new Visitor() {
+            @Override
+            public void visitAny(Node that) {
+                String parameters = invocations.get(that);
+                if (parameters != null) {
+                    writer.println("  "+that.getLocation()+" "+parameters);
+                }
+                super.visitAny(that);
+            }
+        });
+        writer.flush();
+    }
+}
@@ -1124,6 +1124,101 @@ public class ExpressionTransformer extends AbstractTransformer {
         throw BugException.unhandledNodeCase(literal);
     }
 
+    /**
+     * Transforms a type, member, package or module literal. When enabled, 
+     * the literals which always evaluate to the same model are cached in a 
+     * static field, so that evaluating them again doesn't look up the 
+     * metamodel.
+     */
+    public JCTree transformMetaLiteral(Tree.MetaLiteral expr) {
+        JCTree literal;
+        if (expr instanceof Tree.TypeLiteral) {
+            literal = transform((Tree.TypeLiteral)expr);
+        } else if (expr instanceof Tree.MemberLiteral) {
+            literal = transform((Tree.MemberLiteral)expr);
+        } else if (expr instanceof Tree.PackageLiteral) {
+            literal = transform((Tree.PackageLiteral)expr);
+        } else if (expr instanceof Tree.ModuleLiteral) {
+            literal = transform((Tree.ModuleLiteral)expr);
+        } else {
+            throw BugException.unhandledNodeCase(expr);
+        }
+        if (literal instanceof JCExpression
+                && !(literal instanceof JCTree.JCErroneous)
+                && current() != null
+                && !statementGen().isOptimizationDisabled(statementGen().getCurrentStatement(), 
+                        Optimization.MetamodelLiteralConstant)
+                && isClosedMetaLiteral(expr)) {
+            ClassDefinitionBuilder holder = current().getStaticMemberHolder();
+            if (holder != null) {
+                at(expr);
+                return holder.makeMetamodelConstant(expr.getTypeModel().resolveAliases(), 
+                        getMetaLiteralKey(expr), (JCExpression)literal);
+            }
+        }
+        return literal;
+    }
+    
+    /**
+     * Returns a key which identifies the model a closed literal evaluates 
+     * to: the package or module, or else the declaration and the type of 
+     * the literal, which includes its qualifying type and type arguments.
+     */
+    private String getMetaLiteralKey(Tree.MetaLiteral expr) {
+        if (expr instanceof Tree.PackageLiteral) {
+            return "package " + ((Tree.PackageLiteral)expr).getImportPath().getModel().getNameAsString();
+        } else if (expr instanceof Tree.ModuleLiteral) {
+            return "module " + ((Tree.ModuleLiteral)expr).getImportPath().getModel().getNameAsString();
+        }
+        return expr.getDeclaration().getQualifiedNameString() 
+                + " " + expr.getTypeModel().resolveAliases().asQualifiedString();
+    }
+    
+    /**
+     * Determines whether the given literal always evaluates to the same 
+     * model: its type doesn't depend on type parameters, and it doesn't 
+     * refer to local declarations, which can't be named from a static 
+     * field.
+     */
+    private boolean isClosedMetaLiteral(Tree.MetaLiteral expr) {
+        if (expr instanceof Tree.PackageLiteral
+                || expr instanceof Tree.ModuleLiteral) {
+            return true;
+        }
+        Declaration declaration = expr.getDeclaration();
+        if (declaration == null
+                || Decl.isLocal(declaration)
+                || Decl.isAncestorLocal(declaration)) {
+            return false;
+        }
+        if (declaration instanceof TypeParameter) {
+            // `given T` is looked up from its container
+            Scope container = declaration.getContainer();
+            if (!(container instanceof Declaration)
+                    || Decl.isLocal((Declaration)container)
+                    || Decl.isAncestorLocal((Declaration)container)) {
+                return false;
+            }
+        }
+        if (expr.getTypeModel() == null
+                || !isStaticTypeDescriptor(expr.getTypeModel().resolveAliases())) {
+            return false;
+        }
+        if (expr instanceof Tree.MemberLiteral
+                && ((Tree.MemberLiteral)expr).getTypeArgumentList() != null) {
+            java.util.List<Type> typeModels = ((Tree.MemberLiteral)expr).getTypeArgumentList().getTypeModels();
+            if (typeModels == null) {
+                return false;
+            }
+            for (Type typeArgument : typeModels) {
+                if (!isStaticTypeDescriptor(typeArgument.resolveAliases())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public JCTree transform(Tree.PackageLiteral expr) {
         at(expr);
         
@@ -1523,8 +1618,17 @@ public class ExpressionTransformer extends AbstractTransformer {
 
     public JCExpression transformStringExpression(Tree.StringTemplate expr) {
         at(expr);
+        boolean optimized = !statementGen().isOptimizationDisabled(statementGen().getCurrentStatement(), 
+                Optimization.StringTemplate);
+        if (optimized) {
+            JCExpression concat = transformStringConcat(expr);
+            if (concat != null) {
+                return concat;
+            }
+        }
         JCExpression builder;
-        builder = make().NewClass(null, null, naming.makeFQIdent("java","lang","StringBuilder"), List.<JCExpression>nil(), null);
+        List<JCExpression> capacity = optimized ? List.<JCExpression>of(makeInteger(estimateStringLength(expr))) : List.<JCExpression>nil();
+        builder = make().NewClass(null, null, naming.makeFQIdent("java","lang","StringBuilder"), capacity, null);
 
         java.util.List<Tree.StringLiteral> literals = expr.getStringLiterals();
         java.util.List<Tree.Expression> expressions = expr.getExpressions();
@@ -1556,6 +1660,84 @@ public class ExpressionTransformer extends AbstractTransformer {
 
         return make().Apply(null, makeSelect(builder, "toString"), List.<JCExpression>nil());
     }
+    
+    /** 
+     * The number of characters we expect an interpolated expression to 
+     * take, which is also the default capacity of a StringBuilder 
+     */
+    private static final int STRING_TEMPLATE_EXPRESSION_LENGTH = 16;
+    
+    /**
+     * Returns the capacity to give the StringBuilder of the given template: 
+     * the length of its literals plus an estimate for each expression.
+     */
+    private int estimateStringLength(Tree.StringTemplate expr) {
+        int length = expr.getExpressions().size() * STRING_TEMPLATE_EXPRESSION_LENGTH;
+        for (Tree.StringLiteral literal : expr.getStringLiterals()) {
+            length += literal.getText().length();
+        }
+        return length;
+    }
+    
+    /**
+     * Transforms a string template with at most two non-empty parts into 
+     * the string of its single part or a {@code String.concat()} of the 
+     * strings of its two parts, which needs no StringBuilder. 
+     * Returns null if the template has more parts, or interpolates a 
+     * Character (which needs {@code appendCodePoint()}).
+     */
+    private JCExpression transformStringConcat(Tree.StringTemplate expr) {
+        java.util.List<Tree.StringLiteral> literals = expr.getStringLiterals();
+        java.util.List<Tree.Expression> expressions = expr.getExpressions();
+        java.util.List<Tree.Term> parts = new ArrayList<Tree.Term>(2);
+        for (int ii = 0; ii < literals.size(); ii += 1) {
+            Tree.StringLiteral literal = literals.get(ii);
+            if (!literal.getText().isEmpty()) {
+                parts.add(literal);
+            }
+            if (ii < expressions.size()) {
+                Tree.Expression expression = expressions.get(ii);
+                if (isCeylonCharacter(expression.getTypeModel())) {
+                    return null;
+                }
+                parts.add(expression);
+            }
+            if (parts.size() > 2) {
+                return null;
+            }
+        }
+        JCExpression result = null;
+        for (Tree.Term part : parts) {
+            JCExpression string = transformStringPart(part);
+            if (result == null) {
+                result = string;
+            } else {
+                result = make().Apply(null, makeSelect(result, "concat"), List.<JCExpression>of(string));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Transforms a part of a string template to a {@code java.lang.String}
+     */
+    private JCExpression transformStringPart(Tree.Term part) {
+        at(part);
+        if (part instanceof Tree.StringLiteral) {
+            return transform((Tree.StringLiteral)part);
+        }
+        Tree.Expression expression = (Tree.Expression)part;
+        if (isCeylonBasicType(expression.getTypeModel())
+                && expression.getUnboxed()) {
+            JCExpression unboxed = transformExpression(expression, BoxingStrategy.UNBOXED, null);
+            if (isCeylonString(expression.getTypeModel())) {
+                return unboxed;
+            }
+            // same conversion as StringBuilder.append() of the primitive
+            return make().Apply(null, makeSelect(naming.makeFQIdent("java","lang","String"), "valueOf"), List.<JCExpression>of(unboxed));
+        }
+        return make().Apply(null, makeSelect(transformExpression(expression), "toString"), List.<JCExpression>nil());
+    }
 
     public JCExpression transform(Tree.SequenceEnumeration value) {
         return transform(value, null);
@@ -1697,7 +1879,10 @@ public class ExpressionTransformer extends AbstractTransformer {
                 Type expectedType = comp.getInitialComprehensionClause().getPossiblyEmpty() 
                         ? typeFact().getSequentialType(elementType)
                         : typeFact().getSequenceType(elementType);
-                tail = comprehensionAsSequential(comp, expectedType);
+                tail = checkForPrimitiveComprehension(new PrimitiveComprehension(comp, expectedType));
+                if (tail == null) {
+                    tail = comprehensionAsSequential(comp, expectedType);
+                }
             } else {
                 return makeErroneous(expr, "compiler bug: " + expr.getNodeType() + " is not a supported tuple argument");
             }
@@ -3135,6 +3320,14 @@ public class ExpressionTransformer extends AbstractTransformer {
                     arrayWrap.append(exprAndType.expression);
                 }
             }
+            if (invocation instanceof PositionalInvocation
+                    && !(invocation instanceof SuperInvocation)
+                    && !invocation.isJavaMethod()
+                    && !invocation.isSpread()
+                    && !wrapIntoArray
+                    && ConstantDefaultArguments.canSkipDefaultedOverloads(invocation.getPrimaryDeclaration())) {
+                result = transformConstantDefaultArguments((PositionalInvocation)invocation, numArguments, result);
+            }
             if (invocation.isIndirect()
                     && invocation.isParameterSequenced(numArguments)
                     && !invocation.isArgumentSpread(numArguments-1)
@@ -3406,6 +3599,114 @@ public class ExpressionTransformer extends AbstractTransformer {
         return exprAndType;
     }
     
+    /**
+     * Appends the constant default arguments of the parameters following 
+     * the given arguments, so that we invoke a longer defaulted argument
+     * overload (or the full method) directly. We stop at the first 
+     * parameter whose default argument is not constant, and leave the rest 
+     * of the chain to the overload. 
+     * @see ConstantDefaultArguments
+     */
+    private List<ExpressionAndType> transformConstantDefaultArguments(PositionalInvocation invocation, 
+            int numArguments, List<ExpressionAndType> result) {
+        for (int argIndex = numArguments; argIndex < invocation.getNumParameters(); argIndex++) {
+            Parameter parameter = invocation.getParameters().get(argIndex);
+            if (parameter.isSequenced()) {
+                break;
+            }
+            Tree.Term constant = constantDefaultArgument(parameter, invocation.getNode());
+            if (constant == null) {
+                break;
+            }
+            BoxingStrategy boxingStrategy = invocation.getParameterBoxingStrategy(argIndex);
+            Type parameterType = invocation.getParameterType(argIndex);
+            int flags = boxingStrategy == BoxingStrategy.BOXED ? JT_NO_PRIMITIVES : 0;
+            JCExpression expr = transformConstantDefaultArgument(constant, boxingStrategy, parameterType);
+            if (isNull(constant.getTypeModel())) {
+                // the longer overload may not be the only method with that many parameters
+                expr = make().TypeCast(makeJavaType(parameterType, flags), expr);
+            }
+            result = result.append(new ExpressionAndType(expr, makeJavaType(parameterType, flags)));
+            constantDefaultArguments().inlined(invocation.getNode(), parameter);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the constant default argument of the given parameter, if 
+     * we can evaluate it at the given invocation instead of invoking the
+     * default argument method (or a defaulted argument overload), 
+     * or null. Default arguments are only inlined within the module 
+     * which declares them.
+     */
+    Tree.Term constantDefaultArgument(Parameter parameter, Node invocation) {
+        Tree.Term constant = constantDefaultArguments().get(parameter);
+        if (constant == null) {
+            return null;
+        }
+        Package invocationPackage = invocation.getUnit().getPackage();
+        if (!parameter.getDeclaration().getUnit().getPackage().getModule().equals(invocationPackage.getModule())) {
+            // the declaring module can be recompiled without the invocation's,
+            // so leave it to the default argument method
+            return null;
+        }
+        if (constant instanceof Tree.BaseMemberExpression) {
+            Declaration value = ((Tree.BaseMemberExpression)constant).getDeclaration();
+            if (!value.isShared()
+                    && !value.getUnit().getPackage().equals(invocationPackage)) {
+                // the invocation can't see it
+                return null;
+            }
+        }
+        return constant;
+    }
+    
+    /**
+     * Transforms a constant default argument at an invocation. Unlike 
+     * {@link #transformExpression(Tree.Term, BoxingStrategy, Type)} this 
+     * keeps the position of the invocation, since the default argument 
+     * may be declared in another unit.
+     */
+    JCExpression transformConstantDefaultArgument(Tree.Term term, BoxingStrategy boxingStrategy, Type expectedType) {
+        JCExpression result;
+        try {
+            if (term instanceof Tree.StringLiteral) {
+                result = ceylonLiteral(literalValue((Tree.StringLiteral)term));
+            } else if (term instanceof Tree.CharLiteral) {
+                result = make().Literal(TypeTags.INT, literalValue((Tree.CharLiteral)term));
+            } else if (term instanceof Tree.NaturalLiteral) {
+                result = make().Literal(literalValue((Tree.NaturalLiteral)term));
+            } else if (term instanceof Tree.FloatLiteral) {
+                result = make().Literal(literalValue((Tree.FloatLiteral)term));
+            } else if (term instanceof Tree.NegativeOp
+                    && ((Tree.NegativeOp)term).getTerm() instanceof Tree.NaturalLiteral) {
+                Long value = literalValue((Tree.NegativeOp)term);
+                if (value == null) {
+                    value = -literalValue((Tree.NaturalLiteral)((Tree.NegativeOp)term).getTerm());
+                }
+                result = make().Literal(value);
+            } else if (term instanceof Tree.NegativeOp) {
+                result = make().Literal(-literalValue((Tree.FloatLiteral)((Tree.NegativeOp)term).getTerm()));
+            } else {
+                Value value = (Value)((Tree.BaseMemberExpression)term).getDeclaration();
+                if (isNullValue(value)) {
+                    result = makeNull();
+                } else if (isBooleanTrue(value)) {
+                    result = makeBoolean(true);
+                } else if (isBooleanFalse(value)) {
+                    result = makeBoolean(false);
+                } else {
+                    result = make().Apply(null, 
+                            naming.makeQualIdent(naming.makeName(value, Naming.NA_FQ | Naming.NA_WRAPPER), naming.selector(value)), 
+                            List.<JCExpression>nil());
+                }
+            }
+        } catch (ErroneousException e) {
+            throw new BugException(term, "constant default argument is erroneous: " + e.getMessage());
+        }
+        return applyErasureAndBoxing(result, term, boxingStrategy, expectedType);
+    }
+    
     private List<ExpressionAndType> transformArgumentsForNamedInvocation(NamedArgumentInvocation invocation) {
         List<ExpressionAndType> result = List.<ExpressionAndType>nil();
         for (ExpressionAndType argAndType : invocation.getArgumentsAndTypes()) {
@@ -3895,7 +4196,8 @@ public class ExpressionTransformer extends AbstractTransformer {
                     if (Decl.getClassOrInterfaceContainer(classBuilder.getForDefinition(), false) instanceof Interface) {
                         superQual = naming.makeCompanionAccessorCall(naming.makeQuotedThis(), iface);
                     } else {
-                        superQual = naming.makeCompanionFieldName(iface);
+                        superQual = makeCompanionInstance(null, 
+                                Decl.getClassOrInterfaceContainer(classBuilder.getForDefinition(), false), iface);
                     }
                     expr = naming.makeQualifiedSuper(superQual);
                 }
@@ -4554,7 +4856,12 @@ public class ExpressionTransformer extends AbstractTransformer {
                 if (iface.equals(typeFact().getIdentifiableDeclaration())) {
                     result = naming.makeQualifiedSuper(qualifier);
                 } else {
-                    result = naming.makeCompanionFieldName(iface);
+                    Scope scope = superOfQualifiedExpr.getScope();
+                    while (Decl.isLocalNotInitializerScope(scope)) {
+                        scope = scope.getContainer();
+                    }
+                    result = makeCompanionInstance(null, 
+                            scope instanceof TypeDeclaration ? (TypeDeclaration)scope : null, iface);
                 }
             }
             
@@ -5482,6 +5789,364 @@ public class ExpressionTransformer extends AbstractTransformer {
         return isOptional(seqElemType);
     }
     
+    /**
+     * Returns the transformation of the given comprehension as an eager loop
+     * over primitive values, if that optimization applies. Otherwise returns 
+     * null, and logs an error if the {@link Optimization#PrimitiveComprehension} 
+     * optimization was required.
+     */
+    private JCExpression checkForPrimitiveComprehension(PrimitiveComprehension primitive) {
+        // we only do this in blocks, where the optimization can be required or disabled
+        Tree.Statement stmt = statementGen().getCurrentStatement();
+        if (stmt == null) {
+            return null;
+        }
+        if (statementGen().isOptimizationDisabled(stmt, Optimization.PrimitiveComprehension)) {
+            return statementGen().optimizationDisabled(stmt, Optimization.PrimitiveComprehension);
+        }
+        String reason = primitive.analyze();
+        if (reason != null) {
+            return statementGen().optimizationFailed(stmt, Optimization.PrimitiveComprehension, reason);
+        }
+        return primitive.transform();
+    }
+    
+    /**
+     * Returns the eager transformation of an invocation of {@code sum()} or 
+     * {@code max()} with a comprehension of {@code Integer}, {@code Float} 
+     * or {@code Character} as argument, otherwise null.
+     */
+    private JCExpression checkForPrimitiveAggregation(Tree.InvocationExpression ce) {
+        Tree.Term primary = unwrapExpressionUntilTerm(ce.getPrimary());
+        if (primary instanceof Tree.BaseMemberExpression == false) {
+            return null;
+        }
+        Declaration decl = ((Tree.BaseMemberExpression)primary).getDeclaration();
+        int sink;
+        if (Decl.equal(decl, typeFact().getLanguageModuleDeclaration("sum"))) {
+            sink = PrimitiveComprehension.SUM;
+        } else if (Decl.equal(decl, typeFact().getLanguageModuleDeclaration("max"))) {
+            sink = PrimitiveComprehension.MAX;
+        } else {
+            return null;
+        }
+        Tree.SequencedArgument sequencedArgument = null;
+        if (ce.getPositionalArgumentList() != null) {
+            java.util.List<Tree.PositionalArgument> args = ce.getPositionalArgumentList().getPositionalArguments();
+            if (args.size() != 1) {
+                return null;
+            }
+            if (args.get(0) instanceof Tree.Comprehension) {
+                return checkForPrimitiveComprehension(new PrimitiveComprehension((Tree.Comprehension)args.get(0), sink, ce));
+            }
+            if (args.get(0) instanceof Tree.ListedArgument) {
+                // sum({for (x in xs) x}) or sum([for (x in xs) x])
+                Tree.Term term = unwrapExpressionUntilTerm(((Tree.ListedArgument)args.get(0)).getExpression());
+                if (term instanceof Tree.SequenceEnumeration) {
+                    sequencedArgument = ((Tree.SequenceEnumeration)term).getSequencedArgument();
+                } else if (term instanceof Tree.Tuple) {
+                    sequencedArgument = ((Tree.Tuple)term).getSequencedArgument();
+                }
+            }
+        } else if (ce.getNamedArgumentList() != null
+                && ce.getNamedArgumentList().getNamedArguments().isEmpty()) {
+            // sum { for (x in xs) x }
+            sequencedArgument = ce.getNamedArgumentList().getSequencedArgument();
+        }
+        if (sequencedArgument == null
+                || sequencedArgument.getPositionalArguments().size() != 1
+                || sequencedArgument.getPositionalArguments().get(0) instanceof Tree.Comprehension == false) {
+            return null;
+        }
+        return checkForPrimitiveComprehension(new PrimitiveComprehension(
+                (Tree.Comprehension)sequencedArgument.getPositionalArguments().get(0), sink, ce));
+    }
+    
+    /**
+     * A comprehension of {@code Integer}, {@code Float}, {@code Character} 
+     * or {@code Byte} which is consumed immediately: by a tuple or sequence
+     * literal, or by {@code sum()} or {@code max()}. Instead of a lazy 
+     * {@code Iterable} which boxes every element, we transform it into 
+     * nested loops which either fill a growable primitive array, which
+     * we then wrap in a {@code Sequential}, or accumulate the result in 
+     * a primitive local.
+     * 
+     * The clauses are evaluated in the same order as when the lazy 
+     * {@code Iterable} is iterated, so this only supports {@code for} 
+     * clauses with a single variable and {@code if} clauses with boolean 
+     * conditions. {@code for} clauses over spans and segments of 
+     * {@code Integer} are counted loops, other {@code for} clauses use
+     * the {@code Iterator}.  
+     */
+    class PrimitiveComprehension {
+        
+        static final int SEQUENCE = 0;
+        static final int SUM = 1;
+        static final int MAX = 2;
+        
+        private final Tree.Comprehension comp;
+        private final int sink;
+        /** The invocation of sum() or max() */
+        private final Tree.InvocationExpression aggregation;
+        /** The type of Sequential we make */
+        private final Type expectedType;
+        private Type elementType;
+        private SyntheticName array;
+        private SyntheticName size;
+        private SyntheticName result;
+        private SyntheticName empty;
+        
+        PrimitiveComprehension(Tree.Comprehension comp, Type expectedType) {
+            this.comp = comp;
+            this.sink = SEQUENCE;
+            this.aggregation = null;
+            this.expectedType = expectedType;
+        }
+        
+        PrimitiveComprehension(Tree.Comprehension comp, int sink, Tree.InvocationExpression aggregation) {
+            this.comp = comp;
+            this.sink = sink;
+            this.aggregation = aggregation;
+            this.expectedType = null;
+        }
+        
+        /**
+         * Returns the reason we can't transform the comprehension, or null 
+         * if we can
+         */
+        String analyze() {
+            elementType = comp.getInitialComprehensionClause().getTypeModel();
+            if (!isCeylonInteger(elementType)
+                    && !isCeylonFloat(elementType)
+                    && !isCeylonCharacter(elementType)
+                    && !isCeylonByte(elementType)) {
+                return "the element type of the comprehension is not Integer, Float, Character or Byte";
+            }
+            // we want the Ceylon type, not a Java primitive type such as int
+            if (isCeylonInteger(elementType)) {
+                elementType = typeFact().getIntegerType();
+            } else if (isCeylonFloat(elementType)) {
+                elementType = typeFact().getFloatType();
+            } else if (isCeylonCharacter(elementType)) {
+                elementType = typeFact().getCharacterType();
+            } else {
+                elementType = typeFact().getByteType();
+            }
+            Tree.ComprehensionClause clause = comp.getInitialComprehensionClause();
+            while (clause instanceof Tree.ExpressionComprehensionClause == false) {
+                if (clause instanceof Tree.ForComprehensionClause) {
+                    Tree.ForComprehensionClause forClause = (Tree.ForComprehensionClause)clause;
+                    if (forClause.getForIterator() instanceof Tree.ValueIterator == false) {
+                        return "the comprehension has a for clause which destructures";
+                    }
+                    clause = forClause.getComprehensionClause();
+                } else {
+                    Tree.IfComprehensionClause ifClause = (Tree.IfComprehensionClause)clause;
+                    for (Tree.Condition condition : ifClause.getConditionList().getConditions()) {
+                        if (condition instanceof Tree.BooleanCondition == false) {
+                            return "the comprehension has an if clause with a condition which is not a boolean condition";
+                        }
+                    }
+                    clause = ifClause.getComprehensionClause();
+                }
+            }
+            return null;
+        }
+        
+        private JCExpression makePrimitiveType() {
+            return makeJavaType(elementType);
+        }
+        
+        JCExpression transform() {
+            at(comp);
+            ListBuffer<JCStatement> stmts = ListBuffer.lb();
+            if (sink == SEQUENCE) {
+                array = naming.alias("array");
+                size = naming.alias("size");
+                stmts.append(makeVar(array, make().TypeArray(makePrimitiveType()), 
+                        make().NewArray(makePrimitiveType(), List.<JCExpression>of(make().Literal(16)), null)));
+                stmts.append(makeVar(size, make().Type(syms().intType), make().Literal(0)));
+            } else {
+                result = naming.alias("result");
+                empty = naming.alias("empty");
+                stmts.append(makeVar(result, makePrimitiveType(), makeDefaultExprForType(elementType)));
+                stmts.append(makeVar(empty, make().Type(syms().booleanType), makeBoolean(true)));
+            }
+            stmts.appendList(transformClause(comp.getInitialComprehensionClause()));
+            at(comp);
+            return make().LetExpr(stmts.toList(), makeResult());
+        }
+        
+        private JCExpression makeResult() {
+            if (sink == SEQUENCE) {
+                // size == 0 ? empty : Util.sequentialWrapperBoxed(size == array.length ? array : Arrays.copyOf(array, size))
+                JCExpression sequentialType = makeJavaType(typeFact().getSequentialDeclaration().getType(), JT_RAW);
+                JCExpression elements = make().Conditional(
+                        make().Binary(JCTree.EQ, size.makeIdent(), naming.makeQualIdent(array.makeIdent(), "length")), 
+                        array.makeIdent(), 
+                        make().Apply(null, naming.makeQuotedFQIdent("java.util.Arrays.copyOf"), 
+                                List.<JCExpression>of(array.makeIdent(), size.makeIdent())));
+                JCExpression sequential = make().Conditional(
+                        make().Binary(JCTree.EQ, size.makeIdent(), make().Literal(0)), 
+                        make().TypeCast(sequentialType, makeEmpty()), 
+                        make().TypeCast(makeJavaType(typeFact().getSequentialDeclaration().getType(), JT_RAW), 
+                                utilInvocation().sequentialWrapperBoxed(elements)));
+                int flags = expectedType.getSupertype(typeFact().getSequenceDeclaration()) != null ? EXPR_DOWN_CAST : 0;
+                return applyErasureAndBoxing(sequential, typeFact().getSequentialType(elementType), 
+                        true, true, BoxingStrategy.BOXED, expectedType, flags);
+            }
+            Type resultType = aggregation.getTypeModel();
+            if (typeFact().isOptionalType(resultType)) {
+                // max() of a comprehension which may be empty
+                return make().Conditional(empty.makeIdent(), makeNull(), 
+                        applyErasureAndBoxing(result.makeIdent(), elementType, false, BoxingStrategy.BOXED, elementType));
+            }
+            return applyErasureAndBoxing(result.makeIdent(), elementType, false, 
+                    CodegenUtil.getBoxingStrategy(aggregation), resultType);
+        }
+        
+        private List<JCStatement> transformClause(Tree.ComprehensionClause clause) {
+            at(clause);
+            if (clause instanceof Tree.ForComprehensionClause) {
+                return transformForClause((Tree.ForComprehensionClause)clause);
+            } else if (clause instanceof Tree.IfComprehensionClause) {
+                Tree.IfComprehensionClause ifClause = (Tree.IfComprehensionClause)clause;
+                JCExpression test = null;
+                for (Tree.Condition condition : ifClause.getConditionList().getConditions()) {
+                    JCExpression cond = transformExpression(((Tree.BooleanCondition)condition).getExpression(), 
+                            BoxingStrategy.UNBOXED, typeFact().getBooleanType());
+                    test = test == null ? cond : make().Binary(JCTree.AND, test, cond);
+                }
+                return List.<JCStatement>of(make().If(test, 
+                        make().Block(0, transformClause(ifClause.getComprehensionClause())), null));
+            } else {
+                return transformExpressionClause((Tree.ExpressionComprehensionClause)clause);
+            }
+        }
+        
+        private List<JCStatement> transformForClause(Tree.ForComprehensionClause clause) {
+            Tree.ValueIterator iterator = (Tree.ValueIterator)clause.getForIterator();
+            Tree.Expression iterable = iterator.getSpecifierExpression().getExpression();
+            Tree.Term term = unwrapExpressionUntilTerm(iterable);
+            Type integerType = typeFact().getIntegerType();
+            ListBuffer<JCStatement> stmts = ListBuffer.lb();
+            ListBuffer<JCStatement> body = ListBuffer.lb();
+            JCExpression condition;
+            StatementTransformer.VarDefBuilder variable;
+            if (term instanceof Tree.RangeOp
+                    && typeFact().getSpanType(integerType).isExactly(term.getTypeModel())) {
+                Tree.RangeOp range = (Tree.RangeOp)term;
+                SyntheticName first = naming.alias("first");
+                SyntheticName last = naming.alias("last");
+                SyntheticName index = naming.alias("i");
+                SyntheticName step = naming.alias("step");
+                SyntheticName more = naming.alias("more");
+                SyntheticName element = naming.alias("element");
+                stmts.append(makeVar(Flags.FINAL, first, make().Type(syms().longType), 
+                        transformExpression(range.getLeftTerm(), BoxingStrategy.UNBOXED, integerType)));
+                stmts.append(makeVar(Flags.FINAL, last, make().Type(syms().longType), 
+                        transformExpression(range.getRightTerm(), BoxingStrategy.UNBOXED, integerType)));
+                stmts.append(makeVar(index, make().Type(syms().longType), first.makeIdent()));
+                stmts.append(makeVar(Flags.FINAL, step, make().Type(syms().longType), 
+                        make().Conditional(make().Binary(JCTree.LE, first.makeIdent(), last.makeIdent()), 
+                                make().Literal(1L), make().Literal(-1L))));
+                stmts.append(makeVar(more, make().Type(syms().booleanType), makeBoolean(true)));
+                // final long element = i;
+                // more = i != last;
+                // i += step;
+                body.append(makeVar(Flags.FINAL, element, make().Type(syms().longType), index.makeIdent()));
+                body.append(make().Exec(make().Assign(more.makeIdent(), 
+                        make().Binary(JCTree.NE, index.makeIdent(), last.makeIdent()))));
+                body.append(make().Exec(make().Assignop(JCTree.PLUS_ASG, index.makeIdent(), step.makeIdent())));
+                condition = more.makeIdent();
+                variable = statementGen().transformVariable(iterator.getVariable(), element.makeIdent(), integerType, false);
+            } else if (term instanceof Tree.SegmentOp
+                    && typeFact().getIteratedType(term.getTypeModel()).isExactly(integerType)) {
+                Tree.SegmentOp segment = (Tree.SegmentOp)term;
+                SyntheticName index = naming.alias("i");
+                SyntheticName length = naming.alias("length");
+                SyntheticName element = naming.alias("element");
+                stmts.append(makeVar(index, make().Type(syms().longType), 
+                        transformExpression(segment.getLeftTerm(), BoxingStrategy.UNBOXED, integerType)));
+                stmts.append(makeVar(length, make().Type(syms().longType), 
+                        transformExpression(segment.getRightTerm(), BoxingStrategy.UNBOXED, integerType)));
+                // final long element = i++;
+                // length--;
+                body.append(makeVar(Flags.FINAL, element, make().Type(syms().longType), 
+                        make().Unary(JCTree.POSTINC, index.makeIdent())));
+                body.append(make().Exec(make().Unary(JCTree.POSTDEC, length.makeIdent())));
+                condition = make().Binary(JCTree.GT, length.makeIdent(), make().Literal(0L));
+                variable = statementGen().transformVariable(iterator.getVariable(), element.makeIdent(), integerType, false);
+            } else {
+                // final Iterator<T> it = ITERABLE.iterator();
+                // java.lang.Object item;
+                // while ((item = it.next()) != finished) 
+                Type iteratedType = typeFact().getIteratedType(iterable.getTypeModel());
+                SyntheticName it = naming.alias("it");
+                SyntheticName item = naming.alias("item");
+                stmts.append(makeVar(Flags.FINAL, it, makeJavaType(typeFact().getIteratorType(iteratedType)), 
+                        make().Apply(null, makeSelect(transformExpression(iterable, BoxingStrategy.BOXED, 
+                                typeFact().getIterableType(iteratedType)), "iterator"), List.<JCExpression>nil())));
+                stmts.append(makeVar(item, make().Type(syms().objectType), null));
+                condition = make().Binary(JCTree.NE, 
+                        make().Assign(item.makeIdent(), 
+                                make().Apply(null, makeSelect(it.makeIdent(), "next"), List.<JCExpression>nil())), 
+                        makeFinished());
+                variable = statementGen().transformVariable(iterator.getVariable(), item.makeIdent());
+            }
+            Substitution substitution = variable.alias();
+            try {
+                body.append(variable.build());
+                body.appendList(transformClause(clause.getComprehensionClause()));
+            } finally {
+                substitution.close();
+            }
+            stmts.append(make().WhileLoop(condition, make().Block(0, body.toList())));
+            // the variables of the loop are scoped to the for clause
+            return List.<JCStatement>of(make().Block(0, stmts.toList()));
+        }
+        
+        private List<JCStatement> transformExpressionClause(Tree.ExpressionComprehensionClause clause) {
+            ListBuffer<JCStatement> stmts = ListBuffer.lb();
+            JCExpression value = transformExpression(clause.getExpression(), BoxingStrategy.UNBOXED, elementType);
+            if (sink == SEQUENCE) {
+                // if (size == array.length) array = Arrays.copyOf(array, size*2);
+                // array[size++] = VALUE;
+                stmts.append(make().If(make().Binary(JCTree.EQ, size.makeIdent(), 
+                                naming.makeQualIdent(array.makeIdent(), "length")), 
+                        make().Exec(make().Assign(array.makeIdent(), 
+                                make().Apply(null, naming.makeQuotedFQIdent("java.util.Arrays.copyOf"), 
+                                        List.<JCExpression>of(array.makeIdent(), 
+                                                make().Binary(JCTree.SL, size.makeIdent(), make().Literal(1)))))), 
+                        null));
+                stmts.append(make().Exec(make().Assign(
+                        make().Indexed(array.makeIdent(), make().Unary(JCTree.POSTINC, size.makeIdent())), 
+                        value)));
+                return stmts.toList();
+            }
+            SyntheticName element = naming.alias("element");
+            stmts.append(makeVar(Flags.FINAL, element, makePrimitiveType(), value));
+            if (sink == SUM) {
+                // if (empty) result = element; else result = result + element; 
+                JCExpression accumulate = make().Binary(JCTree.PLUS, result.makeIdent(), element.makeIdent());
+                if (isCeylonByte(elementType)) {
+                    accumulate = make().TypeCast(syms().byteType, accumulate);
+                }
+                stmts.append(make().If(empty.makeIdent(), 
+                        make().Exec(make().Assign(result.makeIdent(), element.makeIdent())), 
+                        make().Exec(make().Assign(result.makeIdent(), accumulate))));
+            } else {
+                // if (empty || element > result) result = element;
+                stmts.append(make().If(make().Binary(JCTree.OR, empty.makeIdent(), 
+                                make().Binary(JCTree.GT, element.makeIdent(), result.makeIdent())), 
+                        make().Exec(make().Assign(result.makeIdent(), element.makeIdent())), 
+                        null));
+            }
+            stmts.append(make().Exec(make().Assign(empty.makeIdent(), makeBoolean(false))));
+            return stmts.toList();
+        }
+    }
+    
     class ComprehensionTransformation {
         private final Tree.Comprehension comp;
         final Type targetIterType;
@@ -6082,10 +6747,496 @@ public class ExpressionTransformer extends AbstractTransformer {
             return ret;
         // FIXME: temporary hack for bitwise operators literals
         ret = checkForBitwiseOperators(ce);
+        if(ret != null)
+            return ret;
+        ret = checkForIterableChainFusion(ce);
+        if(ret != null)
+            return ret;
+        ret = checkForPrimitiveAggregation(ce);
         if(ret != null)
             return ret;
         return null;
     }
+    
+    /**
+     * Returns the transformation of the given invocation as a single loop if 
+     * it is a {@code fold()}, {@code any()}, {@code every()} or {@code count()}
+     * at the end of a chain of {@code map()}s and {@code filter()}s over a span 
+     * or segment of {@code Integer}, an {@code Array} or a Java primitive array.
+     * Otherwise returns null, and logs an error if the 
+     * {@link Optimization#IterableChainFusion} optimization was required.
+     */
+    private JCExpression checkForIterableChainFusion(Tree.InvocationExpression ce) {
+        Tree.Term primary = unwrapExpressionUntilTerm(ce.getPrimary());
+        Tree.InvocationExpression foldInvocation = null;
+        Tree.QualifiedMemberExpression terminal;
+        if (primary instanceof Tree.InvocationExpression) {
+            // fold(initial)(accumulating)
+            foldInvocation = (Tree.InvocationExpression)primary;
+            terminal = getIterableMember(foldInvocation.getPrimary(), "fold");
+        } else {
+            terminal = getIterableMember(primary, "any", "every", "count");
+        }
+        if (terminal == null) {
+            return null;
+        }
+        // we only fuse in blocks, where the optimization can be required or disabled
+        Tree.Statement stmt = statementGen().getCurrentStatement();
+        if (stmt == null) {
+            return null;
+        }
+        if (statementGen().isOptimizationDisabled(stmt, Optimization.IterableChainFusion)) {
+            return statementGen().optimizationDisabled(stmt, Optimization.IterableChainFusion);
+        }
+        FusedIterableChain chain = new FusedIterableChain(ce, foldInvocation, terminal);
+        String reason = chain.analyze();
+        if (reason != null) {
+            return statementGen().optimizationFailed(stmt, Optimization.IterableChainFusion, reason);
+        }
+        return chain.transform();
+    }
+    
+    /**
+     * Returns the given term if it is a {@code .} reference to one of the given 
+     * methods of {@code Iterable}, otherwise null
+     */
+    private Tree.QualifiedMemberExpression getIterableMember(Tree.Term term, String... names) {
+        term = unwrapExpressionUntilTerm(term);
+        if (term instanceof Tree.QualifiedMemberExpression == false) {
+            return null;
+        }
+        Tree.QualifiedMemberExpression qme = (Tree.QualifiedMemberExpression)term;
+        if (qme.getMemberOperator() instanceof Tree.MemberOp == false
+                || qme.getDeclaration() instanceof Function == false) {
+            return null;
+        }
+        Declaration refined = qme.getDeclaration().getRefinedDeclaration();
+        if (!Decl.equalScopeDecl(refined.getContainer(), typeFact().getIterableDeclaration())) {
+            return null;
+        }
+        for (String name : names) {
+            if (name.equals(refined.getName())) {
+                return qme;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * A chain of {@code map()}s and {@code filter()}s ending in {@code fold()}, 
+     * {@code any()}, {@code every()} or {@code count()}, which we transform 
+     * into a single loop over the source instead of a stack of lazy 
+     * {@code Iterable}s, each with its {@code Iterator} boxing every element.
+     * 
+     * Function arguments which are anonymous functions with an expression 
+     * body are inlined into the loop, so that basic types stay unboxed. 
+     * Other function arguments are evaluated once, before the loop, in the 
+     * same order as they would be without fusion, and called for each 
+     * element. The functions are applied to the elements in the same order 
+     * as with the lazy {@code Iterable}s, and {@code any()} and 
+     * {@code every()} stop at the same element. 
+     */
+    class FusedIterableChain {
+        
+        private static final int SPAN = 0;
+        private static final int SEGMENT = 1;
+        private static final int ARRAY = 2;
+        private static final int JAVA_ARRAY = 3;
+        
+        /** A {@code map()} or {@code filter()} of the chain */
+        private class Stage {
+            final String name;
+            final Tree.Expression function;
+            /** The type of the elements after this stage */
+            final Type elementType;
+            SyntheticName callable;
+            Stage(String name, Tree.Expression function, Type elementType) {
+                this.name = name;
+                this.function = function;
+                this.elementType = elementType;
+            }
+        }
+        
+        private final Tree.InvocationExpression invocation;
+        private final Tree.InvocationExpression foldInvocation;
+        private final Tree.QualifiedMemberExpression terminal;
+        private final LinkedList<Stage> stages = new LinkedList<Stage>();
+        private Tree.Expression initial;
+        private Tree.Expression terminalFunction;
+        private Tree.Term source;
+        private int sourceKind;
+        private Type sourceElementType;
+        private boolean unboxedArray;
+        
+        FusedIterableChain(Tree.InvocationExpression invocation, 
+                Tree.InvocationExpression foldInvocation,
+                Tree.QualifiedMemberExpression terminal) {
+            this.invocation = invocation;
+            this.foldInvocation = foldInvocation;
+            this.terminal = terminal;
+        }
+        
+        /**
+         * Collects the stages and the source of the chain, returning
+         * the reason we can't fuse it, or null if we can
+         */
+        String analyze() {
+            if (foldInvocation != null) {
+                initial = getListedArgument(foldInvocation);
+                if (initial == null) {
+                    return "fold() is not invoked with a listed positional argument";
+                }
+            }
+            terminalFunction = getListedArgument(invocation);
+            if (terminalFunction == null) {
+                return terminal.getDeclaration().getName() + "() is not invoked with a listed positional argument";
+            }
+            Tree.Term term = unwrapExpressionUntilTerm(terminal.getPrimary());
+            while (term instanceof Tree.InvocationExpression) {
+                Tree.InvocationExpression stageInvocation = (Tree.InvocationExpression)term;
+                Tree.QualifiedMemberExpression member = getIterableMember(stageInvocation.getPrimary(), "map", "filter");
+                if (member == null) {
+                    break;
+                }
+                Tree.Expression function = getListedArgument(stageInvocation);
+                if (function == null) {
+                    return member.getDeclaration().getName() + "() is not invoked with a listed positional argument";
+                }
+                stages.addFirst(new Stage(member.getDeclaration().getName(), function, 
+                        typeFact().getIteratedType(stageInvocation.getTypeModel())));
+                term = unwrapExpressionUntilTerm(member.getPrimary());
+            }
+            source = term;
+            Type integerType = typeFact().getIntegerType();
+            Type sourceType = source.getTypeModel();
+            if (source instanceof Tree.RangeOp) {
+                if (!typeFact().getSpanType(integerType).isExactly(sourceType)) {
+                    return "the span is not a Range<Integer>";
+                }
+                sourceKind = SPAN;
+                sourceElementType = integerType;
+            } else if (source instanceof Tree.SegmentOp) {
+                if (!typeFact().getIteratedType(sourceType).isExactly(integerType)) {
+                    return "the segment is not a segment of Integer";
+                }
+                sourceKind = SEGMENT;
+                sourceElementType = integerType;
+            } else if (typeFact().getArrayElementType(sourceType) != null) {
+                sourceKind = ARRAY;
+                sourceElementType = typeFact().getArrayElementType(sourceType);
+                unboxedArray = isCeylonBasicType(sourceElementType) 
+                        && typeFact().getArrayType(sourceElementType).isExactly(sourceType);
+            } else if (isJavaPrimitiveArrayIterable(source)) {
+                sourceKind = JAVA_ARRAY;
+                sourceElementType = typeFact().getIteratedType(sourceType);
+            } else {
+                return "the source of the chain is not a span, a segment, an Array or javaArray.iterable";
+            }
+            return null;
+        }
+        
+        private boolean isJavaPrimitiveArrayIterable(Tree.Term term) {
+            if (term instanceof Tree.QualifiedMemberExpression == false
+                    || !"iterable".equals(((Tree.QualifiedMemberExpression)term).getIdentifier().getText())) {
+                return false;
+            }
+            TypeDeclaration arrayDecl = ((Tree.QualifiedMemberExpression)term).getPrimary().getTypeModel().getDeclaration();
+            return Decl.isJavaArray(arrayDecl) && !Decl.isJavaObjectArray(arrayDecl);
+        }
+        
+        private Tree.Expression getListedArgument(Tree.InvocationExpression invocation) {
+            if (invocation.getPositionalArgumentList() == null
+                    || invocation.getPositionalArgumentList().getPositionalArguments().size() != 1) {
+                return null;
+            }
+            Tree.PositionalArgument argument = invocation.getPositionalArgumentList().getPositionalArguments().get(0);
+            if (argument instanceof Tree.ListedArgument == false) {
+                return null;
+            }
+            return ((Tree.ListedArgument)argument).getExpression();
+        }
+        
+        /**
+         * Returns the given function if it's an anonymous function we can 
+         * inline, with an expression body and the given number of parameters
+         */
+        private Tree.FunctionArgument getInlinableFunction(Tree.Expression function, int arity) {
+            Tree.Term term = unwrapExpressionUntilTerm(function);
+            if (term instanceof Tree.FunctionArgument == false) {
+                return null;
+            }
+            Tree.FunctionArgument functionArgument = (Tree.FunctionArgument)term;
+            if (functionArgument.getExpression() == null
+                    || functionArgument.getParameterLists().size() != 1
+                    || functionArgument.getParameterLists().get(0).getParameters().size() != arity) {
+                return null;
+            }
+            for (Tree.Parameter parameter : functionArgument.getParameterLists().get(0).getParameters()) {
+                Parameter model = parameter.getParameterModel();
+                if (model == null 
+                        || model.isDefaulted() 
+                        || model.isSequenced()) {
+                    return null;
+                }
+            }
+            return functionArgument;
+        }
+        
+        private boolean isUnboxed(Type type) {
+            return isCeylonBasicType(type);
+        }
+        
+        private JCExpression makeElementType(Type type) {
+            return makeJavaType(type, isUnboxed(type) ? 0 : JT_NO_PRIMITIVES);
+        }
+        
+        /**
+         * Declares a variable holding the given function, unless we can 
+         * inline it
+         */
+        private SyntheticName evaluateFunction(ListBuffer<JCStatement> stmts, Tree.Expression function, int arity) {
+            if (getInlinableFunction(function, arity) != null) {
+                return null;
+            }
+            SyntheticName name = naming.alias("f");
+            stmts.append(makeVar(Flags.FINAL, name, 
+                    makeJavaType(function.getTypeModel(), JT_RAW), 
+                    transformExpression(function)));
+            return name;
+        }
+        
+        /**
+         * Returns the result of applying the given function to the given 
+         * arguments, with the boxing of {@link #isUnboxed(Type)} for the given
+         * result type, appending to the loop body what that requires.
+         * The arguments are also boxed according to {@link #isUnboxed(Type)}.
+         */
+        private JCExpression apply(ListBuffer<JCStatement> body, 
+                Tree.Expression function, SyntheticName callable,
+                List<JCExpression> args, List<Type> argTypes, Type resultType) {
+            BoxingStrategy resultBoxing = isUnboxed(resultType) ? BoxingStrategy.UNBOXED : BoxingStrategy.BOXED;
+            if (callable != null) {
+                ListBuffer<JCExpression> boxedArgs = ListBuffer.lb();
+                List<Type> types = argTypes;
+                for (JCExpression arg : args) {
+                    boxedArgs.append(applyErasureAndBoxing(arg, types.head, 
+                            !isUnboxed(types.head), BoxingStrategy.BOXED, types.head));
+                    types = types.tail;
+                }
+                JCExpression call = make().Apply(null, 
+                        naming.makeQualIdent(callable.makeIdent(), Naming.getCallableMethodName()), 
+                        boxedArgs.toList());
+                return applyErasureAndBoxing(call, resultType, true, true, resultBoxing, resultType, 0);
+            }
+            Tree.FunctionArgument inlined = getInlinableFunction(function, args.size());
+            java.util.List<Substitution> substitutions = new ArrayList<Substitution>(args.size());
+            try {
+                List<Type> types = argTypes;
+                for (Tree.Parameter parameter : inlined.getParameterLists().get(0).getParameters()) {
+                    FunctionOrValue model = parameter.getParameterModel().getModel();
+                    boolean unboxed = CodegenUtil.isUnBoxed(model);
+                    Substitution substitution = naming.substituteAlias(model);
+                    substitutions.add(substitution);
+                    body.append(makeVar(Flags.FINAL, substitution.substituted, 
+                            makeJavaType(model.getType(), unboxed ? 0 : JT_NO_PRIMITIVES), 
+                            applyErasureAndBoxing(args.head, types.head, !isUnboxed(types.head), 
+                                    unboxed ? BoxingStrategy.UNBOXED : BoxingStrategy.BOXED, model.getType())));
+                    args = args.tail;
+                    types = types.tail;
+                }
+                return transformExpression(inlined.getExpression(), resultBoxing, resultType);
+            } finally {
+                for (Substitution substitution : substitutions) {
+                    substitution.close();
+                }
+            }
+        }
+        
+        JCExpression transform() {
+            at(invocation);
+            ListBuffer<JCStatement> stmts = ListBuffer.lb();
+            ListBuffer<JCStatement> body = ListBuffer.lb();
+            SyntheticName element = naming.alias("element");
+            
+            // evaluate the source, and start the loop body by declaring the element
+            List<JCStatement> loopInit = List.<JCStatement>nil();
+            JCExpression loopCondition;
+            List<JCTree.JCExpressionStatement> loopStep = List.<JCTree.JCExpressionStatement>nil();
+            SyntheticName index = naming.alias("i");
+            switch (sourceKind) {
+            case SPAN: {
+                Tree.RangeOp range = (Tree.RangeOp)source;
+                SyntheticName first = naming.alias("first");
+                SyntheticName last = naming.alias("last");
+                SyntheticName step = naming.alias("step");
+                SyntheticName more = naming.alias("more");
+                stmts.append(makeVar(Flags.FINAL, first, make().Type(syms().longType), 
+                        transformExpression(range.getLeftTerm(), BoxingStrategy.UNBOXED, sourceElementType)));
+                stmts.append(makeVar(Flags.FINAL, last, make().Type(syms().longType), 
+                        transformExpression(range.getRightTerm(), BoxingStrategy.UNBOXED, sourceElementType)));
+                stmts.append(makeVar(index, make().Type(syms().longType), first.makeIdent()));
+                stmts.append(makeVar(Flags.FINAL, step, make().Type(syms().longType), 
+                        make().Conditional(make().Binary(JCTree.LE, first.makeIdent(), last.makeIdent()), 
+                                make().Literal(1L), make().Literal(-1L))));
+                stmts.append(makeVar(more, make().Type(syms().booleanType), makeBoolean(true)));
+                // final long element = i;
+                // more = i != last;
+                // i += step;
+                body.append(makeVar(Flags.FINAL, element, make().Type(syms().longType), index.makeIdent()));
+                body.append(make().Exec(make().Assign(more.makeIdent(), 
+                        make().Binary(JCTree.NE, index.makeIdent(), last.makeIdent()))));
+                body.append(make().Exec(make().Assignop(JCTree.PLUS_ASG, index.makeIdent(), step.makeIdent())));
+                loopCondition = more.makeIdent();
+                break;
+            }
+            case SEGMENT: {
+                Tree.SegmentOp segment = (Tree.SegmentOp)source;
+                SyntheticName length = naming.alias("length");
+                stmts.append(makeVar(index, make().Type(syms().longType), 
+                        transformExpression(segment.getLeftTerm(), BoxingStrategy.UNBOXED, sourceElementType)));
+                stmts.append(makeVar(length, make().Type(syms().longType), 
+                        transformExpression(segment.getRightTerm(), BoxingStrategy.UNBOXED, sourceElementType)));
+                // final long element = i++;
+                // length--;
+                body.append(makeVar(Flags.FINAL, element, make().Type(syms().longType), 
+                        make().Unary(JCTree.POSTINC, index.makeIdent())));
+                body.append(make().Exec(make().Unary(JCTree.POSTDEC, length.makeIdent())));
+                loopCondition = make().Binary(JCTree.GT, length.makeIdent(), make().Literal(0L));
+                break;
+            }
+            case ARRAY: {
+                SyntheticName array = naming.alias("array");
+                SyntheticName length = naming.alias("length");
+                JCExpression arrayExpr = transformExpression(source);
+                JCExpression elementGet;
+                if (unboxedArray) {
+                    stmts.append(makeVar(Flags.FINAL, array, make().Type(syms().objectType), 
+                            make().Apply(null, naming.makeQualIdent(arrayExpr, "toArray"), List.<JCExpression>nil())));
+                    stmts.append(makeVar(Flags.FINAL, length, make().Type(syms().intType), 
+                            utilInvocation().arrayLength(array.makeIdent())));
+                    if (isCeylonBoolean(sourceElementType)) {
+                        elementGet = utilInvocation().getBooleanArray(array.makeIdent(), index.makeIdent());
+                    } else if (isCeylonFloat(sourceElementType)) {
+                        elementGet = utilInvocation().getFloatArray(array.makeIdent(), index.makeIdent());
+                    } else if (isCeylonInteger(sourceElementType)) {
+                        elementGet = utilInvocation().getIntegerArray(array.makeIdent(), index.makeIdent());
+                    } else if (isCeylonCharacter(sourceElementType)) {
+                        elementGet = utilInvocation().getCharacterArray(array.makeIdent(), index.makeIdent());
+                    } else if (isCeylonByte(sourceElementType)) {
+                        elementGet = utilInvocation().getByteArray(array.makeIdent(), index.makeIdent());
+                    } else {
+                        elementGet = utilInvocation().getStringArray(array.makeIdent(), index.makeIdent());
+                    }
+                } else {
+                    stmts.append(makeVar(Flags.FINAL, array, makeJavaType(typeFact().getArrayType(sourceElementType)), 
+                            arrayExpr));
+                    stmts.append(makeVar(Flags.FINAL, length, make().Type(syms().intType), 
+                            make().TypeCast(make().Type(syms().intType), 
+                                    make().Apply(null, naming.makeQualIdent(array.makeIdent(), "getSize"), 
+                                            List.<JCExpression>nil()))));
+                    elementGet = applyErasureAndBoxing(
+                            make().Apply(null, naming.makeQualIdent(array.makeIdent(), "unsafeItem"), 
+                                    List.<JCExpression>of(index.makeIdent())), 
+                            typeFact().getObjectType(), true, true, BoxingStrategy.BOXED, sourceElementType, 0);
+                }
+                body.append(makeVar(Flags.FINAL, element, makeElementType(sourceElementType), elementGet));
+                loopInit = List.<JCStatement>of(makeVar(index, make().Type(syms().intType), make().Literal(0)));
+                loopCondition = make().Binary(JCTree.LT, index.makeIdent(), length.makeIdent());
+                loopStep = List.of(make().Exec(make().Unary(JCTree.POSTINC, index.makeIdent())));
+                break;
+            }
+            case JAVA_ARRAY: {
+                Tree.QualifiedMemberExpression iterable = (Tree.QualifiedMemberExpression)source;
+                SyntheticName array = naming.alias("array");
+                stmts.append(makeVar(Flags.FINAL, array, makeJavaType(iterable.getPrimary().getTypeModel()), 
+                        transformExpression(iterable.getPrimary())));
+                body.append(makeVar(Flags.FINAL, element, makeElementType(sourceElementType), 
+                        make().Indexed(array.makeIdent(), index.makeIdent())));
+                loopInit = List.<JCStatement>of(makeVar(index, make().Type(syms().intType), make().Literal(0)));
+                loopCondition = make().Binary(JCTree.LT, index.makeIdent(), 
+                        naming.makeQualIdent(array.makeIdent(), "length"));
+                loopStep = List.of(make().Exec(make().Unary(JCTree.POSTINC, index.makeIdent())));
+                break;
+            }
+            default:
+                throw new BugException(source, "unhandled source of Iterable chain");
+            }
+            
+            // evaluate the functions we can't inline, in order
+            for (Stage stage : stages) {
+                stage.callable = evaluateFunction(stmts, stage.function, 1);
+            }
+            
+            // declare the result
+            Type resultType = invocation.getTypeModel();
+            SyntheticName result = naming.alias("result");
+            String operation = terminal.getDeclaration().getName();
+            JCExpression resultInit;
+            if ("fold".equals(operation)) {
+                resultInit = transformExpression(initial, 
+                        isUnboxed(resultType) ? BoxingStrategy.UNBOXED : BoxingStrategy.BOXED, resultType);
+            } else if ("count".equals(operation)) {
+                resultInit = make().Literal(0L);
+            } else {
+                resultInit = makeBoolean("every".equals(operation));
+            }
+            stmts.append(makeVar(result, makeElementType(resultType), resultInit));
+            SyntheticName terminalCallable = evaluateFunction(stmts, terminalFunction, 
+                    "fold".equals(operation) ? 2 : 1);
+            
+            // the stages
+            Type elementType = sourceElementType;
+            Type booleanType = typeFact().getBooleanType();
+            for (Stage stage : stages) {
+                JCExpression applied = apply(body, stage.function, stage.callable, 
+                        List.<JCExpression>of(element.makeIdent()), List.<Type>of(elementType), 
+                        "filter".equals(stage.name) ? booleanType : stage.elementType);
+                if ("filter".equals(stage.name)) {
+                    // if (!select(element)) continue;
+                    body.append(make().If(make().Unary(JCTree.NOT, applied), make().Continue(null), null));
+                } else {
+                    // final Result mapped = collecting(element);
+                    element = naming.alias("element");
+                    elementType = stage.elementType;
+                    body.append(makeVar(Flags.FINAL, element, makeElementType(elementType), applied));
+                }
+            }
+            
+            // the terminal operation
+            if ("fold".equals(operation)) {
+                // result = accumulating(result, element);
+                JCExpression applied = apply(body, terminalFunction, terminalCallable,
+                        List.<JCExpression>of(result.makeIdent(), element.makeIdent()), 
+                        List.<Type>of(resultType, elementType), resultType);
+                body.append(make().Exec(make().Assign(result.makeIdent(), applied)));
+            } else {
+                JCExpression applied = apply(body, terminalFunction, terminalCallable,
+                        List.<JCExpression>of(element.makeIdent()), List.<Type>of(elementType), booleanType);
+                if ("count".equals(operation)) {
+                    // if (selecting(element)) result++;
+                    body.append(make().If(applied, 
+                            make().Exec(make().Unary(JCTree.POSTINC, result.makeIdent())), null));
+                } else if ("any".equals(operation)) {
+                    // if (selecting(element)) { result = true; break; }
+                    body.append(make().If(applied, make().Block(0, List.<JCStatement>of(
+                            make().Exec(make().Assign(result.makeIdent(), makeBoolean(true))),
+                            make().Break(null))), null));
+                } else {
+                    // if (!selecting(element)) { result = false; break; }
+                    body.append(make().If(make().Unary(JCTree.NOT, applied), make().Block(0, List.<JCStatement>of(
+                            make().Exec(make().Assign(result.makeIdent(), makeBoolean(false))),
+                            make().Break(null))), null));
+                }
+            }
+            
+            // the stages and the terminal operation may continue or break the loop 
+            // only once the element has been declared and the source advanced
+            stmts.append(make().ForLoop(loopInit, loopCondition, loopStep, make().Block(0, body.toList())));
+            return make().LetExpr(stmts.toList(), 
+                    applyErasureAndBoxing(result.makeIdent(), resultType, !isUnboxed(resultType), 
+                            CodegenUtil.getBoxingStrategy(invocation), resultType));
+        }
+    }
 
     private JCExpression checkForByteLiterals(Tree.QualifiedMemberExpression expr) {
         // must be a call on Integer
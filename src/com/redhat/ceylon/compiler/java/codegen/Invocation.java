@@ -1660,8 +1660,17 @@ class NamedArgumentInvocation extends Invocation {
                             argExpr = gen.makeErroneous(this.getNode(), "compiler bug: virtual method of java array type not supported: "+getPrimaryDeclaration());
                         }
                     }else{
-                        argExpr = makeDefaultedArgumentMethodCall(param);
-                        hasDefaulted |= true;
+                        Tree.Term constant = gen.expressionGen().constantDefaultArgument(param, getNode());
+                        if (constant != null) {
+                            // no need for the default argument method, nor for its $this
+                            argExpr = gen.expressionGen().transformConstantDefaultArgument(constant, 
+                                    getNamedParameterBoxingStrategy(param), 
+                                    gen.getTypeForParameter(param, producedReference, gen.TP_TO_BOUND));
+                            gen.constantDefaultArguments().inlined(getNode(), param);
+                        } else {
+                            argExpr = makeDefaultedArgumentMethodCall(param);
+                            hasDefaulted |= true;
+                        }
                     }
                 } else if (Strategy.hasEmptyDefaultArgument(param)) {
                     argExpr = gen.makeEmptyAsSequential(true);
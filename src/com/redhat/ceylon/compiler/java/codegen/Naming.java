@@ -2080,6 +2080,18 @@ public class Naming extends NamingBase implements LocalId {
         return name(Unfix.$initException$);
     }
     
+    public static String getSerializationFieldNamesName() {
+        return "$serialization$fields$";
+    }
+    
+    public static String getSerializationFieldGetterName() {
+        return "$getField$";
+    }
+    
+    public static String getSerializationFieldSetterName() {
+        return "$setField$";
+    }
+    
     public static boolean isLowerCase(String name){
         return !name.isEmpty() && Character.isLowerCase(name.codePointAt(0));
     }
@@ -1,8 +1,14 @@
 package com.redhat.ceylon.compiler.java.codegen;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Enumerates compiler optimizations, which can be disabled and required 
  * by name.
+ * 
+ * Opt-in optimizations are only done when they're enabled with 
+ * {@code -enableOptimization}.
  */
 public enum Optimization {
 
@@ -14,5 +20,97 @@ public enum Optimization {
     ArrayIterationDynamic,
     TupleIterationDynamic,
     
-    PowerUnroll
-}
+    PowerUnroll,
+    IterableChainFusion,
+    LiteralDestructure,
+    
+    PrimitiveComprehension(true),
+    
+    InvokeDynamicCallable(true),
+    
+    TypeDescriptorConstant(true),
+    
+    StringTemplate(true),
+    
+    UnboxedComprehension(true),
+    
+    ImpliedTypeTest(true),
+    
+    RangeIterationStatic(true),
+    RangeIterationDynamic(true),
+    
+    LazyCompanionInstance(true),
+    
+    FinalToplevelInitFlag(true),
+    
+    MetamodelLiteralConstant(true),
+    
+    SerializationFieldIndex(true),
+    
+    DefaultArgumentInlining(true),
+    
+    IntegerSwitch(true);
+    
+    private final boolean optIn;
+    
+    private Optimization() {
+        this(false);
+    }
+    
+    private Optimization(boolean optIn) {
+        this.optIn = optIn;
+    }
+    
+    public boolean isOptIn() {
+        return optIn;
+    }
+    
+    /**
+     * Returns the optimization with the given name, or null if there is none.
+     */
+    public static Optimization lookup(String name) {
+        for (Optimization optimization : values()) {
+            if (optimization.name().equals(name)) {
+                return optimization;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Parses a comma-separated list of optimization names, as given to 
+     * {@code -enableOptimization} and {@code -disableOptimization}.
+     * @throws IllegalArgumentException if a name is not an optimization
+     */
+    public static Set<Optimization> parse(String names) {
+        Set<Optimization> result = EnumSet.noneOf(Optimization.class);
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            Optimization optimization = lookup(name);
+            if (optimization == null) {
+                throw new IllegalArgumentException("Unknown optimization: " + name);
+            }
+            result.add(optimization);
+        }
+        return result;
+    }
+    
+    /**
+     * The comma-separated names of the opt-in optimizations, for error messages.
+     */
+    public static String optInNames() {
+        StringBuilder sb = new StringBuilder();
+        for (Optimization optimization : values()) {
+            if (optimization.isOptIn()) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(optimization.name());
+            }
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
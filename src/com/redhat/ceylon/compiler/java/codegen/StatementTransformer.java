@@ -115,6 +115,15 @@ public class StatementTransformer extends AbstractTransformer {
 
     private final Set<Optimization> disabledOptimizations;
     
+    /** The opt-in optimizations enabled with {@code -enableOptimization} */
+    private final Set<Optimization> enabledOptimizations;
+    
+    /** 
+     * The statement of the innermost block we're transforming, which is 
+     * where expression optimizations are required or disabled. 
+     */
+    private Tree.Statement currentStatement;
+    
     private final Transformer<JCStatement, Tree.Return> defaultReturnTransformer = new DefaultReturnTransformer();
     private Transformer<JCStatement, Tree.Return> returnTransformer = defaultReturnTransformer;
     private final Transformer<List<JCStatement>, Tree.Break> defaultBreakTransformer = new DefaultBreakTransformer();
@@ -133,19 +142,49 @@ public class StatementTransformer extends AbstractTransformer {
     private StatementTransformer(Context context) {
         super(context);
         Options options = context.get(Options.optionsKey);
+        disabledOptimizations = getDisabledOptimizations(options);
+        enabledOptimizations = getEnabledOptimizations(options);
+    }
+    
+    /**
+     * Returns whether the given optimization is enabled by the given compiler
+     * options. This is for the passes which run before we transform any 
+     * statement, so it ignores {@code @disableOptimization}.
+     */
+    static boolean isOptimizationEnabled(Options options, Optimization optName) {
+        return !getDisabledOptimizations(options).contains(optName)
+                && (!optName.isOptIn() || getEnabledOptimizations(options).contains(optName));
+    }
+    
+    private static Set<Optimization> getDisabledOptimizations(Options options) {
         if (options.isSet(OptionName.CEYLONDISABLEOPT)) {
-            disabledOptimizations = EnumSet.allOf(Optimization.class);
+            return EnumSet.allOf(Optimization.class);
         } else if (options.isSet(OptionName.CEYLONDISABLEOPT_CUSTOM)) {
-            disabledOptimizations = new HashSet<Optimization>();
-            for (String name : options.get(OptionName.CEYLONDISABLEOPT_CUSTOM).split(",")) {
-                disabledOptimizations.add(Optimization.valueOf(name));
-            }
+            return Optimization.parse(options.get(OptionName.CEYLONDISABLEOPT_CUSTOM));
         } else {
-            disabledOptimizations = EnumSet.noneOf(Optimization.class);
+            return EnumSet.noneOf(Optimization.class);
         }
-        
+    }
+    
+    /** 
+     * The names were already checked when the option was processed, see 
+     * {@link com.sun.tools.javac.main.RecognizedOptions} 
+     */
+    private static Set<Optimization> getEnabledOptimizations(Options options) {
+        if (options.isSet(OptionName.CEYLONENABLEOPT)) {
+            return Optimization.parse(options.get(OptionName.CEYLONENABLEOPT));
+        }
+        return EnumSet.noneOf(Optimization.class);
     }
 
+    /**
+     * The statement of the innermost block we're currently transforming, 
+     * or null if we're not transforming a statement of a block.
+     */
+    Tree.Statement getCurrentStatement() {
+        return currentStatement;
+    }
+    
     public JCBlock transform(Tree.Block block) {
         return block == null ? null : at(block).Block(0, transformBlock(block));
     }
@@ -177,6 +216,10 @@ public class StatementTransformer extends AbstractTransformer {
                 } else {
                     returnTransformer = this.returnTransformer;
                 }
+                Tree.Statement prevStatement = currentStatement;
+                // the bodies of local types have statements of their own
+                currentStatement = stmt instanceof Tree.ClassOrInterface
+                        || stmt instanceof Tree.ObjectDefinition ? null : stmt;
                 try {
                     HasErrorException error = errors().getFirstErrorBlock(stmt);
                     if (error == null) {
@@ -187,6 +230,7 @@ public class StatementTransformer extends AbstractTransformer {
                     }
                 } finally {
                     returnTransformer(returnTransformer);
+                    currentStatement = prevStatement;
                 }
             }
             result = (List<JCStatement>)v.getResult().toList();
@@ -1561,6 +1605,9 @@ public class StatementTransformer extends AbstractTransformer {
         if (transformation == null) {
             transformation = spanOpIteration(stmt);
         }
+        if (transformation == null) {
+            transformation = rangeIteration(stmt, baseIterable, step);
+        }
         if (transformation == null) {
             transformation = new ForStatementTransformation(stmt);
         }
@@ -2067,7 +2114,7 @@ public class StatementTransformer extends AbstractTransformer {
      * @param reason The reason the optimization could not be used
      * @return null
      */
-    private <T,S extends Tree.StatementOrArgument> T optimizationFailed(S stmt, Optimization optName, String reason) {
+    <T,S extends Tree.StatementOrArgument> T optimizationFailed(S stmt, Optimization optName, String reason) {
         return optimizationFailed(stmt, new Optimization[]{optName}, reason);
     }
     private <T,S extends Tree.StatementOrArgument> T optimizationFailed(S stmt, Optimization[] optNames, String reason) {
@@ -2083,24 +2130,30 @@ public class StatementTransformer extends AbstractTransformer {
     /**
      * Returns null but logs an error the given optimization 
      */
-    private <T,S extends Tree.StatementOrArgument> T optimizationDisabled(S stmt, Optimization optName) {
+    <T,S extends Tree.StatementOrArgument> T optimizationDisabled(S stmt, Optimization optName) {
+        if (optName.isOptIn() && !enabledOptimizations.contains(optName)) {
+            return optimizationFailed(stmt, optName, 
+                    "optimization not enabled with -enableOptimization");
+        }
         return optimizationFailed(stmt, optName, 
                 "optimization explicitly disabled by @disableOptimization");
     }
     
     /**
      * Determines whether the given optimization has been disabled on the 
-     * given statement. 
+     * given statement, or is an opt-in optimization which hasn't been enabled.
      * @param stmt The thing with the {@code @requireOptimization} compiler 
-     * annotation.
+     * annotation, or null if there is none.
      * @param optName The name of the optimization
      * @return
      */
-    private boolean isOptimizationDisabled(Tree.StatementOrArgument stmt, Optimization optName) {
+    boolean isOptimizationDisabled(Tree.StatementOrArgument stmt, Optimization optName) {
         return this.disabledOptimizations.contains(optName)
-                || CodegenUtil.hasCompilerAnnotationNoArgument(stmt, "disableOptimization")
-                || CodegenUtil.hasCompilerAnnotationWithArgument(stmt, 
-                        "disableOptimization", optName.toString());
+                || optName.isOptIn() && !this.enabledOptimizations.contains(optName)
+                || stmt != null
+                    && (CodegenUtil.hasCompilerAnnotationNoArgument(stmt, "disableOptimization")
+                        || CodegenUtil.hasCompilerAnnotationWithArgument(stmt, 
+                                "disableOptimization", optName.toString()));
     }
     
     private boolean isOptimizationRequired(Tree.StatementOrArgument stmt, Optimization optName) {
@@ -2342,6 +2395,194 @@ public class StatementTransformer extends AbstractTransformer {
         return new SegmentOpIteration(stmt, op, step, start, length);
     }
     
+    /**
+     * <p>Transformation of {@code for} loops over a {@code Range<Integer>} 
+     * which is not a span or measure operator in the loop header, for example
+     * a value or the result of {@code span()} or {@code measure()}. Every 
+     * {@code Range} is a non-empty run of consecutive integers, so we can
+     * read its bounds and count, without an {@code Iterator} or boxing:</p>
+     * <pre>
+        final Range $range = RANGE;
+        long $element = $range.getFirst().longValue();
+        final long $last = $range.getLast().longValue();
+        final long $incr = $range.getDecreasing() ? -1L : 1L;
+        boolean $more = true;
+        while ($more) {
+            final long i = $element;
+            $more = $element != $last;
+            $element += $incr;
+            BODY
+        }
+       </pre>
+     * <p>When the static type of the iterable is only a supertype of 
+     * {@code Range<Integer>}, such as {@code {Integer*}}, we test whether it
+     * is a {@code Range} at runtime, and use the same loop as 
+     * {@link ForStatementTransformation} when it's not, including its 
+     * {@code Array} and {@code Tuple} fast paths, with the {@code Range} 
+     * as an extra fast path.</p>
+     */
+    class RangeIterationOptimization extends ForStatementTransformation {
+        
+        private final Tree.Term iterable;
+        /** Whether we have to test at runtime if the iterable is a Range */
+        private final boolean dynamic;
+        
+        private final SyntheticName iterableName = naming.alias("iterable");
+        private final SyntheticName isRangeName = naming.alias("isRange");
+        private final SyntheticName rangeName = naming.alias("range");
+        private final SyntheticName elementName = naming.alias("element");
+        private final SyntheticName lastName = naming.alias("last");
+        private final SyntheticName incrementName = naming.alias("incr");
+        private final SyntheticName moreName = naming.alias("more");
+        private final SyntheticName iteratorName = naming.alias("iter");
+        private final SyntheticName elemName = naming.alias("elem");
+        
+        RangeIterationOptimization(Tree.ForStatement stmt, Tree.Term iterable, boolean dynamic) {
+            super(stmt);
+            this.iterable = iterable;
+            this.dynamic = dynamic;
+        }
+        
+        @Override
+        protected ListBuffer<JCStatement> transformForClause() {
+            ListBuffer<JCStatement> result = ListBuffer.<JCStatement>lb();
+            Type integerType = typeFact().getIntegerType();
+            Type rangeType = typeFact().getSpanType(integerType);
+            
+            at(iterable);
+            ListBuffer<JCStatement> whenRange = ListBuffer.<JCStatement>lb();
+            if (dynamic) {
+                Type iterableType = typeFact().getIterableType(integerType);
+                result.append(makeVar(FINAL, iterableName, makeJavaType(iterableType), 
+                        expressionGen().transformExpression(iterable, BoxingStrategy.BOXED, iterableType)));
+                result.append(makeVar(FINAL, isRangeName, make().Type(syms().booleanType), 
+                        make().TypeTest(iterableName.makeIdent(), makeJavaType(rangeType, JT_RAW))));
+                whenRange.append(makeVar(FINAL, rangeName, makeJavaType(rangeType, JT_RAW), 
+                        make().TypeCast(makeJavaType(rangeType, JT_RAW), iterableName.makeIdent())));
+                result.append(makeVar(elementName, make().Type(syms().longType), make().Literal(0L)));
+                result.append(makeVar(lastName, make().Type(syms().longType), make().Literal(0L)));
+                result.append(makeVar(incrementName, make().Type(syms().longType), make().Literal(0L)));
+            } else {
+                result.append(makeVar(FINAL, rangeName, makeJavaType(rangeType, JT_RAW), 
+                        expressionGen().transformExpression(iterable, BoxingStrategy.BOXED, rangeType)));
+            }
+            // Range.first, Range.last and the direction
+            whenRange.append(makeVar(elementName, make().Type(syms().longType), 
+                    makeRangeBound("getFirst")));
+            whenRange.append(makeVar(dynamic ? 0 : FINAL, lastName, make().Type(syms().longType), 
+                    makeRangeBound("getLast")));
+            whenRange.append(makeVar(dynamic ? 0 : FINAL, incrementName, make().Type(syms().longType), 
+                    make().Conditional(
+                            make().Apply(null, naming.makeQualIdent(rangeName.makeIdent(), "getDecreasing"), List.<JCExpression>nil()), 
+                            make().Literal(-1L), make().Literal(1L))));
+            result.append(makeVar(moreName, make().Type(syms().booleanType), makeBoolean(true)));
+            
+            JCExpression elementExpr = elementName.makeIdent();
+            if (dynamic) {
+                // the declarations become assignments to the variables declared above
+                ListBuffer<JCStatement> rangeAssigns = ListBuffer.<JCStatement>lb();
+                rangeAssigns.append(whenRange.first());
+                for (JCStatement decl : whenRange.toList().tail) {
+                    JCVariableDecl var = (JCVariableDecl)decl;
+                    rangeAssigns.append(make().Exec(make().Assign(make().Ident(var.name), var.init)));
+                }
+                result.append(make().If(isRangeName.makeIdent(), 
+                        make().Block(0, rangeAssigns.toList()), 
+                        null));
+                // $isRange ? $element : ((Integer)$elem).longValue()
+                elementExpr = make().Conditional(isRangeName.makeIdent(), 
+                        elementExpr, 
+                        unboxType(make().TypeCast(makeJavaType(integerType, JT_NO_PRIMITIVES), elemName.makeIdent()), integerType));
+            } else {
+                result.appendList(whenRange);
+            }
+            
+            ListBuffer<JCStatement> itemDecls = ListBuffer.<JCStatement>lb();
+            Tree.Variable variable = ((Tree.ValueIterator)getForIterator()).getVariable();
+            itemDecls.append(transformVariable(variable, elementExpr, integerType, false).build());
+            // $more = $element != $last; $element += $incr;
+            JCStatement advance = make().Block(0, List.<JCStatement>of(
+                    make().Exec(make().Assign(moreName.makeIdent(), 
+                            make().Binary(JCTree.NE, elementName.makeIdent(), lastName.makeIdent()))),
+                    make().Exec(make().Assignop(JCTree.PLUS_ASG, elementName.makeIdent(), incrementName.makeIdent()))));
+            itemDecls.append(dynamic ? make().If(isRangeName.makeIdent(), advance, null) : advance);
+            
+            Tree.ControlClause prevControlClause = currentForClause;
+            currentForClause = stmt.getForClause();
+            List<JCStatement> body = transformBlock(getBlock());
+            currentForClause = prevControlClause;
+            
+            if (dynamic) {
+                // the loop over any other Iterable, with the Range as an extra fast path
+                result.appendList(transformIterableIteration(stmt, label, 
+                        elemName, iteratorName, 
+                        iterable.getTypeModel(), integerType, 
+                        iterableName.makeIdent(), 
+                        itemDecls.toList(), body, 
+                        !isOptimizationDisabled(stmt, Optimization.ArrayIterationDynamic),
+                        !isOptimizationDisabled(stmt, Optimization.TupleIterationDynamic),
+                        isRangeName, moreName.makeIdent()));
+                return result;
+            }
+            JCStatement loop = at(stmt).WhileLoop(moreName.makeIdent(), 
+                    make().Block(0, itemDecls.toList().appendList(body)));
+            if (label != null) {
+                loop = make().Labelled(label, loop);
+            }
+            result.append(loop);
+            return result;
+        }
+        
+        /** {@code ((Integer)$range.getFirst()).longValue()} */
+        private JCExpression makeRangeBound(String getter) {
+            Type integerType = typeFact().getIntegerType();
+            return unboxType(make().TypeCast(makeJavaType(integerType, JT_NO_PRIMITIVES), 
+                    make().Apply(null, naming.makeQualIdent(rangeName.makeIdent(), getter), List.<JCExpression>nil())), 
+                    integerType);
+        }
+    }
+    
+    /**
+     * Returns a {@link RangeIterationOptimization} if that optimization applies
+     * to the given {@code for} statement, otherwise null.
+     */
+    private ForStatementTransformation rangeIteration(Tree.ForStatement stmt, 
+            Tree.Term baseIterable, Tree.Term step) {
+        Optimization[] optNames = {Optimization.RangeIterationStatic, Optimization.RangeIterationDynamic};
+        if (step != null) {
+            return optimizationFailed(stmt, optNames, 
+                    "iteration with by() is not supported");
+        }
+        if (!(stmt.getForClause().getForIterator() instanceof Tree.ValueIterator)) {
+            return optimizationFailed(stmt, optNames, 
+                    "optimization applies only to ValueIterators");
+        }
+        if (baseIterable instanceof Tree.RangeOp
+                || baseIterable instanceof Tree.SegmentOp) {
+            return optimizationFailed(stmt, optNames, 
+                    "span and measure operators are optimized by SpanOpIteration and SegmentOpIteration");
+        }
+        Type integerType = typeFact().getIntegerType();
+        Type rangeType = typeFact().getSpanType(integerType);
+        Type iterableType = baseIterable.getTypeModel();
+        Optimization optName;
+        if (iterableType.isSubtypeOf(rangeType)) {
+            optName = Optimization.RangeIterationStatic;
+        } else if (rangeType.isSubtypeOf(iterableType)
+                && typeFact().getIteratedType(iterableType) != null
+                && typeFact().getIteratedType(iterableType).isExactly(integerType)) {
+            optName = Optimization.RangeIterationDynamic;
+        } else {
+            return optimizationFailed(stmt, optNames, 
+                    "static type of iterable in for statement is neither Range<Integer> nor an Iterable of Integer");
+        }
+        if (isOptimizationDisabled(stmt, optName)) {
+            return optimizationDisabled(stmt, optName);
+        }
+        return new RangeIterationOptimization(stmt, baseIterable, 
+                optName == Optimization.RangeIterationDynamic);
+    }
+    
     private Tree.ControlClause currentForClause = null;
     
     class ForStatementTransformation {
@@ -2545,6 +2786,27 @@ public class StatementTransformer extends AbstractTransformer {
             List<JCStatement> itemDecls,
             List<JCStatement> bodyStmts,
             boolean allowArrayOpt, boolean allowArraySeqOpt) {
+        return transformIterableIteration(node, label, iterationVarName, iteratorVarName, 
+                iterableType, iteratedType, iterableExpr, itemDecls, bodyStmts, 
+                allowArrayOpt, allowArraySeqOpt, null, null);
+    }
+    
+    /**
+     * Like the other {@code transformIterableIteration()} but with an extra fast path decided by the caller: when the boolean
+     * {@code fastPathName} is true the iterator is not used, and the loop
+     * continues while {@code fastPathLoopCond} is true, so the 
+     * {@code itemDecls} must produce the elements themselves. 
+     * See {@link RangeIterationOptimization}.
+     */
+    List<JCStatement> transformIterableIteration(Node node,
+            Name label, Naming.SyntheticName iterationVarName,
+            Naming.SyntheticName iteratorVarName,
+            Type iterableType, Type iteratedType, 
+            JCExpression iterableExpr,
+            List<JCStatement> itemDecls,
+            List<JCStatement> bodyStmts,
+            boolean allowArrayOpt, boolean allowArraySeqOpt,
+            Naming.SyntheticName fastPathName, JCExpression fastPathLoopCond) {
         Type iteratorElementType = iteratedType;
         ListBuffer<JCStatement> result = ListBuffer.<JCStatement>lb();
         
@@ -2584,7 +2846,8 @@ public class StatementTransformer extends AbstractTransformer {
         }
         
         // java.lang.Object ELEM_NAME;
-        JCVariableDecl elemDecl = makeVar(iterationVarName, make().Type(syms().objectType), optForArray || optForTuple ? makeNull() : null);
+        JCVariableDecl elemDecl = makeVar(iterationVarName, make().Type(syms().objectType), 
+                optForArray || optForTuple || fastPathName != null ? makeNull() : null);
         result.append(elemDecl);
         
         SyntheticName iterName = iteratorVarName;
@@ -2662,6 +2925,9 @@ public class StatementTransformer extends AbstractTransformer {
         } else {
             getIter = at(node).Apply(null, makeSelect(iterableExpr, "iterator"), List.<JCExpression> nil());
         }
+        if (fastPathName != null) {
+            getIter = make().Conditional(fastPathName.makeIdent(), makeNull(), getIter);
+        }
         getIter = gen().expressionGen().applyErasureAndBoxing(getIter, iteratorType, true, BoxingStrategy.BOXED, iteratorType);
         JCVariableDecl iteratorDecl = at(node).VarDef(make().Modifiers(0), iterName.asName(), iteratorTypeExpr, getIter);
         // .ceylon.language.Iterator<T> LOOP_VAR_NAME$iter$X = ITERABLE.getIterator();
@@ -2713,6 +2979,9 @@ public class StatementTransformer extends AbstractTransformer {
                     make().Binary(JCTree.LT, arrayIndex.makeIdent(), arrayLength.makeIdent()), 
                     make().Unary(JCTree.NOT, instof));
         }
+        if (fastPathName != null) {
+            loopCond = make().Conditional(fastPathName.makeIdent(), fastPathLoopCond, loopCond);
+        }
         
         // while (!(($elem$X = $V$iter$X.next()) instanceof Finished); ) {
         JCStatement whileLoop = at(node).WhileLoop(loopCond, at(node).Block(0, loopBody.toList()));
@@ -4013,10 +4282,20 @@ public class StatementTransformer extends AbstractTransformer {
     /**
      * Switch transformation which produces a Java {@code switch},
      * suitable for a switch whose cases are all String literals,
-     * or all Character literals.
+     * or all Character literals, or enough Integer literals which fit in 
+     * an {@code int} (see {@link #isIntegerSwitch}).
      */
     class Switch extends SwitchTransformation {
+        /** 
+         * Whether the cases are Integer literals, so that the {@code long} 
+         * selector has to be narrowed to switch on it 
+         */
+        private final boolean integer;
         public Switch() {
+            this(false);
+        }
+        public Switch(boolean integer) {
+            this.integer = integer;
         }
         @Override
         public JCStatement transformSwitch(Node node, Tree.SwitchClause switchClause, Tree.SwitchCaseList caseList, 
@@ -4080,12 +4359,31 @@ public class StatementTransformer extends AbstractTransformer {
             }
             cases.add(make().Case(null, List.of(transformElse(elseSelectorAlias, caseList, tmpVar, outerExpression, expectedType, false))));
             
+            JCVariableDecl narrowedSelector = null;
+            if (integer) {
+                // switch ((int)sel == sel ? (int)sel : unused) so that 
+                // values which don't fit in an int go to the default case
+                SyntheticName selectorAlias = naming.alias("sel");
+                narrowedSelector = makeVar(FINAL, selectorAlias, make().Type(syms().longType), switchExpr);
+                switchExpr = make().Conditional(
+                        make().Binary(JCTree.EQ, 
+                                make().TypeCast(syms().intType, selectorAlias.makeIdent()), 
+                                selectorAlias.makeIdent()),
+                        make().TypeCast(syms().intType, selectorAlias.makeIdent()),
+                        make().Literal(unusedIntegerCase(caseList)));
+            }
             
             JCStatement last = make().Switch(switchExpr, cases.toList());
             last = make().Labelled(label, last);
+            if (narrowedSelector != null) {
+                last = make().Block(0, List.<JCStatement>of(narrowedSelector, last));
+            }
             return last;
         }
         private JCExpression transformCaseExpr(Tree.Term term) {
+            if (integer) {
+                return make().Literal((int)integerCaseValue(term).longValue());
+            }
             if (term instanceof Tree.BaseMemberExpression
                     && ((Tree.BaseMemberExpression)term).getDeclaration() instanceof Value
                     && ((Value)((Tree.BaseMemberExpression)term).getDeclaration()).isEnumValue()) {
@@ -4122,6 +4420,16 @@ public class StatementTransformer extends AbstractTransformer {
      */
     class IfNullElseSwitch extends SwitchTransformation {
         
+        private final boolean integer;
+        
+        public IfNullElseSwitch() {
+            this(false);
+        }
+        
+        public IfNullElseSwitch(boolean integer) {
+            this.integer = integer;
+        }
+        
         @Override
         public JCStatement transformSwitch(Node node, Tree.SwitchClause switchClause, Tree.SwitchCaseList caseList,
                 String tmpVar, Tree.Term outerExpression, Type expectedType) {
@@ -4140,7 +4448,7 @@ public class StatementTransformer extends AbstractTransformer {
                 ident = selectorAlias.makeIdent();
             }
             // Make a switch out of the non-null cases
-            JCStatement switch_ = new Switch().transformSwitch(switchClause, caseList, tmpVar, outerExpression, expectedType,
+            JCStatement switch_ = new Switch(integer).transformSwitch(switchClause, caseList, tmpVar, outerExpression, expectedType,
                     expressionGen().applyErasureAndBoxing(ident, 
                             switchDefiniteExpressionType,
                             true,
@@ -4354,6 +4662,20 @@ public class StatementTransformer extends AbstractTransformer {
                 }
             }
         }
+        // Are we switching with enough Integer literal match cases (opt-in)?
+        boolean integerSwitch = transformation == null
+                && !isOptimizationDisabled(node instanceof Tree.StatementOrArgument ? (Tree.StatementOrArgument)node : null, 
+                        Optimization.IntegerSwitch);
+        if (integerSwitch
+                && isIntegerSwitch(exprType, switchUnboxed, caseList, false)) {
+            transformation = new Switch(true);
+        }
+        if (integerSwitch
+                && transformation == null
+                && isOptional(exprType)
+                && isIntegerSwitch(typeFact().getDefiniteType(exprType), switchUnboxed, caseList, true)) {
+            transformation = new IfNullElseSwitch(true);
+        }
         // The default transformation
         if (transformation == null) {
             transformation = new IfElseChain();
@@ -4363,6 +4685,88 @@ public class StatementTransformer extends AbstractTransformer {
         return result;
     }
 
+    /** 
+     * The minimum number of Integer literal cases for which a Java 
+     * {@code switch} is used instead of an {@code if/else if} chain.
+     */
+    private static final int MIN_INTEGER_SWITCH_CASES = 4;
+    
+    /**
+     * Determines whether a switch over the given type can be transformed 
+     * into a Java {@code switch} on an {@code int}: the cases must all be 
+     * Integer literals whose values fit in an {@code int} (apart from a 
+     * singleton {@code case (null)} if {@code withNullCase} is true, 
+     * which is then required), and there must be at least 
+     * {@link #MIN_INTEGER_SWITCH_CASES} of them, otherwise the 
+     * {@code if/else if} chain is as good. 
+     */
+    private boolean isIntegerSwitch(Type type, Boolean switchUnboxed, Tree.SwitchCaseList caseList, boolean withNullCase) {
+        if (BooleanUtil.isFalse(switchUnboxed)
+                || !type.isExactly(typeFact().getIntegerType())) {
+            return false;
+        }
+        int count = 0;
+        boolean hasSingletonNullCase = false;
+        for (Tree.CaseClause clause : caseList.getCaseClauses()) {
+            if (!(clause.getCaseItem() instanceof Tree.MatchCase)) {
+                return false;
+            }
+            if (getSingletonNullCase(clause) != null) {
+                hasSingletonNullCase = true;
+                continue;
+            }
+            for (Tree.Expression expr : ((Tree.MatchCase)clause.getCaseItem()).getExpressionList().getExpressions()) {
+                Long value = integerCaseValue(expr);
+                if (value == null
+                        || value.longValue() != (int)value.longValue()) {
+                    return false;
+                }
+                count++;
+            }
+        }
+        return hasSingletonNullCase == withNullCase 
+                && count >= MIN_INTEGER_SWITCH_CASES;
+    }
+    
+    /**
+     * Returns the value of the given Integer literal case, or null if 
+     * it's not a literal (or is an erroneous one)
+     */
+    private Long integerCaseValue(Tree.Term term) {
+        term = ExpressionTransformer.eliminateParens(term);
+        try {
+            if (term instanceof Tree.NaturalLiteral) {
+                return ExpressionTransformer.literalValue((Tree.NaturalLiteral)term);
+            } else if (term instanceof Tree.NegativeOp) {
+                return ExpressionTransformer.literalValue((Tree.NegativeOp)term);
+            }
+        } catch (ErroneousException e) {
+            // the if/else chain will report it
+        }
+        return null;
+    }
+    
+    /**
+     * Returns an {@code int} which is not the value of any of the 
+     * Integer literal cases
+     */
+    private int unusedIntegerCase(Tree.SwitchCaseList caseList) {
+        Set<Long> values = new HashSet<Long>();
+        for (Tree.CaseClause clause : caseList.getCaseClauses()) {
+            if (getSingletonNullCase(clause) != null) {
+                continue;
+            }
+            for (Tree.Expression expr : ((Tree.MatchCase)clause.getCaseItem()).getExpressionList().getExpressions()) {
+                values.add(integerCaseValue(expr));
+            }
+        }
+        int unused = Integer.MIN_VALUE;
+        while (values.contains((long)unused)) {
+            unused++;
+        }
+        return unused;
+    }
+
     private boolean isSwitchAllMatchCases(Tree.SwitchCaseList caseList) {
         for (Tree.CaseClause caseClause : caseList.getCaseClauses()) {
             if (!(caseClause.getCaseItem() instanceof Tree.MatchCase)) {
@@ -4553,7 +4957,11 @@ public class StatementTransformer extends AbstractTransformer {
      * @return The Java tree
      */
     List<JCVariableDecl> transform(Tree.Destructure stmt) {
-        List<JCVariableDecl> result = List.nil();
+        List<JCVariableDecl> result = transformLiteralDestructure(stmt);
+        if (result != null) {
+            return result;
+        }
+        result = List.nil();
         
         // Create temp var to hold result of expression
         Tree.Pattern pat = stmt.getPattern();
@@ -4572,6 +4980,98 @@ public class StatementTransformer extends AbstractTransformer {
         return result;
     }
 
+    /**
+     * Transforms a destructuring of a tuple or entry literal, such as 
+     * {@code value [x, y] = [a, b];} or {@code value k->v = a->b;}, 
+     * into one local per pattern variable initialized directly from the 
+     * corresponding element expression. No Tuple or Entry is instantiated 
+     * and the locals can be unboxed.
+     * @return The Java tree, or null if the pattern does not match the 
+     * literal element for element, or the optimization is disabled.
+     */
+    private List<JCVariableDecl> transformLiteralDestructure(Tree.Destructure stmt) {
+        Tree.Pattern pat = stmt.getPattern();
+        Tree.Term term = stmt.getSpecifierExpression().getExpression().getTerm();
+        if (!isLiteralPattern(pat, term)) {
+            return null;
+        }
+        if (isOptimizationDisabled(stmt, Optimization.LiteralDestructure)) {
+            return optimizationDisabled(stmt, Optimization.LiteralDestructure);
+        }
+        return VarDefBuilder.buildAll(transformLiteralPattern(pat, term));
+    }
+    
+    /**
+     * Determines whether the given pattern destructures the given term 
+     * element for element: every tuple pattern is matched by a tuple 
+     * literal with the same number of listed (non-spread) elements, 
+     * and every entry pattern by an entry literal.
+     */
+    private boolean isLiteralPattern(Tree.Pattern pat, Tree.Term term) {
+        term = ExpressionTransformer.eliminateParens(term);
+        if (pat instanceof Tree.VariablePattern) {
+            return true;
+        } else if (pat instanceof Tree.KeyValuePattern) {
+            if (!(term instanceof Tree.EntryOp)) {
+                return false;
+            }
+            Tree.KeyValuePattern entry = (Tree.KeyValuePattern)pat;
+            Tree.EntryOp op = (Tree.EntryOp)term;
+            return isLiteralPattern(entry.getKey(), op.getLeftTerm())
+                    && isLiteralPattern(entry.getValue(), op.getRightTerm());
+        } else if (pat instanceof Tree.TuplePattern) {
+            if (!(term instanceof Tree.Tuple)
+                    || ((Tree.Tuple)term).getSequencedArgument() == null) {
+                return false;
+            }
+            java.util.List<Tree.Pattern> patterns = ((Tree.TuplePattern)pat).getPatterns();
+            java.util.List<Tree.PositionalArgument> args = ((Tree.Tuple)term).getSequencedArgument().getPositionalArguments();
+            if (patterns.size() != args.size()) {
+                return false;
+            }
+            for (int ii = 0; ii < patterns.size(); ii++) {
+                Tree.Pattern p = patterns.get(ii);
+                if (isVariadicVariable(p)
+                        || !(args.get(ii) instanceof Tree.ListedArgument)
+                        || !isLiteralPattern(p, ((Tree.ListedArgument)args.get(ii)).getExpression())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Transforms a pattern which {@linkplain #isLiteralPattern(Tree.Pattern, Tree.Term) 
+     * matches} the given term.
+     */
+    private List<VarDefBuilder> transformLiteralPattern(Tree.Pattern pat, Tree.Term term) {
+        List<VarDefBuilder> result = List.nil();
+        term = ExpressionTransformer.eliminateParens(term);
+        if (pat instanceof Tree.TuplePattern) {
+            java.util.List<Tree.Pattern> patterns = ((Tree.TuplePattern)pat).getPatterns();
+            java.util.List<Tree.PositionalArgument> args = ((Tree.Tuple)term).getSequencedArgument().getPositionalArguments();
+            for (int ii = 0; ii < patterns.size(); ii++) {
+                result = result.appendList(transformLiteralPattern(patterns.get(ii), 
+                        ((Tree.ListedArgument)args.get(ii)).getExpression()));
+            }
+        } else if (pat instanceof Tree.KeyValuePattern) {
+            Tree.KeyValuePattern entry = (Tree.KeyValuePattern)pat;
+            Tree.EntryOp op = (Tree.EntryOp)term;
+            result = result.appendList(transformLiteralPattern(entry.getKey(), op.getLeftTerm()));
+            result = result.appendList(transformLiteralPattern(entry.getValue(), op.getRightTerm()));
+        } else if (pat instanceof Tree.VariablePattern) {
+            Tree.Variable var = ((Tree.VariablePattern)pat).getVariable();
+            BoxingStrategy boxingStrategy = CodegenUtil.getBoxingStrategy(var.getDeclarationModel());
+            JCExpression init = expressionGen().transformExpression(term, boxingStrategy, var.getType().getTypeModel());
+            result = result.append(new VarDefBuilder(expressionGen(), var, init));
+        } else {
+            throw BugException.unhandledCase(pat);
+        }
+        return result;
+    }
+
     static class VarDefBuilder {
         private final ExpressionTransformer gen;
         private final Variable var;
@@ -0,0 +1,317 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.launcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.tools.JavaFileManager;
+
+import com.redhat.ceylon.common.FileUtil;
+import com.redhat.ceylon.compiler.java.launcher.Main.ExitState;
+import com.redhat.ceylon.compiler.java.launcher.Main.ExitState.CeylonState;
+import com.redhat.ceylon.compiler.java.tools.CeylonLog;
+import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.file.ZipFileIndexCache;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * A resident compiler which listens on a loopback port and runs the compilations
+ * it is sent one after the other, in the same JVM.
+ *
+ * Besides saving the JVM startup and the JIT warm-up on every compilation, the daemon
+ * keeps the central directory indexes of every archive it has seen (repository cars and
+ * jars, including those of ceylon.language) between compilations. They are keyed on
+ * their file, and an index is rebuilt as soon as its file's modification time or length changes.
+ * It does not keep the loaded model (modules, packages and declarations) between compilations:
+ * the model is mutable and tied to the type checker and model loader of its compilation, so
+ * each compilation still loads the declarations it uses from the (already indexed) archives.
+ *
+ * Since compiling writes files with the permissions of the user who started the daemon,
+ * the daemon only serves clients which can read its secret token. It is generated when
+ * the daemon starts and written to a file of the user's Ceylon directory which only its
+ * owner can read, and removed when the daemon stops.
+ *
+ * The protocol is deliberately trivial: the client sends the token, the number of arguments
+ * followed by each argument, and the daemon replies with the javac exit code, the
+ * {@link CeylonState}, the error count, the optional failure message and the compiler
+ * output. Sending a negative argument count stops the daemon. Requests with the wrong
+ * token are dropped without a reply, and so are clients which don't send their whole
+ * request within the request timeout, so that they can't hold the daemon up.
+ */
+public class CompilerDaemon {
+
+    public static final int DEFAULT_PORT = 46317;
+
+    /** How long we wait for a client to send its request, in milliseconds */
+    public static final int DEFAULT_REQUEST_TIMEOUT = 10000;
+
+    private static final int STOP = -1;
+
+    /**
+     * The outcome of a compilation run by the daemon
+     */
+    public static class Response {
+        public final int javacExitCode;
+        public final ExitState exitState;
+        public final String output;
+
+        Response(int javacExitCode, ExitState exitState, String output) {
+            this.javacExitCode = javacExitCode;
+            this.exitState = exitState;
+            this.output = output;
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final PrintWriter log;
+    private final String token;
+    private final File tokenFile;
+    private final int requestTimeout;
+    private boolean stopped;
+    private int compilations;
+
+    public CompilerDaemon(int port, PrintWriter log) throws IOException {
+        this(port, log, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    public CompilerDaemon(int port, PrintWriter log, int requestTimeout) throws IOException {
+        // only accept local connections
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        this.log = log;
+        this.requestTimeout = requestTimeout;
+        this.token = makeToken();
+        this.tokenFile = getTokenFile(getPort());
+        try{
+            writeToken(tokenFile, token);
+        }catch(IOException x){
+            serverSocket.close();
+            throw x;
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serves compilation requests until we are asked to stop
+     */
+    public void serve() throws IOException {
+        log.println("Ceylon compiler daemon listening on port "+getPort());
+        try{
+            while(!stopped){
+                Socket socket = serverSocket.accept();
+                try{
+                    // we serve one client at a time, so don't wait forever for a silent one
+                    socket.setSoTimeout(requestTimeout);
+                    handle(socket);
+                }catch(IOException x){
+                    log.println("Ceylon compiler daemon: dropped request: "+x);
+                }finally{
+                    socket.close();
+                }
+            }
+        }finally{
+            serverSocket.close();
+            tokenFile.delete();
+        }
+        log.println("Ceylon compiler daemon stopped after "+compilations+" compilations");
+    }
+
+    private void handle(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if(!MessageDigest.isEqual(token.getBytes("UTF-8"), in.readUTF().getBytes("UTF-8"))){
+            log.println("Ceylon compiler daemon: dropped request with an invalid token");
+            return;
+        }
+        int count = in.readInt();
+        if(count == STOP){
+            stopped = true;
+            writeResponse(out, Main.EXIT_OK, ExitState.ok(), "");
+            return;
+        }
+        String[] args = new String[count];
+        for(int i=0;i<count;i++)
+            args[i] = readString(in);
+
+        StringWriter output = new StringWriter();
+        Main compiler = new Main("ceylon compile", new PrintWriter(output, true));
+        int result = compile(compiler, args);
+        compilations++;
+        writeResponse(out, result, compiler.exitState, output.toString());
+    }
+
+    private int compile(Main compiler, String[] args) {
+        Context context = new Context();
+        // share the archive indexes between compilations, they are invalidated when their archive changes
+        context.put(ZipFileIndexCache.class, ZipFileIndexCache.getSharedInstance());
+        CeyloncFileManager.preRegister(context);
+        CeylonLog.preRegister(context);
+        try{
+            return compiler.compile(args, context);
+        }finally{
+            JavaFileManager fileManager = context.get(JavaFileManager.class);
+            if(fileManager instanceof JavacFileManager)
+                ((JavacFileManager) fileManager).close();
+        }
+    }
+
+    private static void writeResponse(DataOutputStream out, int javacExitCode, ExitState exitState, String output) throws IOException {
+        out.writeInt(javacExitCode);
+        if(exitState == null)
+            exitState = javacExitCode == Main.EXIT_OK ? ExitState.ok() : ExitState.systemError(null, null);
+        out.writeUTF(exitState.ceylonState.name());
+        out.writeInt(exitState.errorCount);
+        Throwable failure = exitState.abortingException;
+        writeString(out, failure != null ? String.valueOf(failure) : "");
+        writeString(out, output);
+        out.flush();
+    }
+
+    /**
+     * Sends the given compiler arguments to the daemon listening on the given port and
+     * waits for the result. Throws an IOException if there is no such daemon.
+     */
+    public static Response compile(int port, String[] args) throws IOException {
+        String token = readToken(port);
+        Socket socket = new Socket(InetAddress.getByName(null), port);
+        try{
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(token);
+            out.writeInt(args.length);
+            for(String arg : args)
+                writeString(out, arg);
+            out.flush();
+            return readResponse(socket);
+        }finally{
+            socket.close();
+        }
+    }
+
+    /**
+     * Stops the daemon listening on the given port, once it is done with its current compilation
+     */
+    public static void stop(int port) throws IOException {
+        String token = readToken(port);
+        Socket socket = new Socket(InetAddress.getByName(null), port);
+        try{
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(token);
+            out.writeInt(STOP);
+            out.flush();
+            readResponse(socket);
+        }finally{
+            socket.close();
+        }
+    }
+
+    private static Response readResponse(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        int javacExitCode = in.readInt();
+        CeylonState ceylonState = CeylonState.valueOf(in.readUTF());
+        int errorCount = in.readInt();
+        String failure = readString(in);
+        String output = readString(in);
+        ExitState exitState = ExitState.remote(javacExitCode, ceylonState, errorCount,
+                failure.isEmpty() ? null : failure);
+        return new Response(javacExitCode, exitState, output);
+    }
+
+    static File getTokenFile(int port) {
+        return new File(FileUtil.getDefaultUserDir(), "compiler-daemon-"+port+".token");
+    }
+
+    private static String makeToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes){
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the token to a file only its owner can read. The file is created with those
+     * permissions where we can, so that it is never readable by others, even briefly.
+     */
+    private static void writeToken(File file, String token) throws IOException {
+        file.getParentFile().mkdirs();
+        Path path = file.toPath();
+        Files.deleteIfExists(path);
+        if(FileSystems.getDefault().supportedFileAttributeViews().contains("posix")){
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }else{
+            Files.createFile(path);
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(false, false);
+            file.setWritable(true, true);
+        }
+        Files.write(path, token.getBytes("UTF-8"));
+    }
+
+    /**
+     * Reads the token of the daemon listening on the given port. Throws a ConnectException
+     * if there is none, as if there was no daemon listening.
+     */
+    private static String readToken(int port) throws IOException {
+        File file = getTokenFile(port);
+        try{
+            return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        }catch(NoSuchFileException x){
+            throw new ConnectException("No compiler daemon token in "+file);
+        }
+    }
+
+    // writeUTF is limited to 64k, which is not enough for compiler output
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
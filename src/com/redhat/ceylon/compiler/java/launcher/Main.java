@@ -382,7 +382,17 @@ public class Main extends com.sun.tools.javac.main.Main {
         public static ExitState cmderror() {
             // icky: We'd prefer this to be handled at the tool API level 
             return new ExitState(EXIT_CMDERR, CeylonState.BUG, 0, null, null);
-        }    
+        }
+
+        /**
+         * The state reported by a compilation which ran in a {@link CompilerDaemon}.
+         * The aborting exception, if any, only survives as its message.
+         */
+        public static ExitState remote(int javacExitCode, CeylonState ceylonState, int errorCount,
+                String failure) {
+            Throwable ex = failure != null ? new RuntimeException(failure) : null;
+            return new ExitState(javacExitCode, ceylonState, errorCount, ex, null);
+        }
     }
     
     public ExitState exitState = null;
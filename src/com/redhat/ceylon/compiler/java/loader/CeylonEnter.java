@@ -23,9 +23,14 @@ package com.redhat.ceylon.compiler.java.loader;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject.Kind;
@@ -40,7 +45,8 @@ import com.redhat.ceylon.common.Backend;
 import com.redhat.ceylon.common.StatusPrinter;
 import com.redhat.ceylon.compiler.java.codegen.AnnotationModelVisitor;
 import com.redhat.ceylon.compiler.java.codegen.BoxingDeclarationVisitor;
-import com.redhat.ceylon.compiler.java.codegen.BoxingVisitor;
+import com.redhat.ceylon.compiler.java.codegen.BoxingReport;
+import com.redhat.ceylon.compiler.java.codegen.ConstantDefaultArguments;
 import com.redhat.ceylon.compiler.java.codegen.CeylonCompilationUnit;
 import com.redhat.ceylon.compiler.java.codegen.CeylonTransformer;
 import com.redhat.ceylon.compiler.java.codegen.CodeGenError;
@@ -55,8 +61,10 @@ import com.redhat.ceylon.compiler.java.codegen.UnsupportedVisitor;
 import com.redhat.ceylon.compiler.java.tools.CeylonLog;
 import com.redhat.ceylon.compiler.java.tools.CeylonPhasedUnit;
 import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
+import com.redhat.ceylon.compiler.java.tools.IncrementalBuildIndex;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler.CompilerDelegate;
+import com.redhat.ceylon.compiler.java.util.CompilerMetrics;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.typechecker.analyzer.AnalysisError;
 import com.redhat.ceylon.compiler.typechecker.analyzer.UnsupportedError;
@@ -73,6 +81,7 @@ import com.redhat.ceylon.compiler.typechecker.tree.Tree.CompilerAnnotation;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.Statement;
 import com.redhat.ceylon.compiler.typechecker.tree.TreeUtil;
 import com.redhat.ceylon.compiler.typechecker.tree.UnexpectedError;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 import com.redhat.ceylon.compiler.typechecker.util.AssertionVisitor;
 import com.redhat.ceylon.compiler.typechecker.util.WarningSuppressionVisitor;
 import com.redhat.ceylon.model.cmr.ArtifactResult;
@@ -147,6 +156,9 @@ public class CeylonEnter extends Enter {
     private TaskListener taskListener;
     private SourceLanguage sourceLanguage;
     private StatusPrinter sp;
+    private IncrementalBuildIndex incrementalBuildIndex;
+    private CompilerMetrics metrics;
+    private ConstantDefaultArguments constantDefaultArguments;
 
     
     protected CeylonEnter(Context context) {
@@ -176,6 +188,9 @@ public class CeylonEnter extends Enter {
         annotate = Annotate.instance(context);
         taskListener = context.get(TaskListener.class);
         sourceLanguage = SourceLanguage.instance(context);
+        incrementalBuildIndex = IncrementalBuildIndex.instance(context);
+        metrics = CompilerMetrics.instance(context);
+        constantDefaultArguments = ConstantDefaultArguments.instance(context);
 
         // now superclass init
         init(context);
@@ -360,6 +375,7 @@ public class CeylonEnter extends Enter {
         // run the type checker
         timer.startTask("Ceylon type checking");
         typeCheck();
+        incrementalBuildIndex.computeSignature(phasedUnits.getPhasedUnits());
         // some debugging
         //printModules();
         timer.startTask("Ceylon code generation");
@@ -378,6 +394,14 @@ public class CeylonEnter extends Enter {
                 CeylonCompilationUnit ceylonTree = (CeylonCompilationUnit) tree;
                 gen.setMap(ceylonTree.lineMap);
                 CeylonPhasedUnit phasedUnit = (CeylonPhasedUnit)ceylonTree.phasedUnit;
+                if(incrementalBuildIndex.canSkip(phasedUnit)){
+                    // the classes of the previous car are still valid, and will be kept
+                    ceylonTree.defs = List.nil();
+                    if(verbose)
+                        Log.printLines(log.noticeWriter, "[Skipping code generation for unchanged "+phasedUnit.getPathRelativeToSrcDir()+"]");
+                    metrics.count("ceylonUnitsSkipped", 1);
+                    continue;
+                }
 
                 if(sp != null){
                     sp.clearLine();
@@ -385,6 +409,7 @@ public class CeylonEnter extends Enter {
                     sp.log(phasedUnit.getPathRelativeToSrcDir());
                 }
 
+                metrics.count("ceylonUnits", 1);
                 gen.setFileObject(phasedUnit.getFileObject());
                 nested.startTask("Ceylon code generation for " + phasedUnit.getUnitFile().getName());
                 TaskEvent event = new TaskEvent(TaskEvent.Kind.PARSE, tree);
@@ -404,14 +429,25 @@ public class CeylonEnter extends Enter {
                     log.errWriter.println("Java code generated for "+tree.getSourceFile());
                     log.errWriter.println(ceylonTree);
                 }
+            }else{
+                metrics.count("javaUnits", 1);
             }
         }
         timer.startTask("Ceylon error generation");
         printGeneratorErrors();
         timer.endTask();
+        if(isVerbose("defaults")){
+            for (PhasedUnit pu : phasedUnits.getPhasedUnits()) {
+                constantDefaultArguments.print(log.errWriter, pu.getCompilationUnit());
+            }
+        }
+        metrics.count("defaultArgumentCallsInlined", constantDefaultArguments.getInlinedCount());
         // write some stats
         if(verbose)
             modelLoader.printStats();
+        incrementalBuildIndex.printStats();
+        if(metrics.isEnabled() && modelLoader instanceof CeylonModelLoader)
+            ((CeylonModelLoader)modelLoader).recordMetrics(metrics);
     }
 
     private boolean isVerbose(String key) {
@@ -484,85 +520,217 @@ public class CeylonEnter extends Enter {
         // Delegate to an external typechecker (e.g. the IDE build)
         compilerDelegate.typeCheck(listOfUnits);
 
+        timer.startTask("Ceylon preparation passes");
         if(sp != null){
             sp.clearLine();
             sp.log("Preparation phase");
         }
 
-        int size = listOfUnits.size();
-        
-        int i=1;
-        // This phase is proper to the Java backend 
-        ForcedCaptureVisitor fcv = new ForcedCaptureVisitor();
-        for (PhasedUnit pu : listOfUnits) {
-            if(sp != null)
-                progressPreparation(1, i++, size, pu);
-            Unit unit = pu.getUnit();
-            final CompilationUnit compilationUnit = pu.getCompilationUnit();
-            compilationUnit.visit(fcv);
-            for (Declaration d: unit.getDeclarations()) {
-                if (d instanceof TypedDeclaration 
-                        && !(d instanceof Setter)
-                        // skip already captured members
-                        && !d.isCaptured()) {
-                    compilationUnit.visit(new MethodOrValueReferenceVisitor((TypedDeclaration) d));
+        final BoxingReport boxingReport = isVerbose("boxing") ? new BoxingReport() : null;
+        ForkJoinPool pool = null;
+        if(options.get(OptionName.CEYLONPARALLEL) != null && listOfUnits.size() > 1)
+            pool = new ForkJoinPool();
+        try{
+            // This phase is proper to the Java backend 
+            runPreparationPhase(pool, listOfUnits, new PreparationPhase<ForcedCaptureVisitor>(1) {
+                @Override
+                ForcedCaptureVisitor makeVisitors() {
+                    return new ForcedCaptureVisitor();
+                }
+                @Override
+                void visit(ForcedCaptureVisitor fcv, PhasedUnit pu) {
+                    Unit unit = pu.getUnit();
+                    final CompilationUnit compilationUnit = pu.getCompilationUnit();
+                    compilationUnit.visit(fcv);
+                    for (Declaration d: unit.getDeclarations()) {
+                        if (d instanceof TypedDeclaration 
+                                && !(d instanceof Setter)
+                                // skip already captured members
+                                && !d.isCaptured()) {
+                            compilationUnit.visit(new MethodOrValueReferenceVisitor((TypedDeclaration) d));
+                        }
+                    }
+                }
+            });
+
+            // Extra phases for the compiler
+
+            runPreparationPhase(pool, listOfUnits, new PreparationPhase<UnsupportedVisitor>(2) {
+                @Override
+                UnsupportedVisitor makeVisitors() {
+                    return new UnsupportedVisitor();
                 }
+                @Override
+                void visit(UnsupportedVisitor uv, PhasedUnit pu) {
+                    pu.getCompilationUnit().visit(uv);
+                }
+            });
+            // boxing visitor depends on boxing decl. This one is always serial because it
+            // sets the boxing and underlying type of refined declarations, which can belong
+            // to other units
+            runPreparationPhase(pool, listOfUnits, new PreparationPhase<BoxingDeclarationVisitor>(3, true) {
+                @Override
+                BoxingDeclarationVisitor makeVisitors() {
+                    BoxingDeclarationVisitor visitor = new CompilerBoxingDeclarationVisitor(gen);
+                    visitor.setReport(boxingReport);
+                    return visitor;
+                }
+                @Override
+                void visit(BoxingDeclarationVisitor boxingDeclarationVisitor, PhasedUnit pu) {
+                    pu.getCompilationUnit().visit(boxingDeclarationVisitor);
+                }
+            });
+            // these share the transformer and model loader, and update declarations
+            // from other units, so they are serial too
+            runPreparationPhase(pool, listOfUnits, new PreparationPhase<Visitor[]>(4, true) {
+                @Override
+                Visitor[] makeVisitors() {
+                    return new Visitor[]{
+                            new JvmMissingNativeVisitor(modelLoader),
+                            new CompilerBoxingVisitor(gen),
+                            new DeferredVisitor(),
+                            new AnnotationModelVisitor(gen)
+                    };
+                }
+                @Override
+                void visit(Visitor[] visitors, PhasedUnit pu) {
+                    CompilationUnit compilationUnit = pu.getCompilationUnit();
+                    for (Visitor visitor : visitors) {
+                        compilationUnit.visit(visitor);
+                    }
+                }
+            });
+            // the others only touch their own unit and can run at the same time
+            runPreparationPhase(pool, listOfUnits, new PreparationPhase<Visitor[]>(5) {
+                @Override
+                Visitor[] makeVisitors() {
+                    return new Visitor[]{
+                            new DefiniteAssignmentVisitor(),
+                            new TypeParameterCaptureVisitor(),
+                            new InterfaceVisitor(),
+                            new ConstantDefaultArguments.Collector(constantDefaultArguments)
+                    };
+                }
+                @Override
+                void visit(Visitor[] visitors, PhasedUnit pu) {
+                    CompilationUnit compilationUnit = pu.getCompilationUnit();
+                    for (Visitor visitor : visitors) {
+                        compilationUnit.visit(visitor);
+                    }
+                }
+            });
+
+            runPreparationPhase(pool, listOfUnits, new PreparationPhase<Void>(6) {
+                @Override
+                Void makeVisitors() {
+                    return null;
+                }
+                @Override
+                void visit(Void none, PhasedUnit pu) {
+                    CompilationUnit compilationUnit = pu.getCompilationUnit();
+                    compilationUnit.visit(new WarningSuppressionVisitor<Warning>(Warning.class, pu.getSuppressedWarnings()));
+                }
+            });
+        }finally{
+            if(pool != null)
+                pool.shutdown();
+        }
+        
+        // always collected serially, in unit order, so that errors are reported
+        // in the same order whether the preparation ran in parallel or not
+        collectTreeErrors(true, true);
+        if(boxingReport != null){
+            for (PhasedUnit pu : listOfUnits) {
+                boxingReport.print(log.errWriter, pu.getCompilationUnit());
             }
         }
+    }
+
+    private static final int PREPARATION_PHASES = 6;
+
+    /**
+     * One of the Java backend preparation phases: creates the visitors it needs
+     * with {@link #makeVisitors()} and runs them on each unit with {@link #visit(Object, PhasedUnit)}.
+     * In parallel mode every worker thread gets its own visitors, since most of them are stateful.
+     * Phases which update shared state (the transformer, the model loader or declarations of
+     * other units) are marked serial and always run on the calling thread.
+     */
+    private static abstract class PreparationPhase<V> {
+        final int phase;
+        final boolean serial;
         
-        UnsupportedVisitor uv = new UnsupportedVisitor();
-        JvmMissingNativeVisitor mnv = new JvmMissingNativeVisitor(modelLoader);
-        BoxingDeclarationVisitor boxingDeclarationVisitor = new CompilerBoxingDeclarationVisitor(gen);
-        BoxingVisitor boxingVisitor = new CompilerBoxingVisitor(gen);
-        DeferredVisitor deferredVisitor = new DeferredVisitor();
-        AnnotationModelVisitor amv = new AnnotationModelVisitor(gen);
-        DefiniteAssignmentVisitor dav = new DefiniteAssignmentVisitor();
-        TypeParameterCaptureVisitor tpCaptureVisitor = new TypeParameterCaptureVisitor();
-        InterfaceVisitor localInterfaceVisitor = new InterfaceVisitor();
-        // Extra phases for the compiler
+        PreparationPhase(int phase){
+            this(phase, false);
+        }
         
-        // boxing visitor depends on boxing decl
-        i=1;
-        for (PhasedUnit pu : listOfUnits) {
-            if(sp != null)
-                progressPreparation(2, i++, size, pu);
-            pu.getCompilationUnit().visit(uv);
+        PreparationPhase(int phase, boolean serial){
+            this.phase = phase;
+            this.serial = serial;
         }
-        i=1;
-        for (PhasedUnit pu : listOfUnits) {
-            if(sp != null)
-                progressPreparation(3, i++, size, pu);
-            pu.getCompilationUnit().visit(boxingDeclarationVisitor);
+        
+        abstract V makeVisitors();
+        
+        abstract void visit(V visitors, PhasedUnit pu);
+    }
+
+    /**
+     * Runs the given phase on every unit, serially if pool is null or the phase is serial, or on the pool
+     * otherwise. In both cases this only returns once every unit has been visited,
+     * which acts as a barrier between dependent phases.
+     */
+    private <V> void runPreparationPhase(ForkJoinPool pool, java.util.List<PhasedUnit> listOfUnits, 
+            final PreparationPhase<V> phase) {
+        int size = listOfUnits.size();
+        if(pool == null || phase.serial){
+            V visitors = phase.makeVisitors();
+            int i=1;
+            for (PhasedUnit pu : listOfUnits) {
+                if(sp != null)
+                    progressPreparation(phase.phase, i++, size, pu);
+                phase.visit(visitors, pu);
+            }
+            return;
         }
-        i=1;
-        // the others can run at the same time
-        for (PhasedUnit pu : listOfUnits) {
-            if(sp != null)
-                progressPreparation(4, i++, size, pu);
-            CompilationUnit compilationUnit = pu.getCompilationUnit();
-            compilationUnit.visit(mnv);
-            compilationUnit.visit(boxingVisitor);
-            compilationUnit.visit(deferredVisitor);
-            compilationUnit.visit(amv);
-            compilationUnit.visit(dav);
-            compilationUnit.visit(tpCaptureVisitor);
-            compilationUnit.visit(localInterfaceVisitor);
+        if(sp != null){
+            sp.clearLine();
+            sp.log("Preparing "+phase.phase+"/"+PREPARATION_PHASES+" ["+size+" units in parallel]");
         }
-        
-        i=1;
-        for (PhasedUnit pu : listOfUnits) {
-            if(sp != null)
-                progressPreparation(5, i++, size, pu);
-            CompilationUnit compilationUnit = pu.getCompilationUnit();
-            compilationUnit.visit(new WarningSuppressionVisitor<Warning>(Warning.class, pu.getSuppressedWarnings()));
+        final ThreadLocal<V> perThreadVisitors = new ThreadLocal<V>(){
+            @Override
+            protected V initialValue() {
+                return phase.makeVisitors();
+            }
+        };
+        java.util.List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(size);
+        for (final PhasedUnit pu : listOfUnits) {
+            tasks.add(new Callable<Void>(){
+                @Override
+                public Void call() {
+                    phase.visit(perThreadVisitors.get(), pu);
+                    return null;
+                }
+            });
+        }
+        for(Future<Void> result : pool.invokeAll(tasks)){
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                if(cause instanceof Error)
+                    throw (Error)cause;
+                throw new RuntimeException(cause);
+            }
         }
-        
-        collectTreeErrors(true, true);
     }
 
     private void progressPreparation(int phase, int i, int size, PhasedUnit pu) {
         sp.clearLine();
-        sp.log("Preparing "+phase+"/5 ["+(i++)+"/"+size+"] ");
+        sp.log("Preparing "+phase+"/"+PREPARATION_PHASES+" ["+(i++)+"/"+size+"] ");
         sp.log(pu.getPathRelativeToSrcDir());
     }
 
@@ -20,12 +20,8 @@
 
 package com.redhat.ceylon.compiler.java.loader;
 
-import static javax.tools.StandardLocation.CLASS_PATH;
-import static javax.tools.StandardLocation.PLATFORM_CLASS_PATH;
-
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -40,6 +36,7 @@ import com.redhat.ceylon.compiler.java.loader.mirror.JavacMethod;
 import com.redhat.ceylon.compiler.java.loader.model.CompilerModuleManager;
 import com.redhat.ceylon.compiler.java.tools.CeylonLog;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
+import com.redhat.ceylon.compiler.java.util.CompilerMetrics;
 import com.redhat.ceylon.compiler.java.util.Timer;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleSourceMapper;
@@ -98,6 +95,15 @@ public class CeylonModelLoader extends AbstractModelLoader {
     protected final Map<String,Boolean> packageExistence = new HashMap<String,Boolean>();
     private AnnotationLoader annotationLoader;
     private ModuleSourceMapper moduleSourceMapper;
+    private ClassPathIndex classPathIndex;
+    // classes seen and converted when fully loading packages
+    private int scannedClasses;
+    private int convertedClasses;
+    // lookups answered by what we already loaded, or not
+    private int packageCacheHits;
+    private int packageCacheMisses;
+    private int classCacheHits;
+    private int classCacheMisses;
     
     public static AbstractModelLoader instance(Context context) {
         AbstractModelLoader instance = context.get(AbstractModelLoader.class);
@@ -130,6 +136,7 @@ public class CeylonModelLoader extends AbstractModelLoader {
         moduleManager = phasedUnits.getModuleManager();
         modules = ceylonContext.getModules();
         fileManager = context.get(JavaFileManager.class);
+        classPathIndex = new ClassPathIndex(fileManager);
         annotationLoader = new AnnotationLoader(this, typeFactory);
         moduleSourceMapper = phasedUnits.getModuleSourceMapper();
     }
@@ -153,6 +160,8 @@ public class CeylonModelLoader extends AbstractModelLoader {
                 for(String key : clear){
                     packageExistence.remove(key);
                 }
+                // the new module may add classes to any package
+                classPathIndex.clear();
             }
         }
     }
@@ -226,13 +235,17 @@ public class CeylonModelLoader extends AbstractModelLoader {
             String cacheKey = cacheKeyByModule(module, packageName);
             if(loadDeclarations){
                 if(!loadedPackages.add(cacheKey)){
+                    packageCacheHits++;
                     return true;
                 }
             }else{
                 Boolean exists = packageExistence.get(cacheKey);
-                if(exists != null)
+                if(exists != null){
+                    packageCacheHits++;
                     return exists.booleanValue();
+                }
             }
+            packageCacheMisses++;
             PackageSymbol ceylonPkg = packageName.equals("") ? syms().unnamedPackage : reader.enterPackage(names.fromString(packageName));
             if(loadDeclarations){
                 logVerbose("load package "+packageName+" full");
@@ -245,6 +258,11 @@ public class CeylonModelLoader extends AbstractModelLoader {
                     // skip things that are not classes (perhaps package-info?)
                     if(!(m instanceof ClassSymbol))
                         continue;
+                    scannedClasses++;
+                    // skip module and package descriptors, which we can tell by name without
+                    // reading their class file
+                    if(isModuleOrPackageDescriptorName(m.name.toString()))
+                        continue;
                     ClassSymbol enclosingClass = getEnclosing((ClassSymbol) m);
 
                     if(enclosingClass == m
@@ -256,15 +274,14 @@ public class CeylonModelLoader extends AbstractModelLoader {
                         // avoid member classes
                         if(((ClassSymbol)m).getNestingKind() != NestingKind.TOP_LEVEL)
                             continue;
-                        // skip module and package descriptors
-                        if(isModuleOrPackageDescriptorName(m.name.toString()))
-                            continue;
                         ClassMirror classMirror = lookupClassMirror(module, m.getQualifiedName().toString());
                         // Some languages like Scala generate classes like com.foo.package which we would
                         // quote to com.foo.$package, which does not exist, so we'd get a null leading to an NPE
                         // So ATM we just avoid it, presumably we don't support what it does anyways
-                        if(classMirror != null)
+                        if(classMirror != null){
                             convertToDeclaration(module, classMirror, DeclarationType.VALUE);
+                            convertedClasses++;
+                        }
                     }
                 }
                 if(module.getNameAsString().equals(JAVA_BASE_MODULE_NAME)
@@ -278,25 +295,9 @@ public class CeylonModelLoader extends AbstractModelLoader {
                 try {
                     // it is cheaper to verify that we have a class file somewhere than to complete the whole package
                     // just to check for its existence
-                    Iterable<JavaFileObject> list = fileManager.list(PLATFORM_CLASS_PATH,
-                            packageName,
-                            EnumSet.of(JavaFileObject.Kind.CLASS),
-                            false);
-                    if(list.iterator().hasNext()){
-                        packageExistence.put(cacheKey, Boolean.TRUE);
-                        return true;
-                    }
-                    list = fileManager.list(CLASS_PATH,
-                            packageName,
-                            EnumSet.of(JavaFileObject.Kind.CLASS),
-                            false);
-                    if(list.iterator().hasNext()){
-                        packageExistence.put(cacheKey, Boolean.TRUE);
-                        return true;
-                    }else{
-                        packageExistence.put(cacheKey, Boolean.FALSE);
-                        return false;
-                    }
+                    boolean exists = classPathIndex.hasClasses(packageName);
+                    packageExistence.put(cacheKey, exists);
+                    return exists;
                 } catch (IOException e) {
                     return false;
                 }
@@ -304,6 +305,32 @@ public class CeylonModelLoader extends AbstractModelLoader {
         }
     }
 
+    @Override
+    public void printStats() {
+        super.printStats();
+        synchronized(getLock()){
+            logVerbose(classPathIndex.getStats());
+            logVerbose("Full package loading: converted "+convertedClasses+" of "+scannedClasses+" scanned classes");
+        }
+    }
+
+    /**
+     * Adds our lookup statistics to the compilation metrics
+     */
+    public void recordMetrics(CompilerMetrics metrics) {
+        synchronized(getLock()){
+            metrics.count("modelLoaderPackageCacheHits", packageCacheHits);
+            metrics.count("modelLoaderPackageCacheMisses", packageCacheMisses);
+            metrics.count("modelLoaderClassCacheHits", classCacheHits);
+            metrics.count("modelLoaderClassCacheMisses", classCacheMisses);
+            metrics.count("classPathPackagesListed", classPathIndex.getListedPackages());
+            metrics.count("classPathLookups", classPathIndex.getLookups());
+            metrics.count("classPathLookupsWithoutClass", classPathIndex.getNegativeLookups());
+            metrics.count("packageClassesScanned", scannedClasses);
+            metrics.count("packageClassesConverted", convertedClasses);
+        }
+    }
+
     private boolean isAnonymousOrLocal(ClassSymbol m) {
         switch(m.getNestingKind()){
         case ANONYMOUS: return true;
@@ -421,12 +448,13 @@ public class CeylonModelLoader extends AbstractModelLoader {
     private boolean loadClassInternal(String quotedClassName) {
         try {
             Name name = names.fromString(quotedClassName);
-            if(syms().classes.containsKey(name))
+            if(syms().classes.containsKey(name)){
+                classCacheHits++;
                 return true;
-            JavaFileObject fileObject = fileManager.getJavaFileForInput(PLATFORM_CLASS_PATH, quotedClassName, JavaFileObject.Kind.CLASS);
-            if(fileObject == null){
-                fileObject = fileManager.getJavaFileForInput(CLASS_PATH, quotedClassName, JavaFileObject.Kind.CLASS);
             }
+            classCacheMisses++;
+            // this avoids going to the file manager for each of the names we try
+            JavaFileObject fileObject = classPathIndex.getClassFile(quotedClassName);
             if(fileObject != null){
                 reader.enterClass(name, fileObject);
                 return true;
@@ -0,0 +1,134 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.loader;
+
+import static javax.tools.StandardLocation.CLASS_PATH;
+import static javax.tools.StandardLocation.PLATFORM_CLASS_PATH;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+
+/**
+ * Index of the class files found in each package of the platform class path and
+ * the class path, so that the model loader can tell that a class or a package does
+ * not exist without going to the file manager every time.
+ * 
+ * Each package is listed at most once, the first time we need it, after which looking
+ * up a class name in it, such as the many Ceylon-mangled names we try with or without
+ * a trailing "_", is a hash lookup. The index must be {@link #clear() cleared} when the
+ * class path changes.
+ */
+public class ClassPathIndex {
+
+    private static final Set<JavaFileObject.Kind> CLASS_KIND = EnumSet.of(JavaFileObject.Kind.CLASS);
+
+    private final JavaFileManager fileManager;
+    /**
+     * Package name -> class file base name -> class file, with the platform class path
+     * taking precedence, like in {@link JavaFileManager#getJavaFileForInput}.
+     */
+    private final Map<String, Map<String, JavaFileObject>> packages = new HashMap<String, Map<String, JavaFileObject>>();
+    
+    private int listedPackages;
+    private int lookups;
+    private int negativeLookups;
+
+    public ClassPathIndex(JavaFileManager fileManager) {
+        this.fileManager = fileManager;
+    }
+
+    /**
+     * Returns true if there is at least one class file in the given (quoted) package
+     */
+    public boolean hasClasses(String packageName) throws IOException {
+        return !getPackage(packageName).isEmpty();
+    }
+
+    /**
+     * Returns the class file for the given quoted class name, or null if there is none
+     */
+    public JavaFileObject getClassFile(String quotedClassName) throws IOException {
+        lookups++;
+        int lastDot = quotedClassName.lastIndexOf('.');
+        String packageName = lastDot == -1 ? "" : quotedClassName.substring(0, lastDot);
+        String baseName = quotedClassName.substring(lastDot + 1);
+        JavaFileObject file = getPackage(packageName).get(baseName);
+        if(file == null)
+            negativeLookups++;
+        return file;
+    }
+
+    public void clear() {
+        packages.clear();
+    }
+
+    private Map<String, JavaFileObject> getPackage(String packageName) throws IOException {
+        Map<String, JavaFileObject> classes = packages.get(packageName);
+        if(classes == null){
+            classes = Collections.emptyMap();
+            classes = list(PLATFORM_CLASS_PATH, packageName, classes);
+            classes = list(CLASS_PATH, packageName, classes);
+            packages.put(packageName, classes);
+            listedPackages++;
+        }
+        return classes;
+    }
+
+    private Map<String, JavaFileObject> list(Location location, String packageName, Map<String, JavaFileObject> classes) throws IOException {
+        for(JavaFileObject file : fileManager.list(location, packageName, CLASS_KIND, false)){
+            String binaryName = fileManager.inferBinaryName(location, file);
+            if(binaryName == null)
+                continue;
+            String baseName = binaryName.substring(binaryName.lastIndexOf('.') + 1);
+            if(classes.isEmpty())
+                classes = new HashMap<String, JavaFileObject>();
+            // first one wins
+            if(!classes.containsKey(baseName))
+                classes.put(baseName, file);
+        }
+        return classes;
+    }
+
+    public int getListedPackages() {
+        return listedPackages;
+    }
+
+    public int getLookups() {
+        return lookups;
+    }
+
+    public int getNegativeLookups() {
+        return negativeLookups;
+    }
+
+    public String getStats() {
+        return "Class path index: listed "+listedPackages+" packages, answered "+lookups
+                +" class lookups of which "+negativeLookups+" without a class file";
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javax.tools.JavaFileManager;
+
+import com.redhat.ceylon.cmr.api.ArtifactContext;
+import com.redhat.ceylon.common.BooleanUtil;
+import com.redhat.ceylon.common.Versions;
+import com.redhat.ceylon.compiler.java.codegen.CodegenUtil;
+import com.redhat.ceylon.compiler.java.codegen.ConstantDefaultArguments;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.model.cmr.JDKUtils;
+import com.redhat.ceylon.model.typechecker.model.Class;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Function;
+import com.redhat.ceylon.model.typechecker.model.Functional;
+import com.redhat.ceylon.model.typechecker.model.FunctionOrValue;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.ModuleImport;
+import com.redhat.ceylon.model.typechecker.model.Parameter;
+import com.redhat.ceylon.model.typechecker.model.ParameterList;
+import com.redhat.ceylon.model.typechecker.model.Type;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
+import com.sun.tools.javac.main.OptionName;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Options;
+
+/**
+ * Index used by incremental compilation (the <tt>-incremental</tt> option)
+ * to decide which units can skip code generation because the classes already
+ * present in the previous module car are still valid.
+ *
+ * The index is stored in the car itself, next to <tt>META-INF/mapping.txt</tt>
+ * which already tells us which class files each source file produced. It records
+ * the SHA-1 of every source file whose classes are in the car, and a signature hash
+ * of every declaration visible from other units (toplevels and their shared members,
+ * with their types, boxing and parameters) along with the module imports and the hash
+ * of their artifacts, the compiler version and the options which affect code generation. A unit is only skipped if its source is unchanged and the signature
+ * of the whole compilation is unchanged, so a change to a method body only regenerates
+ * that unit, while any API change regenerates everything, as before.
+ */
+public class IncrementalBuildIndex {
+
+    public static final String INDEX_FILE = "META-INF/incremental.properties";
+    private static final String MAPPING_FILE = "META-INF/mapping.txt";
+    private static final String SIGNATURE_KEY = "signature";
+    private static final String SOURCE_PREFIX = "source.";
+
+    private static final Context.Key<IncrementalBuildIndex> incrementalBuildIndexKey = new Context.Key<IncrementalBuildIndex>();
+
+    public static IncrementalBuildIndex instance(Context context) {
+        IncrementalBuildIndex instance = context.get(incrementalBuildIndexKey);
+        if (instance == null){
+            instance = new IncrementalBuildIndex(context);
+            context.put(incrementalBuildIndexKey, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * What we know about a module from its previous car
+     */
+    private static class PreviousBuild {
+        final Properties index;
+        final Set<String> sourcesWithClasses = new HashSet<String>();
+
+        PreviousBuild(Properties index, Properties mapping){
+            this.index = index;
+            for(String className : mapping.stringPropertyNames())
+                sourcesWithClasses.add(mapping.getProperty(className));
+        }
+    }
+
+    private final boolean enabled;
+    private final boolean verbose;
+    private final Context context;
+    private final Log log;
+    private final ConstantDefaultArguments constantDefaultArguments;
+    private String signature;
+    private final Map<String,String> sourceHashes = new HashMap<String,String>();
+    private final Map<Module,PreviousBuild> previousBuilds = new HashMap<Module,PreviousBuild>();
+    private int skippedUnits;
+    private int generatedUnits;
+
+    private IncrementalBuildIndex(Context context) {
+        Options options = Options.instance(context);
+        this.context = context;
+        this.enabled = options.get(OptionName.CEYLONINCREMENTAL) != null;
+        this.verbose = options.get(OptionName.VERBOSE) != null;
+        this.log = Log.instance(context);
+        this.constantDefaultArguments = ConstantDefaultArguments.instance(context);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Computes the source hashes and the signature of the given (type-checked) units.
+     * Must be called before {@link #canSkip(PhasedUnit)}.
+     */
+    public void computeSignature(List<PhasedUnit> listOfUnits) {
+        if(!enabled)
+            return;
+        StringBuilder sb = new StringBuilder();
+        sb.append(Versions.CEYLON_VERSION_NUMBER).append('\n');
+        appendCodegenOptions(sb);
+        Set<Module> modules = new HashSet<Module>();
+        for (PhasedUnit pu : listOfUnits) {
+            String hash = hashSource(pu);
+            if(hash != null)
+                sourceHashes.put(pu.getPathRelativeToSrcDir(), hash);
+            Module module = pu.getPackage().getModule();
+            if(module != null && modules.add(module)){
+                sb.append("module ").append(module.getNameAsString()).append('/').append(module.getVersion()).append('\n');
+                for(ModuleImport imp : module.getImports()){
+                    sb.append(" import ").append(imp.getModule().getNameAsString())
+                        .append('/').append(imp.getModule().getVersion())
+                        .append(imp.isExport() ? " shared" : "")
+                        .append(imp.isOptional() ? " optional" : "")
+                        // the same version can be rebuilt with a different API
+                        .append(' ').append(hashArtifact(imp.getModule()))
+                        .append('\n');
+                }
+            }
+            sb.append("unit ").append(pu.getPathRelativeToSrcDir()).append('\n');
+            for(Declaration decl : pu.getUnit().getDeclarations()){
+                // toplevels are visible from the other units of their package even if they are not shared
+                if(decl.isToplevel())
+                    appendSignature(sb, decl);
+            }
+        }
+        signature = sha1(sb.toString());
+    }
+
+    /**
+     * Appends the options which change the generated code: the optimisations, the target
+     * and every hidden <tt>-XD</tt> option, which are the only ones stored without a leading dash.
+     */
+    private void appendCodegenOptions(StringBuilder sb) {
+        Options options = Options.instance(context);
+        for(OptionName name : new OptionName[]{OptionName.CEYLONDISABLEOPT, OptionName.CEYLONDISABLEOPT_CUSTOM, 
+                OptionName.CEYLONENABLEOPT, OptionName.SOURCE, OptionName.TARGET}){
+            String value = options.get(name);
+            if(value != null)
+                sb.append("option ").append(name.optionName).append('=').append(value).append('\n');
+        }
+        for(String key : new TreeSet<String>(options.keySet())){
+            if(!key.startsWith("-"))
+                sb.append("option ").append(key).append('=').append(options.get(key)).append('\n');
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of the artifact of the given imported module, or a placeholder if
+     * it has none (JDK modules) or we cannot find it.
+     */
+    private String hashArtifact(Module module) {
+        String name = module.getNameAsString();
+        if(JDKUtils.isJDKModule(name) || JDKUtils.isOracleJDKModule(name))
+            return "jdk";
+        try{
+            CeyloncFileManager fileManager = (CeyloncFileManager) context.get(JavaFileManager.class);
+            ArtifactContext artifactContext = new ArtifactContext(name, module.getVersion(), ArtifactContext.CAR, ArtifactContext.JAR);
+            File artifact = fileManager.getRepositoryManager().getArtifact(artifactContext);
+            if(artifact != null){
+                String hash = hashFile(artifact);
+                if(hash != null)
+                    return hash;
+            }
+        }catch(Exception x){
+            if(verbose)
+                Log.printLines(log.noticeWriter, "[Incremental build index cannot hash module "+name+": "+x+"]");
+        }
+        return "?";
+    }
+
+    private void appendSignature(StringBuilder sb, Declaration decl) {
+        sb.append(decl.getClass().getSimpleName()).append(' ').append(decl.getQualifiedNameString());
+        if(decl.isShared()) sb.append(" shared");
+        if(decl.isFormal()) sb.append(" formal");
+        if(decl.isDefault()) sb.append(" default");
+        if(decl.isActual()) sb.append(" actual");
+        if(decl.isNative()) sb.append(" native");
+        if(decl.isDeprecated()) sb.append(" deprecated");
+        if(decl instanceof TypedDeclaration){
+            TypedDeclaration typedDecl = (TypedDeclaration) decl;
+            appendType(sb.append(" : "), typedDecl.getType());
+            if(typedDecl.isVariable()) sb.append(" variable");
+            if(BooleanUtil.isTrue(typedDecl.getUnboxed())) sb.append(" unboxed");
+            if(typedDecl.getTypeErased()) sb.append(" erased");
+        }
+        if(decl instanceof Functional){
+            List<ParameterList> parameterLists = ((Functional) decl).getParameterLists();
+            if(parameterLists != null){
+                for(ParameterList parameterList : parameterLists){
+                    sb.append(" (");
+                    for(Parameter param : parameterList.getParameters()){
+                        sb.append(param.getName());
+                        if(param.isDefaulted()) sb.append('=');
+                        // constant default arguments may be inlined in other units
+                        String constant = constantDefaultArguments.describe(param);
+                        if(constant != null) sb.append(constant);
+                        if(param.isSequenced()) sb.append('*');
+                        FunctionOrValue model = param.getModel();
+                        if(model != null){
+                            appendType(sb.append(':'), model.getType());
+                            if(BooleanUtil.isTrue(model.getUnboxed())) sb.append(" unboxed");
+                        }
+                        sb.append(',');
+                    }
+                    sb.append(')');
+                }
+            }
+        }
+        if(decl instanceof Function
+                && ((Function) decl).getAnnotationConstructor() != null){
+            // annotation constructor invocations are expanded where the annotation is used
+            sb.append(" => ").append(((Function) decl).getAnnotationConstructor());
+        }
+        if(decl instanceof TypeDeclaration){
+            TypeDeclaration typeDecl = (TypeDeclaration) decl;
+            if(decl instanceof Class)
+                appendType(sb.append(" extends "), typeDecl.getExtendedType());
+            appendTypes(sb.append(" satisfies "), typeDecl.getSatisfiedTypes());
+            appendTypes(sb.append(" of "), typeDecl.getCaseTypes());
+            sb.append(" <");
+            for(TypeParameter tp : typeDecl.getTypeParameters()){
+                sb.append(tp.getName()).append(':');
+                appendTypes(sb, tp.getSatisfiedTypes());
+                sb.append(',');
+            }
+            sb.append('>');
+            // satisfying classes in other units hold an instance of the companion class
+            if(CodegenUtil.isCompanionClassNeeded(typeDecl)) sb.append(" companion");
+        }
+        sb.append('\n');
+        if(decl instanceof TypeDeclaration){
+            // non-shared members can only be used from within the unit that declares them
+            for(Declaration member : ((TypeDeclaration) decl).getMembers()){
+                if(member.isShared())
+                    appendSignature(sb, member);
+            }
+        }
+    }
+
+    private void appendTypes(StringBuilder sb, Collection<Type> types) {
+        if(types == null)
+            return;
+        for(Type type : types){
+            appendType(sb, type);
+            sb.append('&');
+        }
+    }
+
+    private void appendType(StringBuilder sb, Type type) {
+        sb.append(type != null ? type.asQualifiedString() : "?");
+    }
+
+    /**
+     * Returns true if the given unit is unchanged since the previous build, and its
+     * classes from the previous car can be reused.
+     */
+    public boolean canSkip(PhasedUnit pu) {
+        boolean canSkip = enabled && signature != null && isUpToDate(pu);
+        if(canSkip)
+            skippedUnits++;
+        else
+            generatedUnits++;
+        return canSkip;
+    }
+
+    private boolean isUpToDate(PhasedUnit pu) {
+        String path = pu.getPathRelativeToSrcDir();
+        String hash = sourceHashes.get(path);
+        Module module = pu.getPackage().getModule();
+        if(hash == null || module == null)
+            return false;
+        PreviousBuild previous = getPreviousBuild(module);
+        return previous != null
+                && signature.equals(previous.index.getProperty(SIGNATURE_KEY))
+                && hash.equals(previous.index.getProperty(SOURCE_PREFIX + path))
+                && previous.sourcesWithClasses.contains(path);
+    }
+
+    private PreviousBuild getPreviousBuild(Module module) {
+        if(previousBuilds.containsKey(module))
+            return previousBuilds.get(module);
+        PreviousBuild previous = null;
+        try{
+            CeyloncFileManager fileManager = (CeyloncFileManager) context.get(JavaFileManager.class);
+            ArtifactContext carContext = new ArtifactContext(module.getNameAsString(), module.getVersion(), ArtifactContext.CAR);
+            File car = fileManager.getOutputRepositoryManager().getArtifact(carContext);
+            if(car != null){
+                JarFile jarFile = new JarFile(car);
+                try{
+                    Properties index = readProperties(jarFile, INDEX_FILE);
+                    Properties mapping = readProperties(jarFile, MAPPING_FILE);
+                    if(index != null && mapping != null)
+                        previous = new PreviousBuild(index, mapping);
+                }finally{
+                    jarFile.close();
+                }
+            }
+        }catch(Exception x){
+            // no previous build we can trust, so we will not skip anything
+            if(verbose)
+                Log.printLines(log.noticeWriter, "[Incremental build index unavailable for module "+module.getNameAsString()+": "+x+"]");
+        }
+        previousBuilds.put(module, previous);
+        return previous;
+    }
+
+    private static Properties readProperties(JarFile jarFile, String name) throws IOException {
+        JarEntry entry = jarFile.getJarEntry(name);
+        if(entry == null)
+            return null;
+        InputStream inputStream = jarFile.getInputStream(entry);
+        try {
+            Properties properties = new Properties();
+            properties.load(inputStream);
+            return properties;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Writes the index for the given module: the sources we just generated classes for, and
+     * the sources whose classes we kept from the previous car, if the signature did not change.
+     */
+    public void write(OutputStream out, Module module, Collection<String> generatedSources) throws IOException {
+        Properties index = new Properties();
+        index.setProperty(SIGNATURE_KEY, signature);
+        PreviousBuild previous = getPreviousBuild(module);
+        if(previous != null
+                && signature.equals(previous.index.getProperty(SIGNATURE_KEY))){
+            for(String key : previous.index.stringPropertyNames()){
+                if(key.startsWith(SOURCE_PREFIX))
+                    index.setProperty(key, previous.index.getProperty(key));
+            }
+        }
+        for(String source : generatedSources){
+            String hash = sourceHashes.get(source);
+            if(hash != null)
+                index.setProperty(SOURCE_PREFIX + source, hash);
+            else
+                index.remove(SOURCE_PREFIX + source);
+        }
+        index.store(out, "");
+    }
+
+    /**
+     * Returns true if we can write an index for the current compilation
+     */
+    public boolean canWrite() {
+        return enabled && signature != null;
+    }
+
+    public void printStats() {
+        if(enabled && verbose)
+            Log.printLines(log.noticeWriter, "[Incremental compilation: reused classes of "+skippedUnits
+                    +" units, generated "+generatedUnits+" units]");
+    }
+
+    private String hashSource(PhasedUnit pu) {
+        try{
+            return hash(pu.getUnitFile().getInputStream());
+        }catch(IOException x){
+            return null;
+        }
+    }
+
+    private static String hashFile(File file) {
+        try{
+            return hash(new FileInputStream(file));
+        }catch(IOException x){
+            return null;
+        }
+    }
+
+    private static String hash(InputStream is) throws IOException {
+        try{
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = is.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+            return toHex(digest.digest());
+        }catch(NoSuchAlgorithmException x){
+            return null;
+        }finally{
+            is.close();
+        }
+    }
+
+    private static String sha1(String text) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes){
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
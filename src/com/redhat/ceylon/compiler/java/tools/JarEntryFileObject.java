@@ -20,6 +20,7 @@
 
 package com.redhat.ceylon.compiler.java.tools;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,6 +28,10 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 
@@ -39,6 +44,8 @@ public class JarEntryFileObject implements JavaFileObject {
     private JarOutputStream jarFile;
     private String fileName;
     private String jarFileName;
+    private ExecutorService writer;
+    private Queue<Future<Void>> pendingWrites;
 
     public JarEntryFileObject(String jarFileName, JarOutputStream jarFile, String fileName) {
         super();
@@ -47,12 +54,43 @@ public class JarEntryFileObject implements JavaFileObject {
         this.fileName = fileName;
     }
 
+    /**
+     * Buffers the entry and leaves it to the given writer, which must be the only
+     * one to write to the jar, to compress it into the jar. The pending write is added
+     * to the given queue.
+     */
+    public JarEntryFileObject(String jarFileName, JarOutputStream jarFile, String fileName, 
+            ExecutorService writer, Queue<Future<Void>> pendingWrites) {
+        this(jarFileName, jarFile, fileName);
+        this.writer = writer;
+        this.pendingWrites = pendingWrites;
+    }
+
     /*
      * This is the only method used in the class, the rest is just there to satisfy
      * the type system.
      */
     @Override
     public OutputStream openOutputStream() throws IOException {
+        if (writer != null) {
+            return new ByteArrayOutputStream(){
+                private boolean closed;
+                @Override
+                public void close() throws IOException {
+                    if (closed)
+                        return;
+                    closed = true;
+                    pendingWrites.add(writer.submit(new Callable<Void>(){
+                        @Override
+                        public Void call() throws IOException {
+                            jarFile.putNextEntry(new ZipEntry(fileName));
+                            jarFile.write(buf, 0, count);
+                            return null;
+                        }
+                    }));
+                }
+            };
+        }
         // we start to write at a new entry
         jarFile.putNextEntry(new ZipEntry(fileName));
         return new FilterOutputStream(jarFile){
@@ -29,6 +29,12 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -47,6 +53,7 @@ import com.redhat.ceylon.common.Constants;
 import com.redhat.ceylon.common.FileUtil;
 import com.redhat.ceylon.common.log.Logger;
 import com.redhat.ceylon.compiler.java.tools.JarEntryManifestFileObject.OsgiManifest;
+import com.redhat.ceylon.compiler.java.util.CompilerMetrics;
 import com.redhat.ceylon.model.typechecker.model.Module;
 import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.main.OptionName;
@@ -106,6 +113,9 @@ public class JarOutputRepositoryManager {
         private static final String MAPPING_FILE = META_INF+"/mapping.txt";
         private File originalJarFile;
         private File outputJarFile;
+        // the entries we write when we have an original jar to patch with them
+        private File newEntriesJarFile;
+        private JarUtils.JarEntryFilter jarFilter;
         private JarOutputStream jarOutputStream;
         final private Set<String> modifiedSourceFiles = new HashSet<String>();
         final private Set<String> modifiedResourceFilesRel = new HashSet<String>();
@@ -125,6 +135,12 @@ public class JarOutputRepositoryManager {
         private final String resourceRootPath;
         private boolean writeMavenManifest;
         private TaskListener taskListener;
+        private IncrementalBuildIndex incrementalBuildIndex;
+        private CompilerMetrics metrics;
+        // with -parallel, class entries are compressed into the jar by this writer
+        // while the compiler generates the next classes
+        private ExecutorService writer;
+        final private ConcurrentLinkedQueue<Future<Void>> pendingWrites = new ConcurrentLinkedQueue<Future<Void>>();
 
         public ProgressiveJar(RepositoryManager repoManager, Module module, Log log, Options options, CeyloncFileManager ceyloncFileManager, TaskListener taskListener) throws IOException{
             this.options = options;
@@ -160,10 +176,63 @@ public class JarOutputRepositoryManager {
             }
             this.resourceRootPath = rrp + rootName + "/";
             this.taskListener = taskListener;
+            this.incrementalBuildIndex = IncrementalBuildIndex.instance(ceyloncFileManager.getContext());
+            this.metrics = CompilerMetrics.instance(ceyloncFileManager.getContext());
             
             this.originalJarFile = repoManager.getArtifact(carContext);
             this.outputJarFile = File.createTempFile("ceylon-compiler-", ".car");
-            this.jarOutputStream = new JarOutputStream(new FileOutputStream(outputJarFile));
+            if (originalJarFile != null) {
+                // write our entries aside, and patch the original jar with them when
+                // the jar is finished, rather than recompress every entry we keep
+                this.newEntriesJarFile = File.createTempFile("ceylon-compiler-", ".car");
+                this.jarOutputStream = new JarOutputStream(new FileOutputStream(newEntriesJarFile)) {
+                    private boolean closed;
+                    @Override
+                    public void close() throws IOException {
+                        if (closed)
+                            return;
+                        closed = true;
+                        super.close();
+                        patchOriginalJar();
+                    }
+                };
+            } else {
+                this.jarOutputStream = new JarOutputStream(new FileOutputStream(outputJarFile));
+            }
+            if (options.isSet(OptionName.CEYLONPARALLEL)) {
+                final String threadName = "ceylon-car-writer-" + module.getNameAsString();
+                this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+
+        /**
+         * Waits for the class entries being written by the writer, so that we can write to the jar
+         */
+        private void awaitPendingWrites() throws IOException {
+            Future<Void> pendingWrite;
+            while ((pendingWrite = pendingWrites.poll()) != null) {
+                try {
+                    pendingWrite.get();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while writing " + outputJarFile, e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException)
+                        throw (IOException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new IOException(cause);
+                }
+            }
         }
 
         private Properties getPreviousMapping() throws IOException {
@@ -204,6 +273,7 @@ public class JarOutputRepositoryManager {
 
         public void close() throws IOException {
             try {
+                awaitPendingWrites();
                 Set<String> copiedSourceFiles = srcCreator.copy(modifiedSourceFiles);
                 resourceCreator.copy(modifiedResourceFilesFull);
     
@@ -216,11 +286,16 @@ public class JarOutputRepositoryManager {
                 }
     
                 Properties previousMapping = getPreviousMapping();
-                writeMappingJarEntry(previousMapping, getJarFilter(previousMapping, copiedSourceFiles));
+                jarFilter = getJarFilter(previousMapping, copiedSourceFiles);
+                writeMappingJarEntry(previousMapping, jarFilter);
+                if (incrementalBuildIndex.canWrite()) {
+                    writeIncrementalIndexJarEntry();
+                }
                 
+                // when patching, the original entries are copied when our jar stream is closed
                 JarUtils.finishUpdatingJar(
-                        originalJarFile, outputJarFile, carContext, jarOutputStream,
-                        getJarFilter(previousMapping, copiedSourceFiles),
+                        newEntriesJarFile != null ? null : originalJarFile, outputJarFile, carContext, jarOutputStream,
+                        jarFilter,
                         repoManager, options.get(OptionName.VERBOSE) != null, cmrLog, folders, options.isSet(OptionName.CEYLONPACK200));
                 
                 String info;
@@ -228,12 +303,33 @@ public class JarOutputRepositoryManager {
                     info = module.getNameAsString();
                 else
                     info = module.getNameAsString() + "/" + module.getVersion();
+                metrics.archiveWritten(info, outputJarFile.length());
                 cmrLog.info("Created module " + info);
                 if(taskListener instanceof CeylonTaskListener){
                     ((CeylonTaskListener) taskListener).moduleCompiled(module.getNameAsString(), module.getVersion());
                 }
             } finally {
+                if (writer != null)
+                    writer.shutdownNow();
                 FileUtil.deleteQuietly(outputJarFile);
+                if (newEntriesJarFile != null)
+                    FileUtil.deleteQuietly(newEntriesJarFile);
+            }
+        }
+
+        /**
+         * Writes the output jar from the entries we wrote and the original entries we keep
+         */
+        private void patchOriginalJar() throws IOException {
+            JarPatcher patcher = new JarPatcher();
+            patcher.patch(newEntriesJarFile, originalJarFile, jarFilter, folders, outputJarFile);
+            if (options.get(OptionName.VERBOSE) != null) {
+                if (patcher.isRecompressed())
+                    cmrLog.info("[Could not patch " + originalJarFile.getName() + ", recompressed all its entries]");
+                else
+                    cmrLog.info("[Patched " + originalJarFile.getName() + ": wrote " + patcher.getBytesWritten()
+                            + " bytes, copied " + patcher.getBytesCopied() + " bytes of " + patcher.getEntriesCopied()
+                            + " unchanged entries]");
             }
         }
 
@@ -251,6 +347,8 @@ public class JarOutputRepositoryManager {
                     } else {
                         return modifiedResourceFilesRel.contains(entryFullName)
                                 || entryFullName.equals(MAPPING_FILE)
+                                // never keep an old index, it would not match the classes we wrote
+                                || entryFullName.equals(IncrementalBuildIndex.INDEX_FILE)
                                 || (writeOsgiManifest && OsgiManifest.isManifestFileName(entryFullName))
                                 || (writeMavenManifest && MavenPomUtil.isMavenDescriptor(entryFullName, module));
                     }
@@ -309,7 +407,30 @@ public class JarOutputRepositoryManager {
             }
         }
 
-        public JavaFileObject getJavaFileObject(String fileName, File sourceFile) {
+        private void writeIncrementalIndexJarEntry() {
+            Set<String> generatedSources = new HashSet<String>();
+            for (Object sourcePath : writtenClassesMapping.values()) {
+                generatedSources.add((String)sourcePath);
+            }
+            try {
+                folders.add(META_INF+"/");
+                jarOutputStream.putNextEntry(new ZipEntry(IncrementalBuildIndex.INDEX_FILE));
+                incrementalBuildIndex.write(jarOutputStream, module, generatedSources);
+            }
+            catch(IOException e) {
+                // not fatal: the next build will just not be able to reuse any class
+                cmrLog.warning("Failed to write the incremental build index of module " 
+                        + module.getNameAsString() + ": " + e.getMessage());
+            }
+            finally {
+                try {
+                    jarOutputStream.closeEntry();
+                } catch (IOException e) {
+                }
+            }
+        }
+
+        public JavaFileObject getJavaFileObject(String fileName, File sourceFile) throws IOException {
             String entryName = fileName.replace(File.separatorChar, '/');
             
             if (!resourceRootPath.isEmpty() && entryName.startsWith(resourceRootPath)) {
@@ -325,9 +446,15 @@ public class JarOutputRepositoryManager {
 
             if (sourceFile != null) {
                 modifiedSourceFiles.add(sourceFile.getPath());
+                metrics.count("classFiles", 1);
                 // record the class file we produce so that we don't save it from the original jar
             	addMappingEntry(entryName, JarUtils.toPlatformIndependentPath(srcCreator.getPaths(), sourceFile.getPath()));
+                if (writer != null)
+                    return new JarEntryFileObject(outputJarFile.getPath(), jarOutputStream, entryName, writer, pendingWrites);
             } else {
+                // resources are written directly, so the writer must be done with the jar
+                awaitPendingWrites();
+                metrics.count("resourceFiles", 1);
                 modifiedResourceFilesRel.add(entryName);
                 modifiedResourceFilesFull.add(FileUtil.applyPath(resourceCreator.getPaths(), fileName).getPath());
                 if (writeOsgiManifest && OsgiManifest.isManifestFileName(entryName) && !module.isDefault()) {
@@ -0,0 +1,317 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import com.redhat.ceylon.cmr.util.JarUtils;
+
+/**
+ * Builds an updated jar from the jar of the entries we just wrote and the previous
+ * jar, without inflating and deflating again the previous entries we keep: their
+ * local headers and compressed data are copied byte for byte, and only the central
+ * directory is written anew.
+ * 
+ * Zip64 archives cannot be patched that way, in which case every entry is inflated
+ * and deflated again.
+ */
+public class JarPatcher {
+
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+
+    /**
+     * A central directory record, and the span of its local header and data
+     */
+    private static class Record {
+        final String name;
+        final byte[] cen;
+        final long offset;
+        long length;
+
+        Record(String name, byte[] cen, long offset) {
+            this.name = name;
+            this.cen = cen;
+            this.offset = offset;
+        }
+    }
+
+    private long bytesWritten;
+    private long bytesCopied;
+    private int entriesCopied;
+    private boolean recompressed;
+
+    /**
+     * Writes to output the entries of newEntries followed by the entries of previous
+     * which are not avoided by the filter, nor folders we already wrote, nor written again.
+     */
+    public void patch(File newEntries, File previous, JarUtils.JarEntryFilter filter, Set<String> folders, File output) throws IOException {
+        try {
+            copyRaw(newEntries, previous, filter, folders, output);
+        } catch (ZipException x) {
+            bytesWritten = bytesCopied = entriesCopied = 0;
+            recompressed = true;
+            recompress(newEntries, previous, filter, folders, output);
+        }
+    }
+
+    private void copyRaw(File newEntries, File previous, JarUtils.JarEntryFilter filter, Set<String> folders, File output) throws IOException {
+        RandomAccessFile newJar = new RandomAccessFile(newEntries, "r");
+        try {
+            RandomAccessFile previousJar = new RandomAccessFile(previous, "r");
+            try {
+                List<Record> newRecords = readCentralDirectory(newJar);
+                List<Record> previousRecords = readCentralDirectory(previousJar);
+                Set<String> written = new HashSet<String>();
+                for (Record record : newRecords) {
+                    written.add(record.name);
+                }
+                List<Record> kept = new ArrayList<Record>(previousRecords.size());
+                for (Record record : previousRecords) {
+                    if (written.contains(record.name)
+                            || filter.avoid(record.name)
+                            || (record.name.endsWith("/") && folders.contains(record.name)))
+                        continue;
+                    kept.add(record);
+                }
+                if (newRecords.size() + kept.size() > 0xFFFF)
+                    throw new ZipException("too many entries for a non-zip64 archive");
+
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+                try {
+                    ByteArrayOutputStream cen = new ByteArrayOutputStream();
+                    long offset = 0;
+                    for (Record record : newRecords) {
+                        offset = copy(newJar, record, out, cen, offset);
+                        bytesWritten += record.length;
+                    }
+                    for (Record record : kept) {
+                        offset = copy(previousJar, record, out, cen, offset);
+                        bytesCopied += record.length;
+                        entriesCopied++;
+                    }
+                    if (offset > 0xFFFFFFFFL)
+                        throw new ZipException("archive too large for a non-zip64 archive");
+                    cen.writeTo(out);
+                    writeEnd(out, newRecords.size() + kept.size(), cen.size(), offset);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                previousJar.close();
+            }
+        } finally {
+            newJar.close();
+        }
+    }
+
+    private void recompress(File newEntries, File previous, JarUtils.JarEntryFilter filter, Set<String> folders, File output) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(output));
+        try {
+            Set<String> written = new HashSet<String>();
+            recompress(newEntries, null, folders, written, out);
+            recompress(previous, filter, folders, written, out);
+        } finally {
+            out.close();
+        }
+        bytesWritten = output.length();
+    }
+
+    private void recompress(File jar, JarUtils.JarEntryFilter filter, Set<String> folders, Set<String> written, JarOutputStream out) throws IOException {
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (filter != null
+                        && (written.contains(name)
+                            || filter.avoid(name)
+                            || (entry.isDirectory() && folders.contains(name))))
+                    continue;
+                written.add(name);
+                ZipEntry copiedEntry = new ZipEntry(name);
+                copiedEntry.setTime(entry.getTime());
+                copiedEntry.setComment(entry.getComment());
+                out.putNextEntry(copiedEntry);
+                InputStream in = zipFile.getInputStream(entry);
+                try {
+                    JarUtils.copy(in, out);
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    public boolean isRecompressed() {
+        return recompressed;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    public int getEntriesCopied() {
+        return entriesCopied;
+    }
+
+    private static long copy(RandomAccessFile jar, Record record, OutputStream out, ByteArrayOutputStream cen, long offset) throws IOException {
+        byte[] buffer = new byte[8192];
+        jar.seek(record.offset);
+        long remaining = record.length;
+        while (remaining > 0) {
+            int read = jar.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1)
+                throw new ZipException("truncated zip entry: " + record.name);
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+        // the central directory record stays the same, except for where its local header now is
+        byte[] patched = record.cen.clone();
+        putInt(patched, 42, offset);
+        cen.write(patched);
+        return offset + record.length;
+    }
+
+    private static List<Record> readCentralDirectory(RandomAccessFile jar) throws IOException {
+        long length = jar.length();
+        int tailLength = (int) Math.min(length, ENDHDR + 0xFFFF);
+        byte[] tail = new byte[tailLength];
+        jar.seek(length - tailLength);
+        jar.readFully(tail);
+        int end = tailLength - ENDHDR;
+        // the end record is followed by a variable length comment
+        while (end >= 0 
+                && (getInt(tail, end) != ENDSIG 
+                    || end + ENDHDR + getShort(tail, end + 20) != tailLength)) {
+            end--;
+        }
+        if (end < 0)
+            throw new ZipException("cannot find the zip central directory");
+        int count = getShort(tail, end + 10);
+        long cenSize = getInt(tail, end + 12) & 0xFFFFFFFFL;
+        long cenOffset = getInt(tail, end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL)
+            throw new ZipException("zip64 archives are not supported");
+
+        byte[] cen = new byte[(int) cenSize];
+        jar.seek(cenOffset);
+        jar.readFully(cen);
+        List<Record> records = new ArrayList<Record>(count);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENHDR > cen.length || getInt(cen, pos) != CENSIG)
+                throw new ZipException("invalid zip central directory");
+            int nameLength = getShort(cen, pos + 28);
+            int recordLength = CENHDR + nameLength + getShort(cen, pos + 30) + getShort(cen, pos + 32);
+            String name = new String(cen, pos + CENHDR, nameLength, "UTF-8");
+            byte[] record = new byte[recordLength];
+            System.arraycopy(cen, pos, record, 0, recordLength);
+            records.add(new Record(name, record, getInt(cen, pos + 42) & 0xFFFFFFFFL));
+            pos += recordLength;
+        }
+        // each entry spans until the next one, or the central directory, which also
+        // covers the data descriptors we cannot tell the size of from the central directory
+        List<Record> byOffset = new ArrayList<Record>(records);
+        Collections.sort(byOffset, new Comparator<Record>() {
+            @Override
+            public int compare(Record a, Record b) {
+                return Long.compare(a.offset, b.offset);
+            }
+        });
+        for (int i = 0; i < byOffset.size(); i++) {
+            Record record = byOffset.get(i);
+            long next = i + 1 < byOffset.size() ? byOffset.get(i + 1).offset : cenOffset;
+            record.length = next - record.offset;
+            jar.seek(record.offset);
+            if (record.length < 30 || readIntLittleEndian(jar) != LOCSIG)
+                throw new ZipException("invalid zip entry: " + record.name);
+        }
+        return records;
+    }
+
+    private static void writeEnd(OutputStream out, int count, long cenSize, long cenOffset) throws IOException {
+        byte[] end = new byte[ENDHDR];
+        putInt(end, 0, ENDSIG);
+        putShort(end, 8, count);
+        putShort(end, 10, count);
+        putInt(end, 12, cenSize);
+        putInt(end, 16, cenOffset);
+        // no comment
+        out.write(end);
+    }
+
+    private static int readIntLittleEndian(RandomAccessFile jar) throws IOException {
+        byte[] bytes = new byte[4];
+        jar.readFully(bytes);
+        return getInt(bytes, 0);
+    }
+
+    private static int getShort(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8);
+    }
+
+    private static int getInt(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8)
+                | ((buf[pos + 2] & 0xFF) << 16) | ((buf[pos + 3] & 0xFF) << 24);
+    }
+
+    private static void putShort(byte[] buf, int pos, int value) {
+        buf[pos] = (byte) value;
+        buf[pos + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] buf, int pos, long value) {
+        buf[pos] = (byte) value;
+        buf[pos + 1] = (byte) (value >>> 8);
+        buf[pos + 2] = (byte) (value >>> 16);
+        buf[pos + 3] = (byte) (value >>> 24);
+    }
+}
@@ -68,6 +68,7 @@ import com.redhat.ceylon.compiler.java.codegen.CeylonFileObject;
 import com.redhat.ceylon.compiler.java.codegen.CeylonTransformer;
 import com.redhat.ceylon.compiler.java.loader.CeylonEnter;
 import com.redhat.ceylon.compiler.java.loader.CeylonModelLoader;
+import com.redhat.ceylon.compiler.java.util.CompilerMetrics;
 import com.redhat.ceylon.compiler.java.util.Timer;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleSourceMapper;
 import com.redhat.ceylon.compiler.typechecker.analyzer.Warning;
@@ -143,6 +144,7 @@ public class LanguageCompiler extends JavaCompiler {
     private Options options;
     
     private Timer timer;
+    private CompilerMetrics metrics;
     private boolean isBootstrap;
     private boolean addedDefaultModuleToClassPath;
     private boolean treatLikelyBugsAsErrors = false;
@@ -235,6 +237,7 @@ public class LanguageCompiler extends JavaCompiler {
         options = Options.instance(context);
         isBootstrap = options.get(OptionName.BOOTSTRAPCEYLON) != null;
         timer = Timer.instance(context);
+        metrics = CompilerMetrics.instance(context);
         sourceLanguage = SourceLanguage.instance(context);
         boolean isProgressPrinted = options.get(OptionName.CEYLONPROGRESS) != null && StatusPrinter.canPrint();
         if(isProgressPrinted && taskListener == null){
@@ -316,11 +319,19 @@ public class LanguageCompiler extends JavaCompiler {
 
     @Override
     public void close(boolean disposeNames) {
-        if (resourceFileObjects != null) {
-            addResources();
-            resourceFileObjects = null;
+        // this is where the module archives get written
+        timer.startTask("Write module archives");
+        try {
+            if (resourceFileObjects != null) {
+                addResources();
+                resourceFileObjects = null;
+            }
+            super.close(disposeNames);
+        } finally {
+            timer.endTask();
+            // now that the archives are written we have everything
+            metrics.write(log.nerrors);
         }
-        super.close(disposeNames);
     }
 
     private void addResources() throws Abort {
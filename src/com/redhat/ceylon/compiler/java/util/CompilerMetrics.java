@@ -0,0 +1,254 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.redhat.ceylon.common.Versions;
+import com.sun.tools.javac.main.OptionName;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Options;
+
+/**
+ * Collects the metrics of a compilation for the <tt>-metrics</tt> option, and writes them
+ * as a JSON file once the compilation is over.
+ * 
+ * For each compiler phase (each task of the {@link Timer}) we record the wall time, the
+ * CPU time and the bytes allocated by the compiler thread. Work done by other threads,
+ * such as the preparation passes or archive compression with <tt>-parallel</tt>, only
+ * shows up in the wall time. Other parts of the compiler add named counters, such as the
+ * number of units and classes, the model loader lookups, and the size of each module
+ * archive written.
+ * 
+ * The file looks like this:
+ * <pre>
+ * {
+ *   "version": 1,
+ *   "compiler": "1.2.0",
+ *   "success": true,
+ *   "errors": 0,
+ *   "wallNanos": 1234,
+ *   "phases": [
+ *     {"name": "Ceylon parsing", "count": 1, "wallNanos": 12, "cpuNanos": 10, "allocatedBytes": 1024}
+ *   ],
+ *   "counters": {"ceylonUnits": 12, ...},
+ *   "archives": {"com.acme.foo/1.0": 4096}
+ * }
+ * </pre>
+ */
+public class CompilerMetrics implements Timer.PhaseListener {
+
+    /** Bumped whenever existing fields change meaning, new fields do not bump it */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final Context.Key<CompilerMetrics> compilerMetricsKey = new Context.Key<CompilerMetrics>();
+
+    public static CompilerMetrics instance(Context context) {
+        CompilerMetrics instance = context.get(compilerMetricsKey);
+        if (instance == null) {
+            instance = new CompilerMetrics(context);
+            context.put(compilerMetricsKey, instance);
+        }
+        return instance;
+    }
+
+    private static class Phase {
+        int count;
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+    }
+
+    private final File file;
+    private final Log log;
+    private final ThreadMXBean threads;
+    private final boolean allocationsSupported;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> archives = new LinkedHashMap<String, Long>();
+    private long phaseWallStart;
+    private long phaseCpuStart;
+    private long phaseAllocatedStart;
+
+    private CompilerMetrics(Context context) {
+        String fileName = Options.instance(context).get(OptionName.CEYLONMETRICS);
+        this.file = fileName != null ? new File(fileName) : null;
+        this.log = Log.instance(context);
+        if (file != null) {
+            threads = ManagementFactory.getThreadMXBean();
+            allocationsSupported = threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+            if (allocationsSupported)
+                ((com.sun.management.ThreadMXBean) threads).setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+            allocationsSupported = false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    @Override
+    public void phaseStarted(String name) {
+        phaseWallStart = System.nanoTime();
+        phaseCpuStart = cpuTime();
+        phaseAllocatedStart = allocatedBytes();
+    }
+
+    @Override
+    public void phaseEnded(String name) {
+        Phase phase = phases.get(name);
+        if (phase == null) {
+            phase = new Phase();
+            phases.put(name, phase);
+        }
+        phase.count++;
+        phase.wallNanos += System.nanoTime() - phaseWallStart;
+        phase.cpuNanos += cpuTime() - phaseCpuStart;
+        phase.allocatedBytes += allocatedBytes() - phaseAllocatedStart;
+    }
+
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long allocatedBytes() {
+        if (!allocationsSupported)
+            return 0;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Adds the given amount to the named counter, which starts at zero
+     */
+    public synchronized void count(String counter, long amount) {
+        if (file == null)
+            return;
+        Long value = counters.get(counter);
+        counters.put(counter, value != null ? value + amount : amount);
+    }
+
+    /**
+     * Records the size of a module archive we just wrote
+     */
+    public synchronized void archiveWritten(String module, long bytes) {
+        if (file == null)
+            return;
+        archives.put(module, bytes);
+        count("archiveBytes", bytes);
+    }
+
+    /**
+     * Writes the metrics file, if we were asked for one. Failing to write it is not a compilation error.
+     */
+    public synchronized void write(int errorCount) {
+        if (file == null)
+            return;
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null)
+                parent.mkdirs();
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                writer.write(toJson(errorCount));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            Log.printLines(log.noticeWriter, "[Could not write compiler metrics to " + file + ": " + e.getMessage() + "]");
+        }
+    }
+
+    private String toJson(int errorCount) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"version\": ").append(FORMAT_VERSION).append(",\n");
+        json.append("  \"compiler\": ").append(quote(Versions.CEYLON_VERSION_NUMBER)).append(",\n");
+        json.append("  \"success\": ").append(errorCount == 0).append(",\n");
+        json.append("  \"errors\": ").append(errorCount).append(",\n");
+        json.append("  \"wallNanos\": ").append(System.nanoTime() - startNanos).append(",\n");
+        json.append("  \"phases\": [");
+        boolean first = true;
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            json.append(first ? "\n" : ",\n");
+            json.append("    {\"name\": ").append(quote(entry.getKey()))
+                .append(", \"count\": ").append(phase.count)
+                .append(", \"wallNanos\": ").append(phase.wallNanos)
+                .append(", \"cpuNanos\": ").append(phase.cpuNanos)
+                .append(", \"allocatedBytes\": ").append(phase.allocatedBytes)
+                .append("}");
+            first = false;
+        }
+        json.append("\n  ],\n");
+        json.append("  \"counters\": ");
+        appendMap(json, counters);
+        json.append(",\n");
+        json.append("  \"archives\": ");
+        appendMap(json, archives);
+        json.append("\n}\n");
+        return json.toString();
+    }
+
+    private static void appendMap(StringBuilder json, Map<String, Long> map) {
+        json.append("{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : map.entrySet()) {
+            json.append(first ? "\n" : ",\n");
+            json.append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue());
+            first = false;
+        }
+        json.append(first ? "}" : "\n  }");
+    }
+
+    private static String quote(String string) {
+        StringBuilder sb = new StringBuilder(string.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+            case '"': sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+                if (c < 0x20)
+                    sb.append(String.format("\\u%04x", (int) c));
+                else
+                    sb.append(c);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
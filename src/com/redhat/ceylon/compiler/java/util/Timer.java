@@ -26,7 +26,17 @@ import com.sun.tools.javac.util.Options;
 
 public class Timer extends com.redhat.ceylon.model.loader.Timer {
 
+    /**
+     * Notified of the start and end of each compiler task, whether or not the timer
+     * is verbose. Tasks do not nest: starting a task ends the current one.
+     */
+    public interface PhaseListener {
+        void phaseStarted(String name);
+        void phaseEnded(String name);
+    }
+
     private static final Context.Key<Timer> timerKey = new Context.Key<Timer>();
+    public static final Context.Key<PhaseListener> phaseListenerKey = new Context.Key<PhaseListener>();
     
     public static Timer instance(Context context) {
         Timer instance = (Timer)context.get(timerKey);
@@ -37,10 +47,39 @@ public class Timer extends com.redhat.ceylon.model.loader.Timer {
         return instance;
     }
     
+    private final PhaseListener phaseListener;
+    private String currentTask;
+    
     private Timer(Context context) {
         Options options = Options.instance(context);
         verbose = options.get(OptionName.VERBOSE) != null 
                 || options.get(OptionName.VERBOSE + ":benchmark" ) != null;
         out = context.get(Log.outKey);
+        PhaseListener listener = context.get(phaseListenerKey);
+        if (listener == null) {
+            CompilerMetrics metrics = CompilerMetrics.instance(context);
+            if (metrics.isEnabled())
+                listener = metrics;
+        }
+        phaseListener = listener;
+    }
+
+    @Override
+    public void startTask(String name) {
+        super.startTask(name);
+        if (phaseListener != null) {
+            if (currentTask != null)
+                phaseListener.phaseEnded(currentTask);
+            phaseListener.phaseStarted(name);
+        }
+        currentTask = name;
+    }
+
+    @Override
+    public void endTask() {
+        super.endTask();
+        if (phaseListener != null && currentTask != null)
+            phaseListener.phaseEnded(currentTask);
+        currentTask = null;
     }
 }
@@ -0,0 +1,278 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javax.tools.JavaFileManager;
+
+import com.redhat.ceylon.common.FileUtil;
+import com.redhat.ceylon.compiler.java.launcher.Main;
+import com.redhat.ceylon.compiler.java.tools.CeylonLog;
+import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
+import com.redhat.ceylon.compiler.java.util.Timer;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * Measures the compiler phases against a corpus made by {@link CorpusGenerator}.
+ * 
+ * Every iteration compiles the whole corpus from scratch in a fresh compiler context,
+ * and records the wall time, CPU time and allocated bytes of each task reported to
+ * the compiler {@link Timer}: parsing, type checking, the preparation passes, Ceylon
+ * code generation, javac generation and class writing, and module archive writing.
+ * Warm-up iterations are run first and not reported.
+ * 
+ * CPU time and allocations are those of the compiler thread: with -parallel they
+ * do not include the work done by other threads.
+ * 
+ * The number and size of the classes written by the last iteration are printed
+ * after the phases, since some code generation options trade classes for code.
+ * 
+ * Usage: CompilerBenchmark [-modules N] [-units M] [-generics G] [-closures C]
+ *     [-references R] [-warmup W] [-iterations I] [-keep] [-- compiler arguments...]
+ */
+public class CompilerBenchmark {
+
+    /**
+     * The measurements of one task, summed over the measured iterations
+     */
+    static class PhaseStats {
+        final String name;
+        int samples;
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+        long minWallNanos = Long.MAX_VALUE;
+
+        PhaseStats(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Recorder implements Timer.PhaseListener {
+        private final com.sun.management.ThreadMXBean threads;
+        private final Map<String, PhaseStats> stats;
+        private final boolean record;
+        private long wallStart;
+        private long cpuStart;
+        private long allocatedStart;
+
+        Recorder(Map<String, PhaseStats> stats, boolean record) {
+            this.stats = stats;
+            this.record = record;
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+                threads = (com.sun.management.ThreadMXBean) bean;
+                threads.setThreadAllocatedMemoryEnabled(true);
+            } else {
+                threads = null;
+            }
+        }
+
+        @Override
+        public void phaseStarted(String name) {
+            wallStart = System.nanoTime();
+            cpuStart = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+            allocatedStart = allocatedBytes();
+        }
+
+        @Override
+        public void phaseEnded(String name) {
+            long wall = System.nanoTime() - wallStart;
+            long cpu = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() - cpuStart;
+            long allocated = allocatedBytes() - allocatedStart;
+            if (!record)
+                return;
+            PhaseStats phase = stats.get(name);
+            if (phase == null) {
+                phase = new PhaseStats(name);
+                stats.put(name, phase);
+            }
+            phase.samples++;
+            phase.wallNanos += wall;
+            phase.cpuNanos += cpu;
+            phase.allocatedBytes += allocated;
+            phase.minWallNanos = Math.min(phase.minWallNanos, wall);
+        }
+
+        private long allocatedBytes() {
+            return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        CorpusGenerator generator = new CorpusGenerator();
+        int warmup = 3;
+        int iterations = 5;
+        boolean keep = false;
+        List<String> compilerArgs = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--")) {
+                compilerArgs.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            } else if (arg.equals("-modules")) {
+                generator.modules(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-units")) {
+                generator.units(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-generics")) {
+                generator.generics(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-closures")) {
+                generator.closures(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-references")) {
+                generator.references(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-warmup")) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-iterations")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-keep")) {
+                keep = true;
+            } else {
+                System.err.println("Unknown argument: " + arg);
+                System.exit(1);
+            }
+        }
+
+        File workDir = File.createTempFile("ceylon-benchmark", "");
+        workDir.delete();
+        workDir.mkdirs();
+        try {
+            File sourceDir = new File(workDir, "source");
+            File outDir = new File(workDir, "modules");
+            generator.generate(sourceDir);
+
+            List<String> arguments = new ArrayList<String>();
+            arguments.add("-src");
+            arguments.add(sourceDir.getPath());
+            arguments.add("-out");
+            arguments.add(outDir.getPath());
+            arguments.addAll(compilerArgs);
+            for (int m = 0; m < generator.getModules(); m++)
+                arguments.add(generator.getModuleName(m));
+            String[] argArray = arguments.toArray(new String[arguments.size()]);
+
+            Map<String, PhaseStats> stats = new LinkedHashMap<String, PhaseStats>();
+            for (int i = 0; i < warmup + iterations; i++) {
+                boolean measured = i >= warmup;
+                FileUtil.delete(outDir);
+                long start = System.nanoTime();
+                compile(argArray, new Recorder(stats, measured));
+                long elapsed = System.nanoTime() - start;
+                System.err.println((measured ? "Iteration " + (i - warmup + 1) : "Warm-up " + (i + 1))
+                        + ": " + (elapsed / 1000000) + "ms");
+            }
+            print(stats, iterations);
+            printClasses(outDir);
+        } finally {
+            if (keep)
+                System.err.println("Corpus kept in " + workDir);
+            else
+                FileUtil.delete(workDir);
+        }
+    }
+
+    private static void compile(String[] args, Recorder recorder) {
+        StringWriter output = new StringWriter();
+        Main compiler = new Main("ceylon compile", new PrintWriter(output, true));
+        Context context = new Context();
+        context.put(Timer.phaseListenerKey, recorder);
+        CeyloncFileManager.preRegister(context);
+        CeylonLog.preRegister(context);
+        int result;
+        try {
+            result = compiler.compile(args, context);
+        } finally {
+            JavaFileManager fileManager = context.get(JavaFileManager.class);
+            if (fileManager instanceof JavacFileManager)
+                ((JavacFileManager) fileManager).close();
+        }
+        if (result != Main.EXIT_OK)
+            throw new RuntimeException("Benchmark corpus failed to compile:\n" + output);
+    }
+
+    /**
+     * Prints the number and size of the classes in the module archives of the 
+     * last iteration, which are what code generation options change
+     */
+    private static void printClasses(File outDir) throws IOException {
+        int classes = 0;
+        long bytes = 0;
+        List<File> dirs = new ArrayList<File>();
+        dirs.add(outDir);
+        while (!dirs.isEmpty()) {
+            File[] files = dirs.remove(dirs.size() - 1).listFiles();
+            if (files == null)
+                continue;
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    dirs.add(file);
+                } else if (file.getName().endsWith(".car")) {
+                    JarFile car = new JarFile(file);
+                    try {
+                        Enumeration<JarEntry> entries = car.entries();
+                        while (entries.hasMoreElements()) {
+                            JarEntry entry = entries.nextElement();
+                            if (entry.getName().endsWith(".class")) {
+                                classes++;
+                                bytes += entry.getSize();
+                            }
+                        }
+                    } finally {
+                        car.close();
+                    }
+                }
+            }
+        }
+        System.out.println(String.format("Classes written: %d (%.1f KB)", classes, bytes / 1024.0));
+    }
+
+    private static void print(Map<String, PhaseStats> stats, int iterations) {
+        System.out.println(String.format("%-40s %12s %12s %12s %14s", 
+                "Phase (average per iteration)", "wall ms", "min wall ms", "cpu ms", "allocated MB"));
+        long totalWall = 0, totalCpu = 0, totalAllocated = 0;
+        for (PhaseStats phase : stats.values()) {
+            totalWall += phase.wallNanos;
+            totalCpu += phase.cpuNanos;
+            totalAllocated += phase.allocatedBytes;
+            System.out.println(String.format("%-40s %12.1f %12.1f %12.1f %14.1f",
+                    phase.name, 
+                    phase.wallNanos / 1e6 / iterations, 
+                    phase.minWallNanos / 1e6 * phase.samples / iterations,
+                    phase.cpuNanos / 1e6 / iterations, 
+                    phase.allocatedBytes / 1048576.0 / iterations));
+        }
+        System.out.println(String.format("%-40s %12.1f %12s %12.1f %14.1f",
+                "Total", totalWall / 1e6 / iterations, "", totalCpu / 1e6 / iterations, totalAllocated / 1048576.0 / iterations));
+    }
+}
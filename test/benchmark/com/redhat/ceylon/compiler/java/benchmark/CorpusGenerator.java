@@ -0,0 +1,208 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ * 
+ * This particular file is subject to the "Classpath" exception as provided in the 
+ * LICENSE file that accompanied this code.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler.java.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates a reproducible corpus of Ceylon modules for the compiler benchmarks.
+ * 
+ * Each module imports the previous one and contains the given number of units, each
+ * unit declaring an interface, generic classes satisfying it and toplevel functions
+ * made of closures over streams, using declarations of the previous unit and of the
+ * previous module. The same parameters and seed always produce the same sources.
+ */
+public class CorpusGenerator {
+
+    public static final String MODULE_PREFIX = "bench.m";
+    public static final String VERSION = "1.0.0";
+
+    private int modules = 5;
+    private int units = 20;
+    private int generics = 3;
+    private int closures = 5;
+    private int references = 0;
+    private long seed = 42;
+
+    /** Number of modules */
+    public CorpusGenerator modules(int modules) {
+        this.modules = modules;
+        return this;
+    }
+
+    /** Number of units per module */
+    public CorpusGenerator units(int units) {
+        this.units = units;
+        return this;
+    }
+
+    /** Number of generic classes per unit */
+    public CorpusGenerator generics(int generics) {
+        this.generics = generics;
+        return this;
+    }
+
+    /** Number of closure-heavy functions per unit */
+    public CorpusGenerator closures(int closures) {
+        this.closures = closures;
+        return this;
+    }
+
+    /** Number of functions per unit passing references to toplevel functions */
+    public CorpusGenerator references(int references) {
+        this.references = references;
+        return this;
+    }
+
+    public CorpusGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getModules() {
+        return modules;
+    }
+
+    public String getModuleName(int module) {
+        return MODULE_PREFIX + module;
+    }
+
+    /**
+     * Writes the corpus in the given source folder
+     */
+    public void generate(File sourceDir) throws IOException {
+        Random random = new Random(seed);
+        for (int m = 0; m < modules; m++) {
+            String moduleName = getModuleName(m);
+            File packageDir = new File(sourceDir, moduleName.replace('.', File.separatorChar));
+            if (!packageDir.isDirectory() && !packageDir.mkdirs())
+                throw new IOException("Could not create " + packageDir);
+            StringBuilder descriptor = new StringBuilder();
+            descriptor.append("module ").append(moduleName).append(" \"").append(VERSION).append("\" {\n");
+            if (m > 0)
+                descriptor.append("    shared import ").append(getModuleName(m - 1)).append(" \"").append(VERSION).append("\";\n");
+            descriptor.append("}\n");
+            write(new File(packageDir, "module.ceylon"), descriptor);
+            write(new File(packageDir, "package.ceylon"), "shared package " + moduleName + ";\n");
+            for (int u = 0; u < units; u++) {
+                write(new File(packageDir, "Unit" + u + ".ceylon"), unit(random, m, u));
+            }
+        }
+    }
+
+    private CharSequence unit(Random random, int module, int unit) {
+        StringBuilder sb = new StringBuilder();
+        String prefix = "M" + module + "U" + unit;
+        String fprefix = "m" + module + "u" + unit;
+        sb.append("shared interface ").append(prefix).append("Shape<out T> given T satisfies Object {\n");
+        sb.append("    shared formal T key;\n");
+        sb.append("    shared formal Integer size;\n");
+        sb.append("    shared default String describe() => \"``key``:``size``\";\n");
+        sb.append("}\n\n");
+
+        for (int g = 0; g < generics; g++) {
+            String name = prefix + "Box" + g;
+            sb.append("shared class ").append(name).append("<T, U>(shared actual T key, shared U[] items)\n");
+            sb.append("        satisfies ").append(prefix).append("Shape<T>\n");
+            sb.append("        given T satisfies Object\n");
+            sb.append("        given U satisfies Comparable<U> {\n");
+            sb.append("    shared actual Integer size => items.size;\n");
+            sb.append("    shared U? largest => max(items);\n");
+            sb.append("    shared ").append(name).append("<T, U> with(U item) => ").append(name).append("(key, items.withTrailing(item));\n");
+            sb.append("    shared <V> ").append(name).append("<T, V> mapItems<V>(V(U) fun) given V satisfies Comparable<V>\n");
+            sb.append("            => ").append(name).append("<T, V>(key, items.collect(fun));\n");
+            sb.append("}\n\n");
+        }
+
+        for (int c = 0; c < closures; c++) {
+            int factor = 1 + random.nextInt(9);
+            int modulo = 2 + random.nextInt(5);
+            sb.append("shared Integer ").append(fprefix).append("Compute").append(c).append("({Integer*} values) {\n");
+            sb.append("    value scaled = values.map((Integer x) => x * ").append(factor).append(" + ").append(c).append(");\n");
+            sb.append("    value kept = scaled.filter((Integer x) => x % ").append(modulo).append(" != 0);\n");
+            sb.append("    variable Integer count = 0;\n");
+            sb.append("    for (x in kept) {\n");
+            sb.append("        count++;\n");
+            sb.append("    }\n");
+            sb.append("    return kept.fold(count)((Integer sum, Integer x) => sum + x);\n");
+            sb.append("}\n\n");
+        }
+
+        for (int r = 0; r < references; r++) {
+            int factor = 1 + random.nextInt(9);
+            int modulo = 2 + random.nextInt(5);
+            sb.append("Integer ").append(fprefix).append("Step").append(r).append("(Integer x) => x * ").append(factor).append(" + ").append(r).append(";\n");
+            sb.append("Boolean ").append(fprefix).append("Keep").append(r).append("(Integer x) => x % ").append(modulo).append(" != 0;\n");
+            sb.append("shared Integer ").append(fprefix).append("Apply").append(r).append("({Integer*} values)\n");
+            sb.append("        => values.map(").append(fprefix).append("Step").append(r).append(").filter(").append(fprefix).append("Keep").append(r).append(").size;\n\n");
+        }
+
+        // use the previous unit, or the last unit of the previous module
+        if (unit > 0 && closures > 0) {
+            sb.append("shared Integer ").append(fprefix).append("Chain() => m").append(module).append("u").append(unit - 1)
+                .append("Compute0(1..").append(10 + random.nextInt(90)).append(");\n\n");
+        } else if (module > 0 && closures > 0 && units > 0) {
+            sb.append("shared Integer ").append(fprefix).append("Chain() => m").append(module - 1).append("u").append(units - 1)
+                .append("Compute0(1..").append(10 + random.nextInt(90)).append(");\n\n");
+        }
+        if (generics > 0) {
+            sb.append("shared String ").append(fprefix).append("Describe() {\n");
+            sb.append("    value box = ").append(prefix).append("Box0(\"").append(prefix).append("\", [3, 1, 2]).with(").append(random.nextInt(100)).append(");\n");
+            sb.append("    value strings = box.mapItems((Integer i) => i.string);\n");
+            sb.append("    value largest = strings.largest else \"none\";\n");
+            sb.append("    return \"``box.describe()`` ``largest``\";\n");
+            sb.append("}\n");
+        }
+        return sb;
+    }
+
+    private static void write(File file, CharSequence contents) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.append(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CorpusGenerator <sourceDir> [modules [units [generics [closures [seed]]]]]");
+            System.exit(1);
+        }
+        CorpusGenerator generator = new CorpusGenerator();
+        if (args.length > 1)
+            generator.modules(Integer.parseInt(args[1]));
+        if (args.length > 2)
+            generator.units(Integer.parseInt(args[2]));
+        if (args.length > 3)
+            generator.generics(Integer.parseInt(args[3]));
+        if (args.length > 4)
+            generator.closures(Integer.parseInt(args[4]));
+        if (args.length > 5)
+            generator.seed(Long.parseLong(args[5]));
+        generator.generate(new File(args[0]));
+    }
+}
@@ -19,10 +19,12 @@
  */
 package com.redhat.ceylon.compiler.java.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringWriter;
@@ -38,11 +40,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.Enumeration;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticListener;
@@ -593,6 +600,17 @@ public abstract class CompilerTests {
                 0, dl.get(Diagnostic.Kind.WARNING).size() + dl.get(Diagnostic.Kind.MANDATORY_WARNING).size());
     }
 
+    /**
+     * Compiles the given files and returns what the compiler printed, such as its 
+     * {@code -verbose} reports
+     */
+    protected String compileAndGetOutput(List<String> options, String... ceylon) {
+        StringWriter out = new StringWriter();
+        ErrorCollector c = new ErrorCollector();
+        assertCompilesOk(c, getCompilerTask(out, options, c, null, ceylon).call2());
+        return out.toString();
+    }
+
     protected Object compileAndRun(String main, String... ceylon) {
         compile(ceylon);
         return run(main);
@@ -601,6 +619,76 @@ public abstract class CompilerTests {
     protected Object run(String main) {
         return run(main, getDestModuleWithArtifact(main));
     }
+
+    /**
+     * Returns the default options plus the given (comma-separated) opt-in optimizations
+     */
+    protected List<String> optionsWithOptimization(String optimization) {
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-enableOptimization");
+        options.add(optimization);
+        return options;
+    }
+
+    protected void compileWithOptimization(String optimization, String... ceylon) {
+        ErrorCollector c = new ErrorCollector();
+        assertCompilesOk(c, getCompilerTask(optionsWithOptimization(optimization), c, ceylon).call2());
+    }
+
+    /**
+     * Compiles the given files with and without the given opt-in optimizations, checks 
+     * that they changed the generated classes, so that the test does not pass just because 
+     * the optimization never applied, and runs the optimized main.
+     */
+    protected Object compileAndRunWithOptimization(String optimization, String main, String... ceylon) {
+        File car = getModuleArchive(Module.DEFAULT_MODULE_NAME, null);
+        compile(ceylon);
+        Map<String, byte[]> unoptimized = readClasses(car);
+        compileWithOptimization(optimization, ceylon);
+        Map<String, byte[]> optimized = readClasses(car);
+        boolean changed = !unoptimized.keySet().equals(optimized.keySet());
+        for (Map.Entry<String, byte[]> entry : unoptimized.entrySet()) {
+            if (changed)
+                break;
+            changed = !Arrays.equals(entry.getValue(), optimized.get(entry.getKey()));
+        }
+        Assert.assertTrue("The " + optimization + " optimization did not change the generated classes", changed);
+        return run(main);
+    }
+
+    /**
+     * Returns the class entries of the given car, by name
+     */
+    protected static Map<String, byte[]> readClasses(File car) {
+        Map<String, byte[]> classes = new TreeMap<String, byte[]>();
+        try {
+            ZipFile zip = new ZipFile(car);
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.getName().endsWith(".class"))
+                        continue;
+                    InputStream is = zip.getInputStream(entry);
+                    try {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        byte[] buffer = new byte[4096];
+                        int read;
+                        while ((read = is.read(buffer)) != -1)
+                            bytes.write(buffer, 0, read);
+                        classes.put(entry.getName(), bytes.toByteArray());
+                    } finally {
+                        is.close();
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return classes;
+    }
     
     public class ModuleWithArtifact {
         private String module;
@@ -807,6 +895,11 @@ public abstract class CompilerTests {
     
     protected CeyloncTaskImpl getCompilerTask(List<String> initialOptions, DiagnosticListener<? super FileObject> diagnosticListener, 
             List<String> modules, String... sourcePaths){
+        return getCompilerTask(null, initialOptions, diagnosticListener, modules, sourcePaths);
+    }
+    
+    protected CeyloncTaskImpl getCompilerTask(Writer out, List<String> initialOptions, DiagnosticListener<? super FileObject> diagnosticListener, 
+            List<String> modules, String... sourcePaths){
         java.util.List<File> sourceFiles = new ArrayList<File>(sourcePaths.length);
         for(String file : sourcePaths){
             sourceFiles.add(new File(getPackagePath(), file));
@@ -837,7 +930,7 @@ public abstract class CompilerTests {
             options.add("-verbose:ast,code");
         Iterable<? extends JavaFileObject> compilationUnits1 =
                 runFileManager.getJavaFileObjectsFromFiles(sourceFiles);
-        return runCompiler.getTask(null, runFileManager, diagnosticListener, 
+        return runCompiler.getTask(out, runFileManager, diagnosticListener, 
                 options, modules, compilationUnits1);
     }
 
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -45,6 +46,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.Attributes;
@@ -70,6 +72,7 @@ import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.redhat.ceylon.cmr.util.JarUtils;
 import com.redhat.ceylon.common.FileUtil;
 import com.redhat.ceylon.common.Versions;
 import com.redhat.ceylon.common.config.Repositories;
@@ -78,6 +81,7 @@ import com.redhat.ceylon.compiler.java.test.CompilerTests;
 import com.redhat.ceylon.compiler.java.test.ErrorCollector;
 import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
 import com.redhat.ceylon.compiler.java.tools.JarEntryManifestFileObject.OsgiManifest;
+import com.redhat.ceylon.compiler.java.tools.JarPatcher;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
 import com.redhat.ceylon.compiler.java.util.Util;
 import com.redhat.ceylon.compiler.typechecker.context.Context;
@@ -476,6 +480,114 @@ public class CMRTests extends CompilerTests {
         outputStream.close();
     }
     
+    @Test
+    public void testMdlPatchesExistingCar() throws IOException, InterruptedException{
+        String pkg = "com/redhat/ceylon/compiler/java/test/cmr/modules/single/";
+        File sourceFile = new File(getPackagePath(), "modules/single/Patched.ceylon");
+        File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.single", "6.6.6");
+        try{
+            copy(new File(getPackagePath(), "modules/single/Patched_1.ceylon"), sourceFile);
+            assertTrue(getCompilerTask("modules/single/module.ceylon", "modules/single/Correct.ceylon", 
+                    "modules/single/Patched.ceylon").call());
+            ZipEntry correctClass = getCarEntry(carFile, pkg+"Correct.class");
+            byte[] correctBytes = getCarEntryBytes(carFile, pkg+"Correct.class");
+            ZipEntry patchedClass = getCarEntry(carFile, pkg+"Patched.class");
+            byte[] patchedBytes = getCarEntryBytes(carFile, pkg+"Patched.class");
+            getCarEntry(carFile, pkg+"Removed.class");
+
+            // zip entry times have a two second resolution
+            Thread.sleep(2100);
+            // only compile Patched.ceylon, so the car is patched with its classes
+            copy(new File(getPackagePath(), "modules/single/Patched_2.ceylon"), sourceFile);
+            assertTrue(getCompilerTask("modules/single/module.ceylon", "modules/single/Patched.ceylon").call());
+
+            // untouched entry: copied as is
+            ZipEntry keptClass = getCarEntry(carFile, pkg+"Correct.class");
+            assertEquals(correctClass.getTime(), keptClass.getTime());
+            assertEquals(correctClass.getCrc(), keptClass.getCrc());
+            assertEquals(correctClass.getCompressedSize(), keptClass.getCompressedSize());
+            Assert.assertArrayEquals(correctBytes, getCarEntryBytes(carFile, pkg+"Correct.class"));
+            // replaced entry
+            ZipEntry replacedClass = getCarEntry(carFile, pkg+"Patched.class");
+            assertTrue(replacedClass.getTime() > patchedClass.getTime());
+            assertFalse(Arrays.equals(patchedBytes, getCarEntryBytes(carFile, pkg+"Patched.class")));
+            // deleted entry
+            ZipFile car = new ZipFile(carFile);
+            try{
+                assertNull(car.getEntry(pkg+"Removed.class"));
+                // no entry is written twice
+                Set<String> names = new HashSet<String>();
+                Enumeration<? extends ZipEntry> entries = car.entries();
+                while(entries.hasMoreElements())
+                    assertTrue(names.add(entries.nextElement().getName()));
+            }finally{
+                car.close();
+            }
+        }finally{
+            sourceFile.delete();
+        }
+    }
+
+    @Test
+    public void testJarPatcher() throws IOException{
+        File previous = File.createTempFile("previous", ".car");
+        File newEntries = File.createTempFile("new", ".car");
+        File output = File.createTempFile("output", ".car");
+        try{
+            JarOutputStream jar = new JarOutputStream(new FileOutputStream(previous));
+            writeJarEntry(jar, "a/", null);
+            writeJarEntry(jar, "a/Replaced.class", "old");
+            writeJarEntry(jar, "a/Deleted.class", "deleted");
+            writeJarEntry(jar, "a/Untouched.class", "untouched");
+            jar.close();
+            jar = new JarOutputStream(new FileOutputStream(newEntries));
+            writeJarEntry(jar, "a/", null);
+            writeJarEntry(jar, "a/Replaced.class", "new");
+            jar.close();
+
+            JarPatcher patcher = new JarPatcher();
+            patcher.patch(newEntries, previous, new JarUtils.JarEntryFilter() {
+                @Override
+                public boolean avoid(String entryFullName) {
+                    return entryFullName.equals("a/Deleted.class");
+                }
+            }, Collections.singleton("a/"), output);
+            assertFalse(patcher.isRecompressed());
+            assertEquals(1, patcher.getEntriesCopied());
+
+            ZipFile previousZip = new ZipFile(previous);
+            try{
+                ZipEntry untouched = previousZip.getEntry("a/Untouched.class");
+                ZipEntry kept = getCarEntry(output, "a/Untouched.class");
+                assertEquals(untouched.getTime(), kept.getTime());
+                assertEquals(untouched.getCrc(), kept.getCrc());
+                assertEquals(untouched.getCompressedSize(), kept.getCompressedSize());
+            }finally{
+                previousZip.close();
+            }
+            assertEquals("untouched", new String(getCarEntryBytes(output, "a/Untouched.class"), "UTF-8"));
+            assertEquals("new", new String(getCarEntryBytes(output, "a/Replaced.class"), "UTF-8"));
+            ZipFile outputZip = new ZipFile(output);
+            try{
+                assertNull(outputZip.getEntry("a/Deleted.class"));
+                assertEquals(3, outputZip.size());
+            }finally{
+                outputZip.close();
+            }
+        }finally{
+            previous.delete();
+            newEntries.delete();
+            output.delete();
+        }
+    }
+
+    private void writeJarEntry(JarOutputStream jar, String name, String contents) throws IOException {
+        jar.putNextEntry(new ZipEntry(name));
+        if(contents != null)
+            jar.write(contents.getBytes("UTF-8"));
+        jar.closeEntry();
+    }
+
     @Test
     public void testMdlSuppressObsoleteClasses() throws IOException{
         File sourceFile = new File(getPackagePath(), "modules/single/SuppressClass.ceylon");
@@ -511,6 +623,130 @@ public class CMRTests extends CompilerTests {
         sourceFile.delete();
     }
 
+
+    @Test
+    public void testMdlIncrementalReusesClasses() throws IOException, InterruptedException{
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-incremental");
+        String indexKey = "source.com/redhat/ceylon/compiler/java/test/cmr/modules/single/Correct.ceylon";
+        String correctClassName = "com/redhat/ceylon/compiler/java/test/cmr/modules/single/Correct.class";
+        String changedClassName = "com/redhat/ceylon/compiler/java/test/cmr/modules/single/incrementalChanged_.class";
+        File sourceFile = new File(getPackagePath(), "modules/single/IncrementalChanged.ceylon");
+        File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.single", "6.6.6");
+        try{
+            copy(new File(getPackagePath(), "modules/single/IncrementalChanged_1.ceylon"), sourceFile);
+            compileIncrementally(options, "modules/single/IncrementalChanged.ceylon");
+            ZipEntry correctClass = getCarEntry(carFile, correctClassName);
+            byte[] correctBytes = getCarEntryBytes(carFile, correctClassName);
+            ZipEntry changedClass = getCarEntry(carFile, changedClassName);
+            byte[] changedBytes = getCarEntryBytes(carFile, changedClassName);
+            Properties index = getIncrementalIndex(carFile);
+            assertNotNull(index.getProperty("signature"));
+            assertNotNull(index.getProperty(indexKey));
+
+            // zip entry times have a two second resolution
+            Thread.sleep(2100);
+            // nothing changed: every class is kept from the previous car
+            compileIncrementally(options, "modules/single/IncrementalChanged.ceylon");
+            assertEquals(correctClass.getTime(), getCarEntry(carFile, correctClassName).getTime());
+            assertEquals(changedClass.getTime(), getCarEntry(carFile, changedClassName).getTime());
+            assertEquals(index.getProperty("signature"), getIncrementalIndex(carFile).getProperty("signature"));
+
+            Thread.sleep(2100);
+            // a body change only regenerates its own unit
+            copy(new File(getPackagePath(), "modules/single/IncrementalChanged_2.ceylon"), sourceFile);
+            compileIncrementally(options, "modules/single/IncrementalChanged.ceylon");
+            assertEquals(correctClass.getTime(), getCarEntry(carFile, correctClassName).getTime());
+            Assert.assertArrayEquals(correctBytes, getCarEntryBytes(carFile, correctClassName));
+            assertTrue(getCarEntry(carFile, changedClassName).getTime() > changedClass.getTime());
+            assertFalse(Arrays.equals(changedBytes, getCarEntryBytes(carFile, changedClassName)));
+            assertEquals(index.getProperty("signature"), getIncrementalIndex(carFile).getProperty("signature"));
+        }finally{
+            sourceFile.delete();
+        }
+    }
+
+    @Test
+    public void testMdlIncrementalSignatureChanges() throws IOException{
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-incremental");
+        File sourceFile = new File(getPackagePath(), "modules/single/IncrementalSignature.ceylon");
+        File carFile = getModuleArchive("com.redhat.ceylon.compiler.java.test.cmr.modules.single", "6.6.6");
+        try{
+            copy(new File(getPackagePath(), "modules/single/IncrementalSignature_1.ceylon"), sourceFile);
+            compileIncrementally(options, "modules/single/IncrementalSignature.ceylon");
+            String signature = getIncrementalIndex(carFile).getProperty("signature");
+            assertNotNull(signature);
+
+            // uses of the annotation are expanded from its constructor in other units
+            copy(new File(getPackagePath(), "modules/single/IncrementalSignature_2.ceylon"), sourceFile);
+            compileIncrementally(options, "modules/single/IncrementalSignature.ceylon");
+            String annotationSignature = getIncrementalIndex(carFile).getProperty("signature");
+            assertFalse(signature.equals(annotationSignature));
+
+            // a non-shared concrete member makes the interface need a companion class
+            copy(new File(getPackagePath(), "modules/single/IncrementalSignature_3.ceylon"), sourceFile);
+            compileIncrementally(options, "modules/single/IncrementalSignature.ceylon");
+            String companionSignature = getIncrementalIndex(carFile).getProperty("signature");
+            assertFalse(signature.equals(companionSignature));
+            assertFalse(annotationSignature.equals(companionSignature));
+        }finally{
+            sourceFile.delete();
+        }
+    }
+
+    private void compileIncrementally(List<String> options, String source) {
+        Boolean success = getCompilerTask(options, "modules/single/module.ceylon", "modules/single/Correct.ceylon", 
+                source).call();
+        assertTrue(success);
+    }
+
+    private ZipEntry getCarEntry(File carFile, String name) throws IOException {
+        ZipFile car = new ZipFile(carFile);
+        try{
+            ZipEntry entry = car.getEntry(name);
+            assertNotNull(entry);
+            return entry;
+        }finally{
+            car.close();
+        }
+    }
+
+    private byte[] getCarEntryBytes(File carFile, String name) throws IOException {
+        ZipFile car = new ZipFile(carFile);
+        try{
+            ZipEntry entry = car.getEntry(name);
+            assertNotNull(entry);
+            InputStream is = car.getInputStream(entry);
+            try{
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                Util.copy(is, bytes);
+                return bytes.toByteArray();
+            }finally{
+                is.close();
+            }
+        }finally{
+            car.close();
+        }
+    }
+
+    private Properties getIncrementalIndex(File carFile) throws IOException {
+        ZipFile car = new ZipFile(carFile);
+        try{
+            ZipEntry indexEntry = car.getEntry("META-INF/incremental.properties");
+            assertNotNull(indexEntry);
+            Properties index = new Properties();
+            InputStream is = car.getInputStream(indexEntry);
+            try{
+                index.load(is);
+            }finally{
+                is.close();
+            }
+            return index;
+        }finally{
+            car.close();
+        }
+    }
     
     @Test
     public void testMdlMultipleRepos(){
@@ -20,7 +20,11 @@
 package com.redhat.ceylon.compiler.java.test.expression;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import com.redhat.ceylon.compiler.java.test.CompilerError;
@@ -505,6 +509,11 @@ public class ExpressionTests extends CompilerTests {
         compareWithJavaSource("stringtemp/StringTemplate");
     }
     
+    @Test
+    public void testStpStringTemplateOptimized(){
+        compileAndRunWithOptimization("StringTemplate", "com.redhat.ceylon.compiler.java.test.expression.stringtemp.stringTemplateOptimized", "stringtemp/StringTemplateOptimized.ceylon");
+    }
+    
     @Test
     public void testLmdAnonFunctionNullary(){
         compareWithJavaSource("lambda/AnonFunctionNullary");
@@ -586,4 +595,68 @@ public class ExpressionTests extends CompilerTests {
         compile("optimisations/InCharacterMeasureCorrect.ceylon");
         run("com.redhat.ceylon.compiler.java.test.expression.optimisations.inCharacterMeasureCorrect");
     }
+    
+    @Test
+    public void testOptmDefaultArgumentInliningCorrect(){
+        compileAndRunWithOptimization("DefaultArgumentInlining", "com.redhat.ceylon.compiler.java.test.expression.optimisations.defaultArgumentInliningCorrect", "optimisations/DefaultArgumentInliningCorrect.ceylon");
+    }
+    
+    @Test
+    public void testOptmDefaultArgumentInlining(){
+        compareWithJavaSource(optionsWithOptimization("DefaultArgumentInlining"), "optimisations/DefaultArgumentInlining.src", "optimisations/DefaultArgumentInlining.ceylon");
+    }
+    
+    @Test
+    public void testOptmDefaultArgumentInliningReport(){
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-verbose:defaults");
+        String report = compileAndGetOutput(options, "optimisations/DefaultArgumentInlining.ceylon");
+        Assert.assertFalse(report, report.contains("Inlined default arguments in "));
+        
+        options = optionsWithOptimization("DefaultArgumentInlining");
+        options.add("-verbose:defaults");
+        report = compileAndGetOutput(options, "optimisations/DefaultArgumentInlining.ceylon");
+        Assert.assertTrue(report, report.contains("Inlined default arguments in "));
+        int invocations = 0;
+        for (String line : report.split("\\r?\\n")) {
+            if (line.startsWith("  22:") || line.startsWith("  23:")) {
+                Assert.assertTrue(line, line.endsWith(" m, s"));
+                invocations++;
+            }
+        }
+        Assert.assertEquals(report, 2, invocations);
+    }
+    
+    @Test
+    public void testOptmDefaultArgumentInliningOtherModule(){
+        List<String> options = optionsWithOptimization("DefaultArgumentInlining");
+        options.add("-verbose:defaults");
+        String report = compileAndGetOutput(options, 
+                "optimisations/defaults/callee/module.ceylon", "optimisations/defaults/callee/package.ceylon", 
+                "optimisations/defaults/callee/callee.ceylon",
+                "optimisations/defaults/caller/module.ceylon", "optimisations/defaults/caller/caller.ceylon");
+        // the callee's module can be recompiled alone, so other modules keep calling its default methods
+        Assert.assertTrue(report, report.contains("defaults/callee/callee.ceylon"));
+        Assert.assertFalse(report, report.contains("defaults/caller/caller.ceylon"));
+    }
+    
+    @Test
+    public void testOptmInvokeDynamicCallableCorrect(){
+        compileAndRunWithOptimization("InvokeDynamicCallable", "com.redhat.ceylon.compiler.java.test.expression.optimisations.invokeDynamicCallableCorrect", "optimisations/InvokeDynamicCallableCorrect.ceylon");
+    }
+    
+    @Test
+    public void testOptmInvokeDynamicCallableClasses() throws Exception {
+        compileAndRunWithOptimization("InvokeDynamicCallable", "com.redhat.ceylon.compiler.java.test.expression.optimisations.invokeDynamicCallableClasses", "optimisations/InvokeDynamicCallableClasses.ceylon");
+        
+        String prefix = "com/redhat/ceylon/compiler/java/test/expression/optimisations/invokeDynamicCallableClasses_";
+        JarFile car = new JarFile(getModuleArchive("default", null));
+        try {
+            // the three references share one Callable class instead of having an anonymous class each
+            Assert.assertNotNull(car.getEntry(prefix + "$$callable$.class"));
+            Assert.assertNull(car.getEntry(prefix + "$1.class"));
+        } finally {
+            car.close();
+        }
+    }
 }
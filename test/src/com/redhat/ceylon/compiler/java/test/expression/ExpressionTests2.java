@@ -562,4 +562,11 @@ public class ExpressionTests2 extends CompilerTests {
     public void testDestructuring(){
         compareWithJavaSource("destructuring/Destruct");
     }
+    
+    @Test
+    public void testDestructuringLiteral(){
+        compileAndRun(
+                "com.redhat.ceylon.compiler.java.test.expression.destructuring.destructLiteral", 
+                "destructuring/DestructLiteral.ceylon");
+    }
 }
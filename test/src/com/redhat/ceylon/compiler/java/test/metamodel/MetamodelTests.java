@@ -50,6 +50,12 @@ public class MetamodelTests extends CompilerTests {
         compileAndRun("com.redhat.ceylon.compiler.java.test.metamodel.literalsRuntime", "Literals.ceylon", "literalsRuntime.ceylon");
     }
 
+    @Test
+    public void testTypeLiteralRuntimeMetamodelLiteralConstant() {
+        compileAndRunWithOptimization("MetamodelLiteralConstant", "com.redhat.ceylon.compiler.java.test.metamodel.literalsRuntime", "Literals.ceylon", "literalsRuntime.ceylon", "metamodelLiteralConstant.ceylon");
+        run("com.redhat.ceylon.compiler.java.test.metamodel.metamodelLiteralConstant");
+    }
+
     @Test
     public void testBug1793() {
         compileAndRun("com.redhat.ceylon.compiler.java.test.metamodel.bug1793", "bug1793.ceylon", "JavaType.java");
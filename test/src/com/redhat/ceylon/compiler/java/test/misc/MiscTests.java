@@ -19,14 +19,29 @@
  */
 package com.redhat.ceylon.compiler.java.test.misc;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.ProcessBuilder.Redirect;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
 import javax.tools.JavaFileObject;
 
 import org.junit.Assert;
@@ -35,12 +50,18 @@ import org.junit.Test;
 
 import com.redhat.ceylon.common.OSUtil;
 import com.redhat.ceylon.common.Versions;
+import com.redhat.ceylon.compiler.java.launcher.CompilerDaemon;
+import com.redhat.ceylon.compiler.java.launcher.Main;
 import com.redhat.ceylon.compiler.java.test.CompilerTests;
 import com.redhat.ceylon.compiler.java.test.ErrorCollector;
 import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
 import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
 import com.redhat.ceylon.compiler.java.tools.CeyloncTool;
 import com.redhat.ceylon.model.cmr.JDKUtils;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.sun.tools.javac.file.RelativePath.RelativeFile;
+import com.sun.tools.javac.file.ZipFileIndex;
+import com.sun.tools.javac.file.ZipFileIndexCache;
 
 public class MiscTests extends CompilerTests {
 
@@ -71,6 +92,248 @@ public class MiscTests extends CompilerTests {
         compileAndRun("com.redhat.ceylon.compiler.java.test.misc.twoclasses.main", "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
     }
 
+    @Test
+    public void testCompileTwoClassesInParallel() throws Exception{
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-parallel");
+        compilesWithoutWarnings(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
+        run("com.redhat.ceylon.compiler.java.test.misc.twoclasses.main");
+    }
+
+    @Test
+    public void testCompileRefinementAcrossUnitsInParallel() throws Exception{
+        String[] files = {"parallelrefinement/Top.ceylon", "parallelrefinement/Middle.ceylon", 
+                "parallelrefinement/Bottom.ceylon", "parallelrefinement/main.ceylon"};
+        compilesWithoutWarnings(files);
+        Map<String, byte[]> serialClasses = readClasses(getModuleArchive(Module.DEFAULT_MODULE_NAME, null));
+        
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-parallel");
+        // try a few times since races do not show up on every run
+        for(int i=0;i<5;i++){
+            compilesWithoutWarnings(options, files);
+            Map<String, byte[]> parallelClasses = readClasses(getModuleArchive(Module.DEFAULT_MODULE_NAME, null));
+            Assert.assertEquals(serialClasses.keySet(), parallelClasses.keySet());
+            for(Map.Entry<String, byte[]> entry : serialClasses.entrySet()){
+                Assert.assertArrayEquals(entry.getKey(), entry.getValue(), parallelClasses.get(entry.getKey()));
+            }
+        }
+        run("com.redhat.ceylon.compiler.java.test.misc.parallelrefinement.main");
+    }
+
+    @Test
+    public void testCompileErrorsInParallelAreReportedInSerialOrder() throws Exception{
+        String[] files = {"parallelrefinement/errors/Top.ceylon", "parallelrefinement/errors/Bottom.ceylon", 
+                "parallelrefinement/errors/main.ceylon"};
+        List<String> serialErrors = compileCollectingDiagnostics(new ArrayList<String>(defaultOptions), files);
+        Assert.assertFalse(serialErrors.isEmpty());
+        
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-parallel");
+        for(int i=0;i<5;i++){
+            Assert.assertEquals(serialErrors, compileCollectingDiagnostics(options, files));
+        }
+    }
+
+    private List<String> compileCollectingDiagnostics(List<String> options, String... files) {
+        // unlike ErrorCollector this keeps the order in which diagnostics are reported
+        final List<String> diagnostics = new ArrayList<String>();
+        Boolean success = getCompilerTask(options, new DiagnosticListener<FileObject>() {
+            @Override
+            public void report(Diagnostic<? extends FileObject> diagnostic) {
+                diagnostics.add(diagnostic.getKind() + ":" 
+                        + (diagnostic.getSource() != null ? diagnostic.getSource().getName() : null) + ":"
+                        + diagnostic.getLineNumber() + ":" 
+                        + diagnostic.getMessage(Locale.getDefault()));
+            }
+        }, files).call();
+        Assert.assertFalse(success);
+        return diagnostics;
+    }
+
+    @Test
+    public void testCompileTwiceWithSharedMappedZipIndex() throws Exception{
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-XDsharedZipIndex");
+        options.add("-XDmmappedIO");
+        ZipFileIndexCache cache = ZipFileIndexCache.getSharedInstance();
+        compilesWithoutWarnings(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
+        Map<ZipFileIndex, Long> firstIndexes = new HashMap<ZipFileIndex, Long>();
+        for(ZipFileIndex index : cache.getZipFileIndexes())
+            firstIndexes.put(index, index.getZipFile().lastModified());
+        Assert.assertFalse(firstIndexes.isEmpty());
+        // the second compilation reuses the indexes of the first one, except for the archives
+        // which changed in between (such as the one we write)
+        compilesWithoutWarnings(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
+        int reused = 0;
+        for(Map.Entry<ZipFileIndex, Long> entry : firstIndexes.entrySet()){
+            File file = entry.getKey().getZipFile();
+            if(file.lastModified() == entry.getValue()){
+                Assert.assertSame(entry.getKey(), cache.getExistingZipIndex(file));
+                reused++;
+            }
+        }
+        Assert.assertTrue(reused > 0);
+        run("com.redhat.ceylon.compiler.java.test.misc.twoclasses.main");
+    }
+
+    @Test
+    public void testMappedZipIndex() throws Exception{
+        File jar = File.createTempFile("mapped", ".jar");
+        try{
+            writeJar(jar, "one");
+            ZipFileIndexCache cache = new ZipFileIndexCache();
+            ZipFileIndex index = cache.getZipFileIndex(jar, null, false, null, false, true);
+            RelativeFile entry = new RelativeFile("a/b.txt");
+            Assert.assertTrue(index.contains(entry));
+            Assert.assertEquals("one", new String(index.read(entry), "UTF-8"));
+            Assert.assertTrue(index.isMapped());
+            // closing releases the mapping, which is recreated when needed
+            index.close();
+            Assert.assertFalse(index.isMapped());
+            Assert.assertEquals("one", new String(index.read(entry), "UTF-8"));
+            Assert.assertTrue(index.isMapped());
+
+            // a rewritten archive gets a new index, and the old one is no longer mapped
+            writeJar(jar, "longer contents");
+            jar.setLastModified(jar.lastModified() + 2000);
+            ZipFileIndex newIndex = cache.getZipFileIndex(jar, null, false, null, false, true);
+            Assert.assertNotSame(index, newIndex);
+            Assert.assertFalse(index.isMapped());
+            Assert.assertEquals("longer contents", new String(newIndex.read(entry), "UTF-8"));
+            newIndex.close();
+        }finally{
+            jar.delete();
+        }
+    }
+
+    @Test
+    public void testBoundedZipIndexCache() throws Exception{
+        File first = File.createTempFile("first", ".jar");
+        File second = File.createTempFile("second", ".jar");
+        File third = File.createTempFile("third", ".jar");
+        try{
+            writeJar(first, "first");
+            writeJar(second, "second");
+            writeJar(third, "third");
+            ZipFileIndexCache cache = new ZipFileIndexCache(2);
+            ZipFileIndex firstIndex = cache.getZipFileIndex(first, null, false, null, false, true);
+            ZipFileIndex secondIndex = cache.getZipFileIndex(second, null, false, null, false, true);
+            RelativeFile entry = new RelativeFile("a/b.txt");
+            Assert.assertEquals("second", new String(secondIndex.read(entry), "UTF-8"));
+            // using the first one makes the second one the least recently used
+            Assert.assertSame(firstIndex, cache.getZipFileIndex(first, null, false, null, false, true));
+            cache.getZipFileIndex(third, null, false, null, false, true);
+            Assert.assertEquals(2, cache.getZipFileIndexes().size());
+            Assert.assertSame(firstIndex, cache.getExistingZipIndex(first));
+            Assert.assertNull(cache.getExistingZipIndex(second));
+            Assert.assertNotNull(cache.getExistingZipIndex(third));
+            // the evicted index is not closed, since a compilation may still read through it
+            Assert.assertTrue(secondIndex.isMapped());
+            Assert.assertEquals("second", new String(secondIndex.read(entry), "UTF-8"));
+            secondIndex.close();
+            cache.getExistingZipIndex(first).close();
+            cache.getExistingZipIndex(third).close();
+        }finally{
+            first.delete();
+            second.delete();
+            third.delete();
+        }
+    }
+
+    @Test
+    public void testCompilerDaemon() throws Exception{
+        final StringWriter log = new StringWriter();
+        // port 0 picks a free port
+        final CompilerDaemon daemon = new CompilerDaemon(0, new PrintWriter(log, true), 1000);
+        int port = daemon.getPort();
+        Thread thread = new Thread(new Runnable(){
+            @Override
+            public void run() {
+                try{
+                    daemon.serve();
+                }catch(IOException x){
+                    x.printStackTrace(new PrintWriter(log, true));
+                }
+            }
+        });
+        thread.start();
+        try{
+            // a client which doesn't know the token gets no reply
+            Socket socket = new Socket(InetAddress.getByName(null), port);
+            try{
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeUTF("not the token");
+                out.writeInt(0);
+                out.flush();
+                Assert.assertEquals(-1, socket.getInputStream().read());
+            }finally{
+                socket.close();
+            }
+            // nor does one which never sends its request, and it doesn't hold the daemon up
+            Socket silent = new Socket(InetAddress.getByName(null), port);
+            try{
+                Assert.assertEquals(-1, silent.getInputStream().read());
+            }finally{
+                silent.close();
+            }
+
+            List<String> args = new ArrayList<String>(defaultOptions);
+            args.add("-src");
+            args.add(getSourcePath());
+            args.add(getPackagePath() + "helloworld/helloworld.ceylon");
+            CompilerDaemon.Response response = CompilerDaemon.compile(port, args.toArray(new String[args.size()]));
+            Assert.assertEquals(response.output, Main.EXIT_OK, response.javacExitCode);
+            Assert.assertTrue(getModuleArchive(Module.DEFAULT_MODULE_NAME, null).exists());
+        }finally{
+            CompilerDaemon.stop(port);
+            thread.join(10000);
+        }
+        Assert.assertFalse(thread.isAlive());
+        String output = log.toString();
+        Assert.assertTrue(output, output.contains("dropped request with an invalid token"));
+        Assert.assertTrue(output, output.contains("stopped after 1 compilations"));
+        // the token is gone with the daemon
+        try{
+            CompilerDaemon.stop(port);
+            Assert.fail("daemon still reachable");
+        }catch(ConnectException x){
+            // expected
+        }
+    }
+
+    private void writeJar(File jar, String contents) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+        try{
+            zip.putNextEntry(new ZipEntry("a/"));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("a/b.txt"));
+            zip.write(contents.getBytes("UTF-8"));
+            zip.closeEntry();
+        }finally{
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testCompileWithMetrics() throws Exception{
+        File metrics = new File(destDir, "metrics.json");
+        metrics.delete();
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-metrics");
+        options.add(metrics.getPath());
+        compilesWithoutWarnings(options, "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
+        Assert.assertTrue(metrics.exists());
+        String json = readFile(metrics);
+        Assert.assertTrue(json.contains("\"success\": true"));
+        Assert.assertTrue(json.contains("{\"name\": \"Ceylon type checking\""));
+        Assert.assertTrue(json.contains("{\"name\": \"Write module archives\""));
+        Assert.assertTrue(json.contains("\"ceylonUnits\": 3"));
+        Assert.assertTrue(json.contains("\"classFiles\": "));
+        Assert.assertTrue(json.contains("\"modelLoaderClassCacheHits\": "));
+        Assert.assertTrue(json.contains("\"archiveBytes\": "));
+    }
+
     @Test
     public void testEqualsHashOverriding(){
         compareWithJavaSource("equalshashoverriding/EqualsHashOverriding");
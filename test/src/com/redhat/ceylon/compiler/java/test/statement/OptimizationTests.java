@@ -1,5 +1,9 @@
 package com.redhat.ceylon.compiler.java.test.statement;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -161,6 +165,72 @@ public class OptimizationTests extends CompilerTests {
         compareWithJavaSource("loop/optim/StringIterationStatic");
     }
     
+    @Test
+    public void testLopOptimIterableChainFusionCorrect() {
+        compileAndRun("com.redhat.ceylon.compiler.java.test.statement.loop.optim.iterableChainFusionCorrect", 
+                "loop/optim/IterableChainFusionCorrect.ceylon");
+    }
+    
+    @Test
+    public void testLopOptimPrimitiveComprehensionCorrect() {
+        // its @requireOptimization annotations check that the optimization applies
+        compileWithOptimization("PrimitiveComprehension", "loop/optim/PrimitiveComprehensionCorrect.ceylon");
+        run("com.redhat.ceylon.compiler.java.test.statement.loop.optim.primitiveComprehensionCorrect");
+    }
+    
+    @Test
+    public void testLopOptimPrimitiveComprehensionRequired() {
+        List<String> options = optionsWithOptimization("PrimitiveComprehension");
+        assertErrors("loop/optim/PrimitiveComprehensionRequired", options, null,
+                new CompilerError(22, "@requireOptimization[\"PrimitiveComprehension\"] assertion failed: the element type of the comprehension is not Integer, Float, Character or Byte"),
+                new CompilerError(24, "@requireOptimization[\"PrimitiveComprehension\"] assertion failed: the comprehension has an if clause with a condition which is not a boolean condition"),
+                new CompilerError(26, "@requireOptimization[\"PrimitiveComprehension\"] assertion failed: the comprehension has a for clause which destructures"));
+    }
+    
+    @Test
+    public void testLopOptimPrimitiveComprehensionNotEnabled() {
+        assertErrors("loop/optim/PrimitiveComprehensionRequired",
+                new CompilerError(22, "@requireOptimization[\"PrimitiveComprehension\"] assertion failed: optimization not enabled with -enableOptimization"),
+                new CompilerError(24, "@requireOptimization[\"PrimitiveComprehension\"] assertion failed: optimization not enabled with -enableOptimization"),
+                new CompilerError(26, "@requireOptimization[\"PrimitiveComprehension\"] assertion failed: optimization not enabled with -enableOptimization"));
+    }
+    
+    @Test
+    public void testLopOptimUnboxedComprehensionCorrect() {
+        compileAndRunWithOptimization("UnboxedComprehension", "com.redhat.ceylon.compiler.java.test.statement.loop.optim.unboxedComprehensionCorrect", "loop/optim/UnboxedComprehensionCorrect.ceylon");
+    }
+    
+    @Test
+    public void testLopOptimBoxingReport() {
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-verbose:boxing");
+        String report = compileAndGetOutput(options, "loop/optim/BoxingReport.ceylon");
+        Assert.assertTrue(report, report.contains("Boxed declarations in "));
+        Assert.assertTrue(report, report.contains(" boxingReportMpl: function with multiple parameter lists, which returns a Callable"));
+        Assert.assertTrue(report, report.contains(": anonymous function, returned by a Callable"));
+        Assert.assertTrue(report, report.contains(" element: comprehension variable, enable the UnboxedComprehension optimization"));
+        Assert.assertFalse(report, report.contains("boxingReportUnboxed"));
+        
+        options.add("-enableOptimization");
+        options.add("UnboxedComprehension");
+        report = compileAndGetOutput(options, "loop/optim/BoxingReport.ceylon");
+        Assert.assertTrue(report, report.contains(" boxingReportMpl: function with multiple parameter lists, which returns a Callable"));
+        Assert.assertFalse(report, report.contains(" element: "));
+    }
+    
+    @Test
+    public void testLopOptimRangeIterationCorrect() {
+        compileAndRunWithOptimization("RangeIterationStatic,RangeIterationDynamic", "com.redhat.ceylon.compiler.java.test.statement.loop.optim.rangeIterationCorrect", "loop/optim/RangeIterationCorrect.ceylon");
+    }
+    
+    @Test
+    public void testLopOptimIterableChainFusionRequired() {
+        assertErrors("loop/optim/IterableChainFusionRequired",
+                new CompilerError(22, "@requireOptimization[\"IterableChainFusion\"] assertion failed: the source of the chain is not a span, a segment, an Array or javaArray.iterable"),
+                new CompilerError(24, "@requireOptimization[\"IterableChainFusion\"] assertion failed: count() is not invoked with a listed positional argument"),
+                new CompilerError(26, "@requireOptimization[\"IterableChainFusion\"] assertion failed: optimization explicitly disabled by @disableOptimization"));
+    }
+    
     @Ignore("For benchmarking only")
     @Test
     public void testLopOptimDynamicIterationBench() {
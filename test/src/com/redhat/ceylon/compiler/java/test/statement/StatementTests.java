@@ -539,6 +539,17 @@ public class StatementTests extends CompilerTests {
         compareWithJavaSource("swtch/SwitchValues");
     }
     
+    @Test
+    public void testSwitchIntegerCases(){
+        compareWithJavaSource(optionsWithOptimization("IntegerSwitch"), "swtch/SwitchIntegerCases.src", "swtch/SwitchIntegerCases.ceylon");
+    }
+    
+    @Test
+    public void testSwitchIntegerValues(){
+        compileAndRunWithOptimization("IntegerSwitch", "com.redhat.ceylon.compiler.java.test.statement.swtch.switchIntegerValues", 
+                "swtch/SwitchIntegerValues.ceylon");
+    }
+    
     @Test
     public void testSwitchInlineVar(){
         compareWithJavaSource("swtch/SwitchInlineVar");
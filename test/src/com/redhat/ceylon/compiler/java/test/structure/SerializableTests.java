@@ -19,6 +19,11 @@
  */
 package com.redhat.ceylon.compiler.java.test.structure;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.junit.Assert;
 import org.junit.Test;
 
 import com.redhat.ceylon.compiler.java.test.CompilerTests;
@@ -75,4 +80,42 @@ public class SerializableTests extends CompilerTests {
         compareWithJavaSource("klass/SerializableMethodSpecification");
     }
     
+    @Test
+    public void testKlsSerializationFieldIndex() throws Exception {
+        compileWithOptimization("SerializationFieldIndex", "klass/SerializationFieldIndex.ceylon");
+        
+        String pkg = "com.redhat.ceylon.compiler.java.test.structure.klass";
+        Class<?> klass = loadClass(pkg + ".SerializationFieldIndex", 
+                getDestModuleWithArtifact(pkg + ".SerializationFieldIndex"));
+        Assert.assertEquals(Arrays.asList(
+                pkg + "::SerializationFieldIndex.name", 
+                pkg + "::SerializationFieldIndex.count",
+                pkg + "::SerializationFieldIndex.label"),
+                Arrays.asList((String[])klass.getField("$serialization$fields$").get(null)));
+        Method get = klass.getMethod("$getField$", klass, int.class);
+        Method set = klass.getMethod("$setField$", klass, int.class, Object.class);
+        Constructor<?> ctor = klass.getConstructor(String.class, long.class);
+        Object first = ctor.newInstance("first", 1L);
+        Object second = ctor.newInstance("second", 2L);
+        Assert.assertEquals("first", get.invoke(null, first, 0).toString());
+        Assert.assertEquals("1", get.invoke(null, first, 1).toString());
+        Assert.assertTrue(get.invoke(null, first, 2).getClass().getName().endsWith("uninitializedLateValue_"));
+        
+        // copy second's state into first, including the final name field
+        for (int index = 0; index < 3; index++) {
+            set.invoke(null, first, index, get.invoke(null, second, index));
+        }
+        Assert.assertEquals("second", get.invoke(null, first, 0).toString());
+        Assert.assertEquals("2", get.invoke(null, first, 1).toString());
+        Assert.assertTrue(get.invoke(null, first, 2).getClass().getName().endsWith("uninitializedLateValue_"));
+        
+        // each class only indexes the fields it declares itself
+        Class<?> sub = klass.getClassLoader().loadClass(pkg + ".SerializationFieldIndexSub");
+        Assert.assertEquals(Arrays.asList(pkg + "::SerializationFieldIndexSub.weight"),
+                Arrays.asList((String[])sub.getField("$serialization$fields$").get(null)));
+        Object third = sub.getConstructor(String.class, long.class, double.class).newInstance("third", 3L, 0.5);
+        Assert.assertEquals("0.5", sub.getMethod("$getField$", sub, int.class).invoke(null, third, 0).toString());
+        Assert.assertEquals("third", get.invoke(null, third, 0).toString());
+    }
+    
 }
@@ -19,6 +19,10 @@
  */
 package com.redhat.ceylon.compiler.java.test.structure;
 
+import java.lang.reflect.Field;
+import java.util.jar.JarFile;
+
+import org.junit.Assert;
 import org.junit.Test;
 
 import com.redhat.ceylon.compiler.java.test.CompilerTests;
@@ -414,6 +418,43 @@ public class StructureTests extends CompilerTests {
     public void testKlsJavaIoSerializable(){
         compareWithJavaSource("klass/JavaIoSerializable");
     }
+    @Test
+    public void testKlsLazyCompanionInstance(){
+        // eager companions: one per satisfied interface with concrete members
+        compile("klass/LazyCompanionInstance.ceylon");
+        Object eager = run("com.redhat.ceylon.compiler.java.test.structure.klass.lazyCompanionInstanceNew");
+        Assert.assertEquals(3, countCompanionInstances(eager));
+        Object eagerRefined = run("com.redhat.ceylon.compiler.java.test.structure.klass.lazyCompanionInstanceRefined");
+        Assert.assertEquals(1, countCompanionInstances(eagerRefined));
+        
+        Object lazy = compileAndRunWithOptimization("LazyCompanionInstance", "com.redhat.ceylon.compiler.java.test.structure.klass.lazyCompanionInstanceNew", "klass/LazyCompanionInstance.ceylon");
+        Assert.assertEquals(0, countCompanionInstances(lazy));
+        // refining the superclass companion's type arguments must not create it
+        Object lazyRefined = run("com.redhat.ceylon.compiler.java.test.structure.klass.lazyCompanionInstanceRefined");
+        Assert.assertEquals(0, countCompanionInstances(lazyRefined));
+        Object used = run("com.redhat.ceylon.compiler.java.test.structure.klass.lazyCompanionInstanceUsed");
+        Assert.assertEquals(1, countCompanionInstances(used));
+        run("com.redhat.ceylon.compiler.java.test.structure.klass.lazyCompanionInstance");
+    }
+    
+    private int countCompanionInstances(Object instance) {
+        int count = 0;
+        try {
+            for (Class<?> klass = instance.getClass(); klass != null; klass = klass.getSuperclass()) {
+                for (Field field : klass.getDeclaredFields()) {
+                    if (field.getName().endsWith("$this$")) {
+                        field.setAccessible(true);
+                        if (field.get(instance) != null) {
+                            count++;
+                        }
+                    }
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+        return count;
+    }
     //
     // Methods
     
@@ -760,6 +801,28 @@ public class StructureTests extends CompilerTests {
         compileAndRun("com.redhat.ceylon.compiler.java.test.structure.reified.runtime", "reified/Runtime.ceylon");
     }
 
+    @Test
+    public void testRfdRuntimeTypeDescriptorConstant(){
+        compileAndRunWithOptimization("TypeDescriptorConstant", "com.redhat.ceylon.compiler.java.test.structure.reified.runtime", "reified/Runtime.ceylon");
+    }
+
+    @Test
+    public void testRfdTypeDescriptorConstants() throws Exception {
+        compileAndRunWithOptimization("TypeDescriptorConstant", "com.redhat.ceylon.compiler.java.test.structure.reified.typeDescriptorConstants", "reified/TypeDescriptorConstants.ceylon");
+        
+        JarFile car = new JarFile(getModuleArchive("default", null));
+        try {
+            Assert.assertNotNull(car.getEntry("com/redhat/ceylon/compiler/java/test/structure/reified/typeDescriptorConstants_$$TypeDescriptors$.class"));
+        } finally {
+            car.close();
+        }
+    }
+
+    @Test
+    public void testRfdImpliedTypeTest(){
+        compileAndRunWithOptimization("ImpliedTypeTest", "com.redhat.ceylon.compiler.java.test.structure.reified.impliedTypeTest", "reified/ImpliedTypeTest.ceylon");
+    }
+
     @Test
     public void testRfdUtilCalls(){
         compareWithJavaSource("reified/UtilCalls");
@@ -44,6 +44,11 @@ public class StructureTests2 extends CompilerTests {
         compareWithJavaSource("toplevel/ToplevelAttribute");
     }
     @Test
+    public void testTopToplevelAttributeFinalInitFlag(){
+        List<String> options = optionsWithOptimization("FinalToplevelInitFlag");
+        compareWithJavaSource(options, "toplevel/ToplevelAttributeFinalInitFlag.src", "toplevel/ToplevelAttributeFinalInitFlag.ceylon");
+    }
+    @Test
     public void testTopToplevelAttributeLate(){
         compareWithJavaSource("toplevel/ToplevelAttributeLate");
     }